@@ -7,6 +7,7 @@ tasks.jar {
     manifest {
         attributes["Main-Class"] = "com.squidtempura.Main"
     }
+    from(vector.output)
     from({
         configurations.runtimeClasspath.get().map {
             if (it.isDirectory) it else zipTree(it)
@@ -25,9 +26,41 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
-    implementation("net.objecthunter:exp4j:0.4.8")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+}
+
+// timings of the tests tagged benchmark, printed to the console
+tasks.register<Test>("benchmark") {
+    description = "Runs the benchmarks under src/test."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+}
+
+// the SIMD column kernels need the incubating Vector API; they get a source set of their own
+// and ColumnKernels loads them by name
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>("compileVectorJava") {
+    options.compilerArgs.add("--add-modules=jdk.incubator.vector")
+    // javac warns "using incubating module(s)" on every compile and has no lint category for it;
+    // -nowarn is the only switch that drops it, so this source set is kept to the kernels alone
+    options.isWarnings = false
+}
+
+sourceSets.test {
+    runtimeClasspath += vector.output
 }
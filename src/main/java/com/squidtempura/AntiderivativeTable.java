@@ -0,0 +1,204 @@
+package com.squidtempura;
+
+import java.util.Arrays;
+
+// Cumulative integral P(t) = int(f, c, t), for some fixed c, of one integrand on the knots
+// t = k * h, for integrals whose bounds move with x: a whole curve then costs one table plus
+// P(b) - P(a) per pixel instead of a quadrature per pixel. Knots keep P and f = P', so between
+// them P is a cubic Hermite interpolant. Tables never change; extend returns a larger one that
+// reuses every computed panel.
+public class AntiderivativeTable {
+    // 5-point Gauss-Legendre per panel, exact for polynomials up to degree 9
+    private static final double[] NODES = {
+            -0.906179845938663992797626878299393, -0.538469310105682772586866372561722, 0.0,
+            0.538469310105682772586866372561722, 0.906179845938663992797626878299393
+    };
+    private static final double[] WEIGHTS = {
+            0.236926885056189087514264040719918, 0.478628670499366468041291514835639,
+            0.568888888888888888888888888888889,
+            0.478628670499366468041291514835639, 0.236926885056189087514264040719918
+    };
+
+    private static final long OUTSIDE = Long.MIN_VALUE;
+
+    public interface Integrand extends ChebyshevProxy.Sampler {
+        // false unless f is provably continuous on [a, b]
+        boolean isContinuous(double a, double b);
+
+        // int(f, a, b) to full accuracy, NaN when it does not converge
+        double integrate(double a, double b);
+    }
+
+    public final double h;
+    // index of the first knot, which sits at first * h
+    public final long first;
+    private final double[] cumulative;
+    private final double[] slope;
+    // undefined[k] counts the panels before knot first + k whose integral is NaN; they add 0 to
+    // cumulative, and an integral across one of them is NaN
+    private final int[] undefined;
+
+    private AntiderivativeTable(double h, long first, double[] cumulative, double[] slope, int[] undefined) {
+        this.h = h;
+        this.first = first;
+        this.cumulative = cumulative;
+        this.slope = slope;
+        this.undefined = undefined;
+    }
+
+    public static AntiderivativeTable build(Integrand f, double h, double lo, double hi) {
+        long from = (long) Math.floor(lo / h);
+        long to = Math.max(from + 1, (long) Math.ceil(hi / h));
+        return compute(f, h, from, to, null);
+    }
+
+    // h, first, then cumulative, slope and undefined per knot, the form the disk cache stores
+    public double[] toArray() {
+        int n = cumulative.length;
+        double[] a = new double[2 + 3 * n];
+        a[0] = h;
+        a[1] = first;
+        System.arraycopy(cumulative, 0, a, 2, n);
+        System.arraycopy(slope, 0, a, 2 + n, n);
+        for (int k = 0; k < n; k++) {
+            a[2 + 2 * n + k] = undefined[k];
+        }
+        return a;
+    }
+
+    // The table toArray wrote, or null when `a` is not one
+    public static AntiderivativeTable fromArray(double[] a) {
+        if (a == null || a.length < 8 || (a.length - 2) % 3 != 0) return null;
+        int n = (a.length - 2) / 3;
+        if (!(a[0] > 0) || Double.isInfinite(a[0]) || a[1] != Math.rint(a[1])) return null;
+        int[] undefined = new int[n];
+        for (int k = 0; k < n; k++) {
+            double u = a[2 + 2 * n + k];
+            if (!(u >= 0 && u <= k) || u != Math.rint(u)) return null;
+            undefined[k] = (int) u;
+            if (k > 0 && undefined[k] < undefined[k - 1]) return null;
+        }
+        return new AntiderivativeTable(a[0], (long) a[1], Arrays.copyOfRange(a, 2, 2 + n),
+                Arrays.copyOfRange(a, 2 + n, 2 + 2 * n), undefined);
+    }
+
+    public long last() {
+        return first + cumulative.length - 1;
+    }
+
+    public int knotCount() {
+        return cumulative.length;
+    }
+
+    public boolean covers(double lo, double hi) {
+        return lo >= first * h && hi <= last() * h;
+    }
+
+    // A table covering [lo, hi] as well, computing only the new panels
+    public AntiderivativeTable extend(Integrand f, double lo, double hi) {
+        long from = Math.min(first, (long) Math.floor(lo / h));
+        long to = Math.max(last(), (long) Math.ceil(hi / h));
+        if (from == first && to == last()) return this;
+        return compute(f, h, from, to, this);
+    }
+
+    // int(f, a, b) for a and b inside the table
+    public double integrate(double a, double b) {
+        long ka = panel(a);
+        long kb = panel(b);
+        if (ka == OUTSIDE || kb == OUTSIDE) return Double.NaN;
+        long low = Math.min(ka, kb);
+        long high = Math.max(ka, kb);
+        if (undefined[(int) (high + 1 - first)] != undefined[(int) (low - first)]) return Double.NaN;
+        return value(b, kb) - value(a, ka);
+    }
+
+    private long panel(double t) {
+        if (Double.isNaN(t)) return OUTSIDE;
+        long k = (long) Math.floor(t / h);
+        if (k == last()) k--;
+        return k < first || k >= last() ? OUTSIDE : k;
+    }
+
+    private double value(double t, long k) {
+        int i = (int) (k - first);
+        double s = t / h - k;
+        if (!Double.isFinite(slope[i]) || !Double.isFinite(slope[i + 1])) {
+            // e.g. 1/sqrt(t) at 0, where only the panel's integral is known
+            return cumulative[i] + s * (cumulative[i + 1] - cumulative[i]);
+        }
+        double s2 = s * s;
+        double s3 = s2 * s;
+        return (2 * s3 - 3 * s2 + 1) * cumulative[i] + (s3 - 2 * s2 + s) * h * slope[i]
+                + (-2 * s3 + 3 * s2) * cumulative[i + 1] + (s3 - s2) * h * slope[i + 1];
+    }
+
+    // Knots from..to, copying those of `old` and sampling everything new in one column
+    private static AntiderivativeTable compute(Integrand f, double h, long from, long to,
+                                               AntiderivativeTable old) {
+        int n = (int) (to - from + 1);
+        // old knots occupy [oldFrom, oldTo) of the new arrays
+        int oldFrom = old == null ? 0 : (int) (old.first - from);
+        int oldTo = old == null ? 0 : oldFrom + old.cumulative.length;
+
+        int newPanels = old == null ? n - 1 : n - old.cumulative.length;
+        double[] xs = new double[n - (oldTo - oldFrom) + newPanels * NODES.length];
+        int m = 0;
+        for (int k = 0; k < n; k++) {
+            if (k < oldFrom || k >= oldTo) xs[m++] = (from + k) * h;
+        }
+        for (int k = 0; k < n - 1; k++) {
+            if (k >= oldFrom && k < oldTo - 1) continue;
+            double center = (from + k + 0.5) * h;
+            for (double node : NODES) {
+                xs[m++] = center + 0.5 * h * node;
+            }
+        }
+        double[] ys = new double[xs.length];
+        f.sample(xs, ys);
+        // Gauss points only integrate smooth panels well; jumps and poles get adaptive quadrature
+        boolean smooth = f.isContinuous(from * h, to * h);
+
+        double[] slope = new double[n];
+        m = 0;
+        for (int k = 0; k < n; k++) {
+            slope[k] = k >= oldFrom && k < oldTo ? old.slope[k - oldFrom] : ys[m++];
+        }
+        // integral of panel k, between knots k and k + 1; NaN where it is undefined
+        double[] panels = new double[n - 1];
+        for (int k = 0; k < n - 1; k++) {
+            if (k >= oldFrom && k < oldTo - 1) {
+                int i = k - oldFrom;
+                boolean nan = old.undefined[i + 1] != old.undefined[i];
+                panels[k] = nan ? Double.NaN : old.cumulative[i + 1] - old.cumulative[i];
+                continue;
+            }
+            double sum = 0.0;
+            for (int j = 0; j < NODES.length; j++) {
+                sum += WEIGHTS[j] * ys[m++];
+            }
+            double a = (from + k) * h;
+            if (!smooth && !f.isContinuous(a, a + h)) {
+                panels[k] = f.integrate(a, a + h);
+            } else {
+                panels[k] = Double.isFinite(sum) ? 0.5 * h * sum : Double.NaN;
+            }
+        }
+
+        // old values are copied exactly, new ones accumulate outwards from them
+        double[] cumulative = new double[n];
+        if (old != null) System.arraycopy(old.cumulative, 0, cumulative, oldFrom, old.cumulative.length);
+        int start = old == null ? 0 : oldTo - 1;
+        for (int k = start + 1; k < n; k++) {
+            cumulative[k] = cumulative[k - 1] + (Double.isNaN(panels[k - 1]) ? 0.0 : panels[k - 1]);
+        }
+        for (int k = oldFrom - 1; k >= 0; k--) {
+            cumulative[k] = cumulative[k + 1] - (Double.isNaN(panels[k]) ? 0.0 : panels[k]);
+        }
+        int[] undefined = new int[n];
+        for (int k = 1; k < n; k++) {
+            undefined[k] = undefined[k - 1] + (Double.isNaN(panels[k - 1]) ? 1 : 0);
+        }
+        return new AntiderivativeTable(h, from, cumulative, slope, undefined);
+    }
+}
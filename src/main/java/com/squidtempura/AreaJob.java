@@ -0,0 +1,82 @@
+package com.squidtempura;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// The area of one integral, worked out off the event thread. A loose estimate comes first and is
+// tightened stage by stage up to the snapshot's own accuracy; each result that arrives is handed
+// to the listener on the event thread. cancel() stops it between and within stages.
+public class AreaJob implements Callable<QuadratureResult> {
+    // relative tolerances of the preview stages, each skipped when no looser than the final one
+    private static final double[] STAGES = {1e-3, 1e-6};
+    // an area still not done after this long keeps its last estimate
+    private static final long MAX_MILLIS = 60_000;
+
+    public interface Listener {
+        // last is true for the result at full accuracy, or the best estimate when time ran out first
+        // (null when there was none)
+        void update(AreaJob job, QuadratureResult result, boolean last);
+    }
+
+    public final String key;
+    public final ExprNode node;
+    private final EvaluatorSnapshot snapshot;
+    private final Listener listener;
+    private final EvaluationBudget budget = EvaluationBudget.ofMillis(MAX_MILLIS);
+    private Future<QuadratureResult> future;
+
+    public AreaJob(String key, ExprNode node, EvaluatorSnapshot snapshot, Listener listener) {
+        this.key = key;
+        this.node = node;
+        this.snapshot = snapshot;
+        this.listener = listener;
+    }
+
+    public Future<QuadratureResult> start(ExecutorService executor) {
+        future = executor.submit(this);
+        return future;
+    }
+
+    public void cancel() {
+        budget.cancel();
+        if (future != null) future.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return budget.isCancelled();
+    }
+
+    @Override
+    public QuadratureResult call() {
+        // the estimate to fall back on when time runs out
+        QuadratureResult best = null;
+        for (double tolerance : STAGES) {
+            if (budget.isCancelled()) return null;
+            if (tolerance <= snapshot.getRelativeTolerance()) break;
+            double absolute = Math.max(snapshot.getAbsoluteTolerance(), tolerance * 1e-3);
+            QuadratureResult preview = snapshot.withTolerance(absolute, tolerance).integrate(node, 0.0, budget);
+            if (budget.isCancelled()) return null;
+            if (Double.isFinite(preview.value)) best = preview;
+            if (budget.isIncomplete()) {
+                publish(best, true);
+                return best;
+            }
+            if (best != null) publish(best, false);
+        }
+        if (budget.isCancelled()) return null;
+        QuadratureResult result = snapshot.integrate(node, 0.0, budget);
+        if (budget.isCancelled()) return null;
+        // out of time: the estimate so far, flagged incomplete, unless there is none yet
+        if (!Double.isFinite(result.value) && budget.isIncomplete()) result = best;
+        publish(result, true);
+        return result;
+    }
+
+    private void publish(QuadratureResult result, boolean last) {
+        SwingUtilities.invokeLater(() -> {
+            if (!budget.isCancelled()) listener.update(this, result, last);
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package com.squidtempura;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum Builtin {
+    SIN("sin", 1),
+    COS("cos", 1),
+    TAN("tan", 1),
+    COT("cot", 1),
+    ASIN("asin", 1),
+    ACOS("acos", 1),
+    ATAN("atan", 1),
+    SINH("sinh", 1),
+    COSH("cosh", 1),
+    TANH("tanh", 1),
+    ABS("abs", 1),
+    LOG("log", 1),
+    LOG10("log10", 1),
+    LOG2("log2", 1),
+    LOG1P("log1p", 1),
+    CEIL("ceil", 1),
+    FLOOR("floor", 1),
+    SQRT("sqrt", 1),
+    CBRT("cbrt", 1),
+    POW("pow", 2),
+    EXP("exp", 1),
+    EXPM1("expm1", 1),
+    SIGNUM("signum", 1);
+
+    private static final Map<String, Builtin> BY_SYMBOL = new HashMap<>();
+
+    static {
+        for (Builtin b : values()) {
+            BY_SYMBOL.put(b.symbol, b);
+        }
+    }
+
+    public final String symbol;
+    public final int arity;
+
+    Builtin(String symbol, int arity) {
+        this.symbol = symbol;
+        this.arity = arity;
+    }
+
+    public static Builtin lookup(String symbol) {
+        return BY_SYMBOL.get(symbol);
+    }
+
+    public double apply(double a) {
+        switch (this) {
+            case SIN: return Math.sin(a);
+            case COS: return Math.cos(a);
+            case TAN: return Math.tan(a);
+            case COT: return cot(a);
+            case ASIN: return Math.asin(a);
+            case ACOS: return Math.acos(a);
+            case ATAN: return Math.atan(a);
+            case SINH: return Math.sinh(a);
+            case COSH: return Math.cosh(a);
+            case TANH: return Math.tanh(a);
+            case ABS: return Math.abs(a);
+            case LOG: return Math.log(a);
+            case LOG10: return Math.log10(a);
+            case LOG2: return log2(a);
+            case LOG1P: return Math.log1p(a);
+            case CEIL: return Math.ceil(a);
+            case FLOOR: return Math.floor(a);
+            case SQRT: return Math.sqrt(a);
+            case CBRT: return Math.cbrt(a);
+            case EXP: return Math.exp(a);
+            case EXPM1: return Math.expm1(a);
+            case SIGNUM: return Math.signum(a);
+            default: return Double.NaN;
+        }
+    }
+
+    public double apply(double a, double b) {
+        if (this == POW) return Math.pow(a, b);
+        return Double.NaN;
+    }
+
+    // The same functions over Taylor jets, for derivatives in a single pass
+    public TaylorJet apply(TaylorJet a) {
+        switch (this) {
+            case SIN: return a.sin();
+            case COS: return a.cos();
+            case TAN: return a.tan();
+            case COT: return a.cot();
+            case ASIN: return a.asin();
+            case ACOS: return a.acos();
+            case ATAN: return a.atan();
+            case SINH: return a.sinh();
+            case COSH: return a.cosh();
+            case TANH: return a.tanh();
+            case ABS: return a.abs();
+            case LOG: return a.log();
+            case LOG10: return withValue(a.log().scale(1.0 / Math.log(10.0)), Math.log10(a.value()));
+            case LOG2: return withValue(a.log().scale(1.0 / Math.log(2.0)), log2(a.value()));
+            case LOG1P: return a.log1p();
+            case CEIL: return a.step(Math.ceil(a.value()));
+            case FLOOR: return a.step(Math.floor(a.value()));
+            case SQRT: return a.sqrt();
+            case CBRT: return a.cbrt();
+            case EXP: return a.exp();
+            case EXPM1: return a.expm1();
+            case SIGNUM: return a.step(Math.signum(a.value()));
+            default: return TaylorJet.nan(a.order());
+        }
+    }
+
+    public TaylorJet apply(TaylorJet a, TaylorJet b) {
+        if (this == POW) return a.pow(b);
+        return TaylorJet.nan(a.order());
+    }
+
+    // And over intervals, for enclosures of whole pixel ranges
+    public Interval apply(Interval a) {
+        switch (this) {
+            case SIN: return a.sin();
+            case COS: return a.cos();
+            case TAN: return a.tan();
+            case COT: return a.cot();
+            case ASIN: return a.asin();
+            case ACOS: return a.acos();
+            case ATAN: return a.increasing(Math::atan);
+            case SINH: return a.increasing(Math::sinh);
+            case COSH: return a.cosh();
+            case TANH: return a.increasing(Math::tanh);
+            case ABS: return a.abs();
+            case LOG: return a.log(Math::log, 0.0);
+            case LOG10: return a.log(Math::log10, 0.0);
+            case LOG2: return a.log(Builtin::log2, 0.0);
+            case LOG1P: return a.log(Math::log1p, -1.0);
+            case CEIL: return a.step(Math::ceil);
+            case FLOOR: return a.step(Math::floor);
+            case SQRT: return a.sqrt();
+            case CBRT: return a.increasing(Math::cbrt);
+            case EXP: return a.increasing(Math::exp);
+            case EXPM1: return a.increasing(Math::expm1);
+            case SIGNUM: return a.step(Math::signum);
+            default: return Interval.UNKNOWN;
+        }
+    }
+
+    public Interval apply(Interval a, Interval b) {
+        if (this == POW) return a.pow(b);
+        return Interval.UNKNOWN;
+    }
+
+    private static TaylorJet withValue(TaylorJet jet, double value) {
+        jet.c[0] = value;
+        return jet;
+    }
+
+    static double cot(double a) {
+        double t = Math.tan(a);
+        if (t == 0.0) return Double.NaN;
+        return 1.0 / t;
+    }
+
+    static double log2(double a) {
+        return Math.log(a) / Math.log(2.0);
+    }
+
+    // exp4j treats division and modulo by zero as errors
+    static double div(double a, double b) {
+        if (b == 0.0) return Double.NaN;
+        return a / b;
+    }
+
+    static double mod(double a, double b) {
+        if (b == 0.0) return Double.NaN;
+        return a % b;
+    }
+}
@@ -0,0 +1,394 @@
+package com.squidtempura;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleUnaryOperator;
+
+// Turns expression trees into hidden classes implementing DoubleUnaryOperator.
+// Nodes without a bytecode form (calls, derivatives, integrals, constraints) are linked in as callbacks.
+public class BytecodeCompiler {
+
+    public interface Linker {
+        DoubleUnaryOperator link(ExprNode node);
+    }
+
+    // HotSpot will not JIT methods larger than this, so there is no point generating them
+    private static final int MAX_CODE_LENGTH = 8000;
+
+    private static final String CLASS_NAME = "com/squidtempura/CompiledExpression";
+    private static final String OPERATOR = "java/util/function/DoubleUnaryOperator";
+    private static final String OPERATOR_ARRAY = "[Ljava/util/function/DoubleUnaryOperator;";
+    private static final String PARAMS = "java/util/concurrent/atomic/AtomicLongArray";
+    private static final String PARAMS_ARRAY = "L" + PARAMS + ";";
+    private static final String BUILTIN = "com/squidtempura/Builtin";
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // Parameter nodes read the bits in their slot of `params` on every call, so rebinding needs
+    // no recompile and a new value is seen as soon as it is set
+    public DoubleUnaryOperator compile(ExprNode node, Linker linker, AtomicLongArray params) {
+        DoubleUnaryOperator inlined = compile(node, linker, params, true);
+        // deep call chains can outgrow the method size limit once inlined, so fall back to linking them
+        return inlined != null ? inlined : compile(node, linker, params, false);
+    }
+
+    private DoubleUnaryOperator compile(ExprNode node, Linker linker, AtomicLongArray params, boolean inlineCalls) {
+        try {
+            Emitter emitter = new Emitter(linker, inlineCalls);
+            byte[] bytes = emitter.classFile(node);
+            if (bytes == null) return null;
+            Class<?> hidden = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            MethodHandle ctor = LOOKUP.findConstructor(hidden,
+                    MethodType.methodType(void.class, DoubleUnaryOperator[].class, AtomicLongArray.class));
+            DoubleUnaryOperator[] links = emitter.links.toArray(new DoubleUnaryOperator[0]);
+            return (DoubleUnaryOperator) ctor.invoke(links, params);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+    private static boolean passesArgument(ExprNode node) {
+        return (node.kind == NodeKind.CALL || node.kind == NodeKind.DERIVATIVE) && node.args.length == 1;
+    }
+
+    private static class Emitter {
+        final Linker linker;
+        final boolean inlineCalls;
+        final List<DoubleUnaryOperator> links = new ArrayList<>();
+        final ConstantPool pool = new ConstantPool();
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int varSlot = 1;
+        int nextSlot = 3;
+
+        Emitter(Linker linker, boolean inlineCalls) {
+            this.linker = linker;
+            this.inlineCalls = inlineCalls;
+        }
+
+        byte[] classFile(ExprNode node) throws IOException {
+            int maxStack = emit(node);
+            code.write(0xaf); // dreturn
+            if (code.size() > MAX_CODE_LENGTH || maxStack > 0xffff || nextSlot > 0xff) return null;
+
+            int thisClass = pool.classRef(CLASS_NAME);
+            int superClass = pool.classRef("java/lang/Object");
+            int iface = pool.classRef(OPERATOR);
+            int linksField = pool.fieldRef(CLASS_NAME, "e", OPERATOR_ARRAY);
+            int paramsField = paramsField();
+            int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+            int codeAttr = pool.utf8("Code");
+            int fieldName = pool.utf8("e");
+            int fieldType = pool.utf8(OPERATOR_ARRAY);
+            int paramsName = pool.utf8("p");
+            int paramsType = pool.utf8(PARAMS_ARRAY);
+            int initName = pool.utf8("<init>");
+            int initType = pool.utf8("(" + OPERATOR_ARRAY + PARAMS_ARRAY + ")V");
+            int applyName = pool.utf8("applyAsDouble");
+            int applyType = pool.utf8("(D)D");
+            if (pool.size() > 0xffff) return null;
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(61);
+            pool.write(out);
+            out.writeShort(0x0030); // final, super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+
+            out.writeShort(2);
+            out.writeShort(0x0012); // private final
+            out.writeShort(fieldName);
+            out.writeShort(fieldType);
+            out.writeShort(0);
+            out.writeShort(0x0012);
+            out.writeShort(paramsName);
+            out.writeShort(paramsType);
+            out.writeShort(0);
+
+            out.writeShort(2);
+            byte[] init = {
+                    0x2a,                                                  // aload_0
+                    (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, // invokespecial Object.<init>
+                    0x2a,                                                  // aload_0
+                    0x2b,                                                  // aload_1
+                    (byte) 0xb5, (byte) (linksField >> 8), (byte) linksField, // putfield e
+                    0x2a,                                                  // aload_0
+                    0x2c,                                                  // aload_2
+                    (byte) 0xb5, (byte) (paramsField >> 8), (byte) paramsField, // putfield p
+                    (byte) 0xb1                                            // return
+            };
+            writeMethod(out, 0x0001, initName, initType, codeAttr, 2, 3, init);
+            writeMethod(out, 0x0001, applyName, applyType, codeAttr, maxStack, nextSlot, code.toByteArray());
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        void writeMethod(DataOutputStream out, int access, int name, int type, int codeAttr,
+                         int maxStack, int maxLocals, byte[] body) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        // Emits code leaving the node's value on the stack, returns the stack depth needed in slots
+        int emit(ExprNode n) {
+            switch (n.kind) {
+                case CONST:
+                    emitConstant(n.value);
+                    return 2;
+                case VAR:
+                    emitLoadVar();
+                    return 2;
+                case PARAM:
+                    if (n.order < 0) {
+                        emitConstant(Double.NaN);
+                        return 2;
+                    }
+                    code.write(0x2a); // aload_0
+                    writeIndexed(0xb4, paramsField()); // getfield p
+                    code.write(0x10); // bipush
+                    code.write(n.order);
+                    writeIndexed(0xb6, pool.methodRef(PARAMS, "get", "(I)J")); // invokevirtual
+                    writeIndexed(0xb8, pool.methodRef("java/lang/Double", "longBitsToDouble", "(J)D"));
+                    return 2;
+                case NEG: {
+                    int depth = emit(n.args[0]);
+                    code.write(0x77); // dneg
+                    return depth;
+                }
+                case ADD:
+                    return emitBinary(n, 0x63);
+                case SUB:
+                    return emitBinary(n, 0x67);
+                case MUL:
+                    return emitBinary(n, 0x6b);
+                case DIV:
+                    return emitBinaryCall(n, BUILTIN, "div");
+                case MOD:
+                    return emitBinaryCall(n, BUILTIN, "mod");
+                case POW:
+                    return emitBinaryCall(n, "java/lang/Math", "pow");
+                case FUNC:
+                    return emitFunction(n);
+                case CALL:
+                    if (inlineCalls && n.target != null && n.args.length == 1) return emitInlineCall(n);
+                    return emitLink(n);
+                default:
+                    return emitLink(n);
+            }
+        }
+
+        int paramsField() {
+            return pool.fieldRef(CLASS_NAME, "p", PARAMS_ARRAY);
+        }
+
+        void emitLoadVar() {
+            if (varSlot == 1) {
+                code.write(0x27); // dload_1
+            } else {
+                code.write(0x18); // dload
+                code.write(varSlot);
+            }
+        }
+
+        // The argument goes into a fresh local that the callee body reads as its x
+        int emitInlineCall(ExprNode n) {
+            int argDepth = emit(n.args[0]);
+            int slot = nextSlot;
+            nextSlot += 2;
+            if (slot > 0xff) return argDepth;
+            code.write(0x39); // dstore
+            code.write(slot);
+
+            int saved = varSlot;
+            varSlot = slot;
+            int bodyDepth = emit(n.target);
+            varSlot = saved;
+            return Math.max(argDepth, bodyDepth);
+        }
+
+        void emitConstant(double v) {
+            if (Double.doubleToRawLongBits(v) == 0L) {
+                code.write(0x0e); // dconst_0
+            } else if (v == 1.0) {
+                code.write(0x0f); // dconst_1
+            } else {
+                writeIndexed(0x14, pool.doubleConst(v)); // ldc2_w
+            }
+        }
+
+        int emitBinary(ExprNode n, int opcode) {
+            int left = emit(n.args[0]);
+            int right = emit(n.args[1]);
+            code.write(opcode);
+            return Math.max(left, 2 + right);
+        }
+
+        int emitBinaryCall(ExprNode n, String owner, String method) {
+            int left = emit(n.args[0]);
+            int right = emit(n.args[1]);
+            writeIndexed(0xb8, pool.methodRef(owner, method, "(DD)D")); // invokestatic
+            return Math.max(left, 2 + right);
+        }
+
+        int emitFunction(ExprNode n) {
+            if (n.fn == Builtin.POW) {
+                return emitBinaryCall(n, "java/lang/Math", "pow");
+            }
+            int depth = emit(n.args[0]);
+            String owner = "java/lang/Math";
+            String method = n.fn.symbol;
+            if (n.fn == Builtin.COT || n.fn == Builtin.LOG2) {
+                owner = BUILTIN;
+            }
+            writeIndexed(0xb8, pool.methodRef(owner, method, "(D)D"));
+            return depth;
+        }
+
+        int emitLink(ExprNode n) {
+            int index = links.size();
+            links.add(linker.link(n));
+
+            code.write(0x2a); // aload_0
+            writeIndexed(0xb4, pool.fieldRef(CLASS_NAME, "e", OPERATOR_ARRAY)); // getfield
+            if (index <= 5) {
+                code.write(0x03 + index); // iconst_n
+            } else if (index <= 127) {
+                code.write(0x10); // bipush
+                code.write(index);
+            } else {
+                code.write(0x11); // sipush
+                code.write(index >> 8);
+                code.write(index);
+            }
+            code.write(0x32); // aaload
+
+            int argDepth;
+            if (passesArgument(n)) {
+                argDepth = emit(n.args[0]);
+            } else {
+                emitLoadVar();
+                argDepth = 2;
+            }
+            writeIndexed(0xb9, pool.interfaceMethodRef(OPERATOR, "applyAsDouble", "(D)D")); // invokeinterface
+            code.write(3);
+            code.write(0);
+            return Math.max(2, 1 + argDepth);
+        }
+
+        void writeIndexed(int opcode, int index) {
+            code.write(opcode);
+            code.write(index >> 8);
+            code.write(index);
+        }
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int next = 1;
+
+        int size() {
+            return next;
+        }
+
+        int utf8(String s) {
+            return entry("U" + s, 1, () -> {
+                out.writeByte(1);
+                out.writeUTF(s);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int doubleConst(double v) {
+            long bits = Double.doubleToRawLongBits(v);
+            return entry("D" + bits, 2, () -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            });
+        }
+
+        int fieldRef(String owner, String name, String type) {
+            return memberRef(9, owner, name, type);
+        }
+
+        int methodRef(String owner, String name, String type) {
+            return memberRef(10, owner, name, type);
+        }
+
+        int interfaceMethodRef(String owner, String name, String type) {
+            return memberRef(11, owner, name, type);
+        }
+
+        private int memberRef(int tag, String owner, String name, String type) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            int nat = entry("N" + name + ":" + type, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return entry(tag + owner + "." + name + ":" + type, 1, () -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nat);
+            });
+        }
+
+        private int entry(String key, int slots, Writer writer) {
+            Integer existing = entries.get(key);
+            if (existing != null) return existing;
+            try {
+                writer.write();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            int index = next;
+            next += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(next);
+            target.write(bytes.toByteArray());
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
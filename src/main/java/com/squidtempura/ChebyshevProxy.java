@@ -0,0 +1,140 @@
+package com.squidtempura;
+
+// Chebyshev interpolant of a function on [a, b], chebfun-style: sample at Chebyshev points,
+// double the degree until the coefficients decay below the tolerance, then chop the tail.
+public class ChebyshevProxy {
+    public interface Sampler {
+        void sample(double[] xs, double[] out);
+    }
+
+    private static final int MIN_POINTS = 16;
+    private static final int MAX_POINTS = 256;
+
+    public final double a;
+    public final double b;
+    // Estimated max |f - proxy| on [a, b]; NaN when the fit did not converge
+    public final double errorEstimate;
+    private final double[] coefficients;
+
+    private ChebyshevProxy(double a, double b, double[] coefficients, double errorEstimate) {
+        this.a = a;
+        this.b = b;
+        this.coefficients = coefficients;
+        this.errorEstimate = errorEstimate;
+    }
+
+    // Returns a proxy that has not converged (isConverged() false) for functions that are not
+    // smooth enough on [a, b], e.g. with jumps, kinks or undefined points
+    public static ChebyshevProxy fit(Sampler f, double a, double b, double tolerance) {
+        int n = MIN_POINTS;
+        double[] values = sampleAt(f, a, b, n, null);
+        while (true) {
+            if (values == null) break;
+            double[] c = coefficients(values, n);
+            double scale = 0.0;
+            for (double ck : c) {
+                scale = Math.max(scale, Math.abs(ck));
+            }
+            int cut = chop(c, tolerance * Math.max(scale, Double.MIN_NORMAL));
+            if (cut >= 0) {
+                double tail = 0.0;
+                for (int k = cut + 1; k < c.length; k++) {
+                    tail += Math.abs(c[k]);
+                }
+                double[] kept = new double[cut + 1];
+                System.arraycopy(c, 0, kept, 0, cut + 1);
+                // aliasing at most doubles the truncated tail
+                return new ChebyshevProxy(a, b, kept, 2.0 * tail + Math.ulp(scale) * c.length);
+            }
+            if (n >= MAX_POINTS) break;
+            values = sampleAt(f, a, b, 2 * n, values);
+            n *= 2;
+        }
+        return new ChebyshevProxy(a, b, null, Double.NaN);
+    }
+
+    public boolean isConverged() {
+        return coefficients != null;
+    }
+
+    public boolean covers(double left, double right) {
+        return left >= a && right <= b;
+    }
+
+    public int degree() {
+        return coefficients == null ? -1 : coefficients.length - 1;
+    }
+
+    // Clenshaw recurrence
+    public double value(double x) {
+        if (x < a || x > b) return Double.NaN;
+        double t = (2.0 * x - a - b) / (b - a);
+        double b1 = 0.0;
+        double b2 = 0.0;
+        for (int k = coefficients.length - 1; k >= 1; k--) {
+            double bk = 2.0 * t * b1 - b2 + coefficients[k];
+            b2 = b1;
+            b1 = bk;
+        }
+        return t * b1 - b2 + coefficients[0];
+    }
+
+    public void sample(double left, double step, int count, double[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = value(left + i * step);
+        }
+    }
+
+    // Values at x_j = cos(pi j / n) mapped onto [a, b], reusing the even points from the previous
+    // level since the n/2 point set is nested in the n point set
+    private static double[] sampleAt(Sampler f, double a, double b, int n, double[] previous) {
+        double[] values = new double[n + 1];
+        int fresh = previous == null ? n + 1 : n / 2;
+        double[] xs = new double[fresh];
+        int m = 0;
+        for (int j = 0; j <= n; j++) {
+            if (previous != null && j % 2 == 0) continue;
+            xs[m++] = point(a, b, j, n);
+        }
+        double[] ys = new double[fresh];
+        f.sample(xs, ys);
+        m = 0;
+        for (int j = 0; j <= n; j++) {
+            double v = previous != null && j % 2 == 0 ? previous[j / 2] : ys[m++];
+            if (Double.isNaN(v) || Double.isInfinite(v)) return null;
+            values[j] = v;
+        }
+        return values;
+    }
+
+    private static double point(double a, double b, int j, int n) {
+        return 0.5 * (a + b) + 0.5 * (b - a) * Math.cos(Math.PI * j / n);
+    }
+
+    // Discrete cosine transform of the point values
+    private static double[] coefficients(double[] values, int n) {
+        double[] c = new double[n + 1];
+        for (int k = 0; k <= n; k++) {
+            double s = 0.5 * (values[0] + (k % 2 == 0 ? values[n] : -values[n]));
+            for (int j = 1; j < n; j++) {
+                s += values[j] * Math.cos(Math.PI * j * k / n);
+            }
+            c[k] = (k == 0 || k == n ? 1.0 : 2.0) * s / n;
+        }
+        return c;
+    }
+
+    // Index of the last coefficient worth keeping, or -1 when the series has not decayed yet:
+    // the last quarter of the coefficients must all lie below the threshold
+    private static int chop(double[] c, double threshold) {
+        int plateau = c.length - c.length / 4;
+        for (int k = plateau; k < c.length; k++) {
+            if (Math.abs(c[k]) > threshold) return -1;
+        }
+        int cut = plateau - 1;
+        while (cut > 0 && Math.abs(c[cut]) <= threshold) {
+            cut--;
+        }
+        return cut;
+    }
+}
@@ -0,0 +1,62 @@
+package com.squidtempura;
+
+// Element-wise operations over sample columns, the scalar baseline for VectorColumnKernels
+public class ColumnKernels {
+
+    public static ColumnKernels create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            // compiled on its own from src/vector, so only that compile sees the incubator module
+            try {
+                return (ColumnKernels) Class.forName("com.squidtempura.VectorColumnKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (Throwable ignored) {
+                // fall through to the scalar loops
+            }
+        }
+        return new ColumnKernels();
+    }
+
+    public boolean isVectorized() {
+        return false;
+    }
+
+    public void binary(NodeKind op, double[] a, double[] b, double[] out, int len) {
+        for (int i = 0; i < len; i++) {
+            out[i] = apply(op, a[i], b[i]);
+        }
+    }
+
+    public void binary(NodeKind op, double[] a, double b, double[] out, int len) {
+        for (int i = 0; i < len; i++) {
+            out[i] = apply(op, a[i], b);
+        }
+    }
+
+    public void neg(double[] a, double[] out, int len) {
+        for (int i = 0; i < len; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    public void sqrt(double[] a, double[] out, int len) {
+        for (int i = 0; i < len; i++) {
+            out[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    public void abs(double[] a, double[] out, int len) {
+        for (int i = 0; i < len; i++) {
+            out[i] = Math.abs(a[i]);
+        }
+    }
+
+    static double apply(NodeKind op, double a, double b) {
+        switch (op) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return Builtin.div(a, b);
+            default: return Double.NaN;
+        }
+    }
+}
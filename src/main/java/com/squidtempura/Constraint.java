@@ -61,4 +61,20 @@ public class Constraint {
         }
         return true;
     }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendRange(sb, "x", xMin, xMinInc, xMax, xMaxInc);
+        appendRange(sb, "y", yMin, yMinInc, yMax, yMaxInc);
+        return sb.toString();
+    }
+
+    private void appendRange(StringBuilder sb, String var, Double min, boolean minInc, Double max, boolean maxInc) {
+        if (min == null && max == null) return;
+        if (sb.length() > 0) sb.append(" && ");
+        if (min != null) sb.append(ExprNode.formatNumber(min)).append(minInc ? "<=" : "<");
+        sb.append(var);
+        if (max != null) sb.append(maxInc ? "<=" : "<").append(ExprNode.formatNumber(max));
+    }
 }
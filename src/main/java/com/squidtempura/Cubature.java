@@ -0,0 +1,236 @@
+package com.squidtempura;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Globally adaptive cubature over a rectangle with the Genz-Malik rule: 17 points of degree 7 and
+// an embedded degree 5 rule on the same points for the error estimate. The worst regions are
+// halved along the axis whose fourth difference is largest, which is where f is roughest. As in
+// GaussKronrod.integrateParallel, each round splits up to BATCH regions and samples all their
+// points as one parallel column, and the result does not depend on the number of threads.
+public class Cubature {
+    private static final int MAX_REGIONS = 2048;
+    private static final int BATCH = 16;
+    private static final int POINTS = 17;
+    // below this many points a round is not worth handing to the pool
+    private static final int PARALLEL_POINTS = 64;
+
+    private static final double LAMBDA2 = Math.sqrt(9.0 / 70.0);
+    private static final double LAMBDA3 = Math.sqrt(9.0 / 10.0);
+    private static final double LAMBDA5 = Math.sqrt(9.0 / 19.0);
+    // weights for two dimensions
+    private static final double W1 = -3816.0 / 19683.0;
+    private static final double W2 = 980.0 / 6561.0;
+    private static final double W3 = 1020.0 / 19683.0;
+    private static final double W4 = 200.0 / 19683.0;
+    private static final double W5 = 6859.0 / 19683.0 / 4.0;
+    private static final double V1 = -971.0 / 729.0;
+    private static final double V2 = 245.0 / 486.0;
+    private static final double V3 = 65.0 / 1458.0;
+    private static final double V4 = 25.0 / 729.0;
+    private static final double RATIO = LAMBDA2 * LAMBDA2 / (LAMBDA3 * LAMBDA3);
+
+    public interface Sampler {
+        void sample(double[] xs, double[] ys, double[] out);
+    }
+
+    private static final class Region {
+        final double x0;
+        final double x1;
+        final double y0;
+        final double y1;
+        final double value;
+        final double error;
+        // 0 to split across x, 1 across y
+        final int axis;
+
+        Region(double x0, double x1, double y0, double y1, double value, double error, int axis) {
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.value = value;
+            this.error = error;
+            this.axis = axis;
+        }
+    }
+
+    // int(int(f(x, y), y, y0, y1), x, x0, x1); regions with undefined samples are split first
+    public static QuadratureResult integrate(Sampler f, double x0, double x1, double y0, double y1,
+                                             double absoluteTolerance, double relativeTolerance) {
+        if (!Double.isFinite(x0) || !Double.isFinite(x1) || !Double.isFinite(y0) || !Double.isFinite(y1)) {
+            return QuadratureResult.NAN;
+        }
+        if (x0 == x1 || y0 == y1) return new QuadratureResult(0.0, 0.0, 0);
+        if (x1 < x0) return integrate(f, x1, x0, y0, y1, absoluteTolerance, relativeTolerance).negate();
+        if (y1 < y0) return integrate(f, x0, x1, y1, y0, absoluteTolerance, relativeTolerance).negate();
+
+        PriorityQueue<Region> queue = new PriorityQueue<>((r, s) -> Double.compare(s.error, r.error));
+        queue.add(regions(f, new double[]{x0, x1, y0, y1})[0]);
+        int evaluations = POINTS;
+        double value = queue.peek().value;
+        double error = queue.peek().error;
+        while (!(error <= Math.max(absoluteTolerance, relativeTolerance * Math.abs(value)))
+                && queue.size() < MAX_REGIONS) {
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            List<Region> full = new ArrayList<>();
+            List<double[]> halves = new ArrayList<>();
+            while (halves.size() < 2 * BATCH && queue.size() + halves.size() / 2 < MAX_REGIONS && !queue.isEmpty()) {
+                Region worst = queue.poll();
+                if (worst.axis == 0) {
+                    double mid = 0.5 * (worst.x0 + worst.x1);
+                    if (worst.x0 < mid && mid < worst.x1) {
+                        halves.add(new double[]{worst.x0, mid, worst.y0, worst.y1});
+                        halves.add(new double[]{mid, worst.x1, worst.y0, worst.y1});
+                        continue;
+                    }
+                } else {
+                    double mid = 0.5 * (worst.y0 + worst.y1);
+                    if (worst.y0 < mid && mid < worst.y1) {
+                        halves.add(new double[]{worst.x0, worst.x1, worst.y0, mid});
+                        halves.add(new double[]{worst.x0, worst.x1, mid, worst.y1});
+                        continue;
+                    }
+                }
+                // no more room between two doubles
+                full.add(worst);
+            }
+            queue.addAll(full);
+            if (halves.isEmpty()) break;
+            double[] bounds = new double[4 * halves.size()];
+            for (int i = 0; i < halves.size(); i++) {
+                System.arraycopy(halves.get(i), 0, bounds, 4 * i, 4);
+            }
+            Region[] split = regions(f, bounds);
+            evaluations += POINTS * halves.size();
+            // regions sampled after the budget ran out hold NaN, so the sums before them stand
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            queue.addAll(Arrays.asList(split));
+            // summed afresh, since an infinite error cannot be subtracted back out
+            value = 0.0;
+            error = 0.0;
+            for (Region r : queue) {
+                value += r.value;
+                error += r.error;
+            }
+            if (!full.isEmpty()) break;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(error)) return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+        return new QuadratureResult(value, error, evaluations);
+    }
+
+    // One region per four entries x0, x1, y0, y1 of `bounds`, all their points sampled at once
+    private static Region[] regions(Sampler f, double[] bounds) {
+        int count = bounds.length / 4;
+        double[] xs = new double[POINTS * count];
+        double[] ys = new double[xs.length];
+        double[] out = new double[xs.length];
+        for (int i = 0; i < count; i++) {
+            nodes(bounds, 4 * i, xs, ys, POINTS * i);
+        }
+        if (xs.length < PARALLEL_POINTS) {
+            f.sample(xs, ys, out);
+        } else {
+            sampleParallel(f, xs, ys, out);
+        }
+        Region[] regions = new Region[count];
+        for (int i = 0; i < count; i++) {
+            regions[i] = rule(bounds, 4 * i, out, POINTS * i);
+        }
+        return regions;
+    }
+
+    // Chunks of the column as fork-join tasks under the caller's budget, like GaussKronrod's
+    private static void sampleParallel(Sampler f, double[] xs, double[] ys, double[] out) {
+        EvaluationBudget budget = EvaluationBudget.current();
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        int chunk = Math.max(1, -Math.floorDiv(-xs.length, 4 * pool.getParallelism()));
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int from = 0; from < xs.length; from += chunk) {
+            int start = from;
+            int end = Math.min(xs.length, from + chunk);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    EvaluationBudget previous = EvaluationBudget.install(budget);
+                    try {
+                        double[] part = new double[end - start];
+                        f.sample(Arrays.copyOfRange(xs, start, end), Arrays.copyOfRange(ys, start, end), part);
+                        System.arraycopy(part, 0, out, start, part.length);
+                    } finally {
+                        EvaluationBudget.exit(previous);
+                    }
+                }
+            });
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    // The 17 points of the region at bounds[b...]: the center, two points on each axis at
+    // lambda2 and lambda3, and the corners of two smaller squares at lambda3 and lambda5
+    private static void nodes(double[] bounds, int b, double[] xs, double[] ys, int offset) {
+        double cx = 0.5 * (bounds[b] + bounds[b + 1]);
+        double hx = 0.5 * (bounds[b + 1] - bounds[b]);
+        double cy = 0.5 * (bounds[b + 2] + bounds[b + 3]);
+        double hy = 0.5 * (bounds[b + 3] - bounds[b + 2]);
+        int i = offset;
+        xs[i] = cx;
+        ys[i++] = cy;
+        for (double lambda : new double[]{LAMBDA2, LAMBDA3}) {
+            xs[i] = cx - lambda * hx;
+            ys[i++] = cy;
+            xs[i] = cx + lambda * hx;
+            ys[i++] = cy;
+            xs[i] = cx;
+            ys[i++] = cy - lambda * hy;
+            xs[i] = cx;
+            ys[i++] = cy + lambda * hy;
+        }
+        for (double lambda : new double[]{LAMBDA3, LAMBDA5}) {
+            for (int sx = -1; sx <= 1; sx += 2) {
+                for (int sy = -1; sy <= 1; sy += 2) {
+                    xs[i] = cx + sx * lambda * hx;
+                    ys[i++] = cy + sy * lambda * hy;
+                }
+            }
+        }
+    }
+
+    private static Region rule(double[] bounds, int b, double[] out, int offset) {
+        double x0 = bounds[b];
+        double x1 = bounds[b + 1];
+        double y0 = bounds[b + 2];
+        double y1 = bounds[b + 3];
+        double area = (x1 - x0) * (y1 - y0);
+        double[] f = Arrays.copyOfRange(out, offset, offset + POINTS);
+        double axis2 = f[1] + f[2] + f[3] + f[4];
+        double axis3 = f[5] + f[6] + f[7] + f[8];
+        double corners3 = f[9] + f[10] + f[11] + f[12];
+        double corners5 = f[13] + f[14] + f[15] + f[16];
+        double degree7 = area * (W1 * f[0] + W2 * axis2 + W3 * axis3 + W4 * corners3 + W5 * corners5);
+        double degree5 = area * (V1 * f[0] + V2 * axis2 + V3 * axis3 + V4 * corners3);
+        if (Double.isNaN(degree7) || Double.isInfinite(degree7)) {
+            // no estimate to go by, so split the longer side
+            int axis = x1 - x0 >= y1 - y0 ? 0 : 1;
+            return new Region(x0, x1, y0, y1, Double.NaN, Double.POSITIVE_INFINITY, axis);
+        }
+        double dx = Math.abs(f[1] + f[2] - 2 * f[0] - RATIO * (f[5] + f[6] - 2 * f[0]));
+        double dy = Math.abs(f[3] + f[4] - 2 * f[0] - RATIO * (f[7] + f[8] - 2 * f[0]));
+        int axis = dx > dy || (dx == dy && x1 - x0 >= y1 - y0) ? 0 : 1;
+        return new Region(x0, x1, y0, y1, degree7, Math.abs(degree7 - degree5), axis);
+    }
+}
@@ -0,0 +1,204 @@
+package com.squidtempura;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Results that survive a restart: integrals and antiderivative tables, keyed by a stable 64-bit
+// hash of everything they depend on. One append-only file of records
+//   magic (int), count (int), key (long), count doubles, checksum (long)
+// read back with positional reads, not a mapping: Windows will not cut or replace a file while a
+// mapping of it is alive, and Java can only drop a mapping by garbage collection, so compaction
+// and cutting off a torn record could fail at random. The OS page cache keeps the reads as cheap
+// as touching a mapping would be. Only an index of offsets stays in memory. A record
+// that fails its checksum ends the valid part and the file is cut there, so a crash mid-write
+// loses only that record. Past maxBytes the newest records are rewritten into a fresh file and
+// the rest dropped.
+// Any I/O failure turns the cache off instead of failing evaluation.
+public class DiskCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final int MAGIC = 0x49584331;
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+    private static final int MAX_VALUES = 1 << 20;
+    private static final String FILE_NAME = "integrax-cache.bin";
+
+    private final Path file;
+    private final long maxBytes;
+    private FileChannel channel;
+    // key -> offset of its newest record in the file
+    private final Map<Long, Long> index = new HashMap<>();
+    private long length;
+
+    private DiskCache(Path file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    // null when the directory cannot be used
+    public static DiskCache open(Path directory, long maxBytes) {
+        DiskCache cache = new DiskCache(directory.resolve(FILE_NAME), maxBytes);
+        try {
+            Files.createDirectories(directory);
+            cache.load();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            cache.close();
+            return null;
+        }
+    }
+
+    public synchronized double[] get(long key) {
+        if (channel == null) return null;
+        Long offset = index.get(key);
+        if (offset == null) return null;
+        try {
+            ByteBuffer header = read(offset, HEADER_BYTES);
+            double[] values = new double[header.getInt(4)];
+            read(offset + HEADER_BYTES, 8 * values.length).asDoubleBuffer().get(values);
+            return values;
+        } catch (IOException | RuntimeException e) {
+            close();
+            return null;
+        }
+    }
+
+    public synchronized void put(long key, double[] values) {
+        if (channel == null || values.length > MAX_VALUES) return;
+        try {
+            long size = recordBytes(values.length);
+            if (length + size > maxBytes) compact(size);
+            write(channel, record(key, values), length);
+            index.put(key, length);
+            length += size;
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+            // nothing left to save
+        }
+        channel = null;
+        index.clear();
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        index.clear();
+        long offset = 0;
+        while (offset + HEADER_BYTES + 8 <= size) {
+            ByteBuffer header = read(offset, HEADER_BYTES);
+            int count = header.getInt(4);
+            if (header.getInt(0) != MAGIC || count < 0 || count > MAX_VALUES
+                    || offset + recordBytes(count) > size) break;
+            long key = header.getLong(8);
+            ByteBuffer body = read(offset + HEADER_BYTES, 8 * count + 8);
+            if (checksum(key, count, i -> body.getLong(8 * i)) != body.getLong(8 * count)) break;
+            // in file order, so the newest record of a key wins
+            index.put(key, offset);
+            offset += recordBytes(count);
+        }
+        // anything after the last good record is garbage from an interrupted write
+        if (offset < size) channel.truncate(offset);
+        length = offset;
+    }
+
+    // Keeps the newest records that fit in half the budget, oldest dropped first
+    private void compact(long incoming) throws IOException {
+        List<Long> keys = new ArrayList<>();
+        List<double[]> records = new ArrayList<>();
+        List<Map.Entry<Long, Long>> old = new ArrayList<>(index.entrySet());
+        old.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Long, Long> entry : old) {
+            double[] values = get(entry.getKey());
+            if (values == null) throw new IOException("Unreadable record");
+            keys.add(entry.getKey());
+            records.add(values);
+        }
+        long budget = Math.max(0, maxBytes / 2 - incoming);
+        int start = records.size();
+        long kept = 0;
+        while (start > 0 && kept + recordBytes(records.get(start - 1).length) <= budget) {
+            start--;
+            kept += recordBytes(records.get(start).length);
+        }
+
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (int i = start; i < records.size(); i++) {
+                position += write(out, record(keys.get(i), records.get(i)), position);
+            }
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        load();
+    }
+
+    // Exactly `bytes` bytes from `position`, as one read may return fewer
+    private ByteBuffer read(long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new IOException("Unexpected end of " + file);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // All of buffer at position, as one write may take only part of it; returns the bytes written
+    private static long write(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static long recordBytes(int count) {
+        return HEADER_BYTES + 8L * count + 8;
+    }
+
+    private static ByteBuffer record(long key, double[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) recordBytes(values.length));
+        buffer.putInt(MAGIC).putInt(values.length).putLong(key);
+        for (double v : values) {
+            buffer.putDouble(v);
+        }
+        buffer.putLong(checksum(key, values.length, i -> Double.doubleToRawLongBits(values[i])));
+        buffer.flip();
+        return buffer;
+    }
+
+    private interface Bits {
+        long at(int i);
+    }
+
+    private static long checksum(long key, int count, Bits bits) {
+        long h = mix(0xcbf29ce484222325L, key);
+        for (int i = 0; i < count; i++) {
+            h = mix(h, bits.at(i));
+        }
+        return mix(h, count);
+    }
+
+    // Folds v into the running hash h; used for keys as well as checksums
+    static long mix(long h, long v) {
+        h = (h ^ v) * 0x100000001b3L;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,163 @@
+package com.squidtempura;
+
+import java.util.Arrays;
+
+// Double-exponential quadrature for integrals Gauss-Kronrod cannot take: infinite bounds and
+// integrands that blow up or are undefined at an endpoint. A change of variables x = g(t) makes
+// the integrand decay double exponentially in t, where the trapezoidal rule converges so fast
+// that a few dozen samples usually suffice. Each level halves the step in t, reusing all earlier
+// samples, until two levels agree.
+//   finite [a, b]:   tanh-sinh, x = (a + b) / 2 + (b - a) / 2 * tanh(pi/2 sinh t)
+//   [a, inf):        exp-sinh,  x = a + exp(pi/2 sinh t)
+//   (-inf, inf):     sinh-sinh, x = sinh(pi/2 sinh t)
+public class DoubleExponential {
+    private static final int MAX_LEVEL = 10;
+    // beyond this every transformation has run into the ends of the double range
+    private static final double MAX_T = 7.0;
+    // a truncated tail this large, relative to the result, means the integral diverges
+    private static final double DIVERGENT_TAIL = 1e-3;
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private enum Kind { FINITE, UPPER_INFINITE, LOWER_INFINITE, BOTH_INFINITE }
+
+    public static QuadratureResult integrate(ChebyshevProxy.Sampler f, double a, double b,
+                                             double absoluteTolerance, double relativeTolerance) {
+        if (Double.isNaN(a) || Double.isNaN(b)) return QuadratureResult.NAN;
+        if (a == b) return new QuadratureResult(0.0, 0.0, 0);
+        if (b < a) return integrate(f, b, a, absoluteTolerance, relativeTolerance).negate();
+
+        Kind kind = Double.isInfinite(a)
+                ? (Double.isInfinite(b) ? Kind.BOTH_INFINITE : Kind.LOWER_INFINITE)
+                : (Double.isInfinite(b) ? Kind.UPPER_INFINITE : Kind.FINITE);
+        // level 0 takes t = 0, +-1, +-2, ...; level k the odd multiples of 2^-k
+        double sum = 0.0;
+        // the sum of |term|, what a vanished tail is measured against when the terms cancel
+        double mass = 0.0;
+        // the terms at the largest |t| sampled on either side; a convergent integral has them at 0
+        double lastT = 0.0;
+        double lastUpper = 0.0;
+        double firstT = 0.0;
+        double lastLower = 0.0;
+        // |t| from which a side is left out, see below
+        double upperCut = MAX_T + 1;
+        double lowerCut = -MAX_T - 1;
+        double previous = Double.NaN;
+        double previousError = Double.POSITIVE_INFINITY;
+        int evaluations = 0;
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            double h = Math.scalb(1.0, -level);
+            double first = level == 0 ? 0.0 : h;
+            double stride = level == 0 ? h : 2 * h;
+            int steps = (int) Math.floor((MAX_T - first) / stride) + 1;
+            // both signs of t per step, t = 0 only once
+            double[] xs = new double[2 * steps];
+            double[] ws = new double[2 * steps];
+            double[] ts = new double[2 * steps];
+            int n = 0;
+            for (int i = 0; i < steps; i++) {
+                double t = first + i * stride;
+                if (t < upperCut && node(kind, a, b, t, xs, ws, n)) ts[n++] = t;
+                if (t != 0.0 && -t > lowerCut && node(kind, a, b, -t, xs, ws, n)) ts[n++] = -t;
+            }
+            double[] ys = new double[n];
+            f.sample(Arrays.copyOf(xs, n), ys);
+            evaluations += n;
+            // this level was sampled past the end of the budget, so the last full one stands;
+            // before two levels agree its error is only known to be as large as itself
+            if (EvaluationBudget.isExhausted()) {
+                double error = previousError < Double.POSITIVE_INFINITY ? previousError : Math.abs(previous);
+                return QuadratureResult.partial(previous, error, evaluations);
+            }
+
+            double levelSum = 0.0;
+            double levelMass = 0.0;
+            for (int i = 0; i < n; i++) {
+                if (ts[i] >= upperCut || ts[i] <= lowerCut) continue;
+                double term = ws[i] * ys[i];
+                if (Double.isNaN(term) || Double.isInfinite(term)) {
+                    // beyond a tail that has already vanished, as for x^2 exp(-x) where x^2
+                    // overflows against an exp(-x) of 0, that side is cut off from here on
+                    double total = mass + levelMass;
+                    if (ts[i] > lastT && lastT > 0 && Math.abs(lastUpper) < EPSILON * total) {
+                        upperCut = ts[i];
+                        continue;
+                    }
+                    if (ts[i] < firstT && firstT < 0 && Math.abs(lastLower) < EPSILON * total) {
+                        lowerCut = ts[i];
+                        continue;
+                    }
+                    return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+                }
+                levelSum += term;
+                levelMass += Math.abs(term);
+                if (ts[i] > lastT) {
+                    lastT = ts[i];
+                    lastUpper = term;
+                } else if (ts[i] < firstT) {
+                    firstT = ts[i];
+                    lastLower = term;
+                }
+            }
+            sum += levelSum;
+            mass += levelMass;
+            double value = sum * h;
+            double tail = Math.max(Math.abs(lastUpper), Math.abs(lastLower));
+
+            if (level > 0) {
+                double error = Math.abs(value - previous);
+                double tolerance = Math.max(absoluteTolerance, relativeTolerance * Math.abs(value));
+                // once halving the step stops helping, rounding near a bound is what is left,
+                // e.g. 1/sqrt(x - 1) just above 1
+                boolean stalled = level > 3 && error >= previousError;
+                if (error <= tolerance || stalled || level == MAX_LEVEL) {
+                    if (tail > DIVERGENT_TAIL * Math.max(1.0, Math.abs(value))) {
+                        return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+                    }
+                    return new QuadratureResult(value, Math.max(error, tail), evaluations);
+                }
+                previousError = error;
+            }
+            previous = value;
+        }
+        return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+    }
+
+    // Writes the point and weight for t at index n, false when the point has run into a bound
+    // or out of the double range
+    private static boolean node(Kind kind, double a, double b, double t, double[] xs, double[] ws, int n) {
+        double u = 0.5 * Math.PI * Math.sinh(t);
+        double du = 0.5 * Math.PI * Math.cosh(t);
+        double x;
+        double w;
+        switch (kind) {
+            case FINITE: {
+                // the distance to the nearer bound, computed directly so points crowd into it
+                // without cancellation
+                double e = Math.exp(-2 * Math.abs(u));
+                double d = (b - a) * e / (1 + e);
+                x = u > 0 ? b - d : a + d;
+                w = (b - a) * 2 * du * e / ((1 + e) * (1 + e));
+                if (x <= a || x >= b) w = 0.0;
+                break;
+            }
+            case UPPER_INFINITE:
+            case LOWER_INFINITE: {
+                double d = Math.exp(u);
+                x = kind == Kind.UPPER_INFINITE ? a + d : b - d;
+                w = du * d;
+                if (Double.isInfinite(x) || x == a || x == b || d == 0.0) w = 0.0;
+                break;
+            }
+            default: {
+                x = Math.sinh(u);
+                w = du * Math.cosh(u);
+                if (Double.isInfinite(x) || Double.isInfinite(w)) w = 0.0;
+                break;
+            }
+        }
+        if (w == 0.0) return false;
+        xs[n] = x;
+        ws[n] = w;
+        return true;
+    }
+}
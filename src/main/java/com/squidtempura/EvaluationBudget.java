@@ -0,0 +1,86 @@
+package com.squidtempura;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A cancellation token with a time and operation limit for evaluations. Evaluation checks it at
+// its expensive steps (columns, integrals, derivatives, recursive calls) and once it runs out
+// gives NaN for whatever is left, so the caller gets a partial result and isIncomplete() is true.
+// Operations are counted in samples of a node. Parallel integration spends one budget from
+// several worker threads; cancel() may be called from any thread.
+public class EvaluationBudget {
+    // the budget of whatever evaluation the current thread is running
+    private static final ThreadLocal<EvaluationBudget> CURRENT = new ThreadLocal<>();
+
+    private final long deadline;
+    private final long maxOperations;
+    private final AtomicLong operations = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile boolean exhausted;
+
+    public EvaluationBudget(long timeoutMillis, long maxOperations) {
+        long now = System.nanoTime();
+        long timeout = timeoutMillis >= Long.MAX_VALUE / 1_000_000L ? Long.MAX_VALUE : timeoutMillis * 1_000_000L;
+        this.deadline = timeout >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout;
+        this.maxOperations = maxOperations;
+    }
+
+    public static EvaluationBudget ofMillis(long timeoutMillis) {
+        return new EvaluationBudget(timeoutMillis, Long.MAX_VALUE);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Whether an evaluation stopped early under this budget, or may have: a cancelled budget only
+    // notices at its next charge, and whatever finished in between is not trusted either
+    public boolean isIncomplete() {
+        return exhausted || cancelled;
+    }
+
+    private boolean charge(long ops) {
+        if (exhausted) return false;
+        long spent = operations.addAndGet(ops);
+        if (cancelled || spent > maxOperations || (deadline != Long.MAX_VALUE && System.nanoTime() > deadline)) {
+            exhausted = true;
+            return false;
+        }
+        return true;
+    }
+
+    // Installs this budget for the current thread, returning the one to restore with exit
+    EvaluationBudget enter() {
+        return install(this);
+    }
+
+    // Installs `budget`, possibly null, e.g. on a worker thread computing part of an evaluation
+    static EvaluationBudget install(EvaluationBudget budget) {
+        EvaluationBudget previous = CURRENT.get();
+        CURRENT.set(budget);
+        return previous;
+    }
+
+    static EvaluationBudget current() {
+        return CURRENT.get();
+    }
+
+    static void exit(EvaluationBudget previous) {
+        CURRENT.set(previous);
+    }
+
+    // Charges the current thread's budget, false once there is nothing left to spend
+    static boolean spend(long ops) {
+        EvaluationBudget b = CURRENT.get();
+        return b == null || b.charge(ops);
+    }
+
+    // Results computed while this is true may be missing values and must not be cached
+    static boolean isExhausted() {
+        EvaluationBudget b = CURRENT.get();
+        return b != null && (b.exhausted || b.cancelled);
+    }
+}
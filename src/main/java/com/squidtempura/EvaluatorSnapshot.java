@@ -0,0 +1,1118 @@
+package com.squidtempura;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleUnaryOperator;
+
+// One set of definitions, linked and ready to evaluate. Never changes after construction apart
+// from its caches, which are concurrent, so any number of threads can sample it at once.
+public class EvaluatorSnapshot {
+
+    private static final int COMPILE_THRESHOLD = 1000;
+    // per-point cost, in node evaluations, above which a Chebyshev proxy pays for its fit
+    private static final int PROXY_COST = 200;
+    private static final double PROXY_TOLERANCE = 1e-10;
+    // per-point cost above which an integral is sampled by several threads
+    private static final int PARALLEL_COST = 1000;
+    // equal segments such an integral starts from, enough to keep every thread busy at once
+    private static final int PARALLEL_PIECES = 16;
+    // panels of a fresh antiderivative table across the range of bounds it is built for; zooming
+    // far enough in or out rebuilds it at a new spacing
+    private static final int TABLE_PANELS = 512;
+    private static final int MAX_TABLE_KNOTS = 1 << 16;
+    // accepted error of a rough panel's adaptive integral, relative to its value
+    private static final double TABLE_PANEL_ERROR = 1e-6;
+    private static final int PREVIEW_CACHE_ENTRIES = 1 << 10;
+    // distinct expression texts linked before every per-expression cache is started over
+    static final int MAX_LINKED = 1 << 10;
+    // record kinds in the disk cache
+    private static final long INTEGRAL_RECORD = 1;
+    private static final long TABLE_RECORD = 2;
+    private static final long DOUBLE_INTEGRAL_RECORD = 3;
+    // set while a thread samples the integrand of an enclosing integral point by point
+    private static final ThreadLocal<Boolean> INNER = new ThreadLocal<>();
+
+    private final FunctionGraph functions;
+    private final Parameters parameters;
+    private final boolean interpreterOnly;
+    private final boolean proxies;
+    // what int(...) aims for, met when the error estimate is below either
+    private final double absoluteTolerance;
+    private final double relativeTolerance;
+    private final BytecodeCompiler compiler;
+    private final ColumnKernels kernels;
+    // keyed by canonical text, as every edit parses the expressions into new trees; the caches
+    // below are keyed by the linked nodes, so an expression that reads the same after an edit
+    // keeps its compiled tier, proxies and tables
+    private final Map<String, ExprNode> linkedCache = new ConcurrentHashMap<>();
+    private final Map<ExprNode, TieredFunction> tiers = new ConcurrentHashMap<>();
+    private final IntegralCache integralCache;
+    private final Map<ExprNode, ChebyshevProxy> proxyCache = new ConcurrentHashMap<>();
+    private final Map<ExprNode, AntiderivativeTable> antiderivatives = new ConcurrentHashMap<>();
+    // shared by every snapshot, null when nothing is persisted
+    private final DiskCache diskCache;
+    // per integrand: hash of its text and every definition it reaches, and the parameters they use
+    private final Map<ExprNode, long[]> definitionKeys = new ConcurrentHashMap<>();
+    // knots of the table last written under a key, so panning rewrites it only once it has doubled
+    private final Map<Long, Integer> persistedKnots = new ConcurrentHashMap<>();
+    private final Map<ExprNode, Boolean> costlyIntegrands = new ConcurrentHashMap<>();
+    private final Map<ExprNode, Boolean> nestedIntegrands = new ConcurrentHashMap<>();
+    // the snapshots withTolerance handed out, keyed by their relative tolerance
+    private final Map<Double, EvaluatorSnapshot> previews = new ConcurrentHashMap<>();
+
+    EvaluatorSnapshot(FunctionGraph functions, Parameters parameters, boolean interpreterOnly, boolean proxies,
+                      double absoluteTolerance, double relativeTolerance, IntegralCache integralCache,
+                      DiskCache diskCache, BytecodeCompiler compiler, ColumnKernels kernels) {
+        this.functions = functions;
+        this.parameters = parameters;
+        this.interpreterOnly = interpreterOnly;
+        this.proxies = proxies;
+        this.absoluteTolerance = absoluteTolerance;
+        this.relativeTolerance = relativeTolerance;
+        this.integralCache = integralCache;
+        this.diskCache = diskCache;
+        this.compiler = compiler;
+        this.kernels = kernels;
+        // prepare every definition up front so evaluation never links lazily on a hot path
+        for (String name : functions.names()) {
+            ExprNode body = functions.body(name);
+            if (body != null) tier(body);
+        }
+        parameters.register(this);
+    }
+
+    public double evaluate(ExprNode node, double x) {
+        return tier(link(node)).applyAsDouble(x);
+    }
+
+    public void evaluate(ExprNode node, double[] xs, double[] out) {
+        evalColumn(link(node), xs, xs.length, out, null);
+    }
+
+    public void evaluate(ExprNode node, double left, double step, int count, double[] out) {
+        sampleColumn(link(node), left, step, count, out);
+    }
+
+    // The same under a budget: once it runs out the rest of the result is NaN and
+    // budget.isIncomplete() is set
+    public double evaluate(ExprNode node, double x, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            return evaluate(node, x);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    public void evaluate(ExprNode node, double[] xs, double[] out, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            evaluate(node, xs, out);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    public void evaluate(ExprNode node, double left, double step, int count, double[] out, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            evaluate(node, left, step, count, out);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    // A shared sampling grid for one frame, see SampleFrame
+    public SampleFrame frame(double left, double step, int count) {
+        return new SampleFrame(this, left, step, count);
+    }
+
+    // Value and the first `order` derivatives at x, i.e. {f(x), f'(x), f''(x), ...}
+    public double[] evaluateWithDerivatives(ExprNode node, double x, int order) {
+        TaylorJet jet = evalJet(link(node), TaylorJet.variable(x, order));
+        double[] out = new double[order + 1];
+        for (int k = 0; k <= order; k++) {
+            out[k] = jet.derivative(k);
+        }
+        return out;
+    }
+
+    public double[] evaluateWithDerivatives(ExprNode node, double x, int order, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            return evaluateWithDerivatives(node, x, order);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    // An enclosure of every value over [x0, x1], see Interval
+    public Interval evaluateInterval(ExprNode node, double x0, double x1) {
+        return evalInterval(link(node), Interval.of(Math.min(x0, x1), Math.max(x0, x1)));
+    }
+
+    // Whether evaluateInterval gives more than Interval.UNKNOWN over ranges, i.e. the expression
+    // has no recursive calls and no derivatives or integrals that move with x
+    public boolean isIntervalSupported(ExprNode node) {
+        return intervalSupported(link(node), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    public boolean isInterpreterOnly() {
+        return interpreterOnly;
+    }
+
+    public boolean isProxiesEnabled() {
+        return proxies;
+    }
+
+    public double getAbsoluteTolerance() {
+        return absoluteTolerance;
+    }
+
+    public double getRelativeTolerance() {
+        return relativeTolerance;
+    }
+
+    // The same definitions at another accuracy, e.g. for a quick first estimate. Its integrals go
+    // to a small cache of its own and never to disk, so they cannot stand in for these ones. It is
+    // made once per accuracy and kept, linked, compiled and cached, for every later estimate
+    public EvaluatorSnapshot withTolerance(double absolute, double relative) {
+        EvaluatorSnapshot preview = previews.get(relative);
+        if (preview != null && preview.absoluteTolerance == absolute) return preview;
+        preview = new EvaluatorSnapshot(functions, parameters, interpreterOnly, proxies, absolute, relative,
+                new IntegralCache(PREVIEW_CACHE_ENTRIES, IntegralCache.DEFAULT_MAX_BYTES), null, compiler, kernels);
+        previews.put(relative, preview);
+        return preview;
+    }
+
+    // For its hit, miss and eviction counters
+    public IntegralCache getIntegralCache() {
+        return integralCache;
+    }
+
+    // The value of an int(...) node together with its error estimate
+    public QuadratureResult integrate(ExprNode integral, double x) {
+        ExprNode linked = link(integral);
+        if (linked.kind == NodeKind.INTEGRAL2) return integral2Result(linked, x);
+        if (linked.kind != NodeKind.INTEGRAL) return new QuadratureResult(evaluate(integral, x), Double.NaN, 0);
+        return integralResult(linked, x);
+    }
+
+    public QuadratureResult integrate(ExprNode integral, double x, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            return integrate(integral, x);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    // A Chebyshev proxy of an expensive expression valid on [left, right], or null when the
+    // expression is cheap or not smooth there. The proxy spans twice the requested interval and
+    // is refit only once a request leaves it.
+    public ChebyshevProxy proxy(ExprNode node, double left, double right) {
+        if (!proxies || !(right > left) || !Double.isFinite(left) || !Double.isFinite(right)) return null;
+        ExprNode linked = link(node);
+        ChebyshevProxy p = proxyCache.get(linked);
+        boolean stale = p == null || !p.covers(left, right)
+                // a failed fit may succeed once zoomed in far enough to skip the rough part
+                || (!p.isConverged() && right - left < (p.b - p.a) / 4);
+        if (stale) {
+            if (cost(linked, new IdentityHashMap<>()) < PROXY_COST) return null;
+            double margin = 0.5 * (right - left);
+            long mask = dependencies(linked);
+            long stamp = parameters.stamp(mask);
+            p = ChebyshevProxy.fit((xs, out) -> evalColumn(linked, xs, xs.length, out, null),
+                    left - margin, right + margin, PROXY_TOLERANCE);
+            // a fit cut short by the budget says nothing about smoothness
+            if (EvaluationBudget.isExhausted()) return null;
+            remember(proxyCache, linked, p, mask, stamp);
+        }
+        return p.isConverged() ? p : null;
+    }
+
+    public ChebyshevProxy proxy(ExprNode node, double left, double right, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            return proxy(node, left, right);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    // The proxy last fitted for an expression, without fitting a new one
+    public ChebyshevProxy currentProxy(ExprNode node) {
+        if (!proxies) return null;
+        ChebyshevProxy p = proxyCache.get(link(node));
+        return p != null && p.isConverged() ? p : null;
+    }
+
+    FunctionGraph functions() {
+        return functions;
+    }
+
+    // Drops every cached result that depends on the parameter in `slot`; compiled code and
+    // everything independent of it stays
+    public void invalidateParameter(int slot) {
+        long bit = 1L << slot;
+        integralCache.invalidate(bit);
+        proxyCache.keySet().removeIf(node -> (node.paramMask & bit) != 0);
+        antiderivatives.keySet().removeIf(node -> (node.paramMask & bit) != 0);
+        for (String name : functions.names()) {
+            RecursiveDefinition r = functions.recursion(name);
+            if (r != null && (functions.body(name).paramMask & bit) != 0) r.clear();
+        }
+    }
+
+    // Empties the memo of every recursive definition
+    void clearRecursion() {
+        for (String name : functions.names()) {
+            RecursiveDefinition r = functions.recursion(name);
+            if (r != null) r.clear();
+        }
+    }
+
+    public RecursiveDefinition recursion(String name) {
+        return functions.recursion(name);
+    }
+
+    public Map<String, String> getDefinitionErrors() {
+        return functions.errors();
+    }
+
+    public String findError(ExprNode node) {
+        return functions.errorFor(node);
+    }
+
+    ExprNode link(ExprNode node) {
+        String text = node.toString();
+        ExprNode linked = linkedCache.get(text);
+        if (linked == null) {
+            if (linkedCache.size() >= MAX_LINKED) forgetExpressions();
+            linked = functions.link(parameters.bind(node));
+            ExprNode raced = linkedCache.putIfAbsent(text, linked);
+            if (raced != null) linked = raced;
+        }
+        return linked;
+    }
+
+    // Starts the per-expression caches over once typing has gone through many expressions.
+    // Integral results stay, as they are keyed by text hash; the definitions are prepared again
+    private synchronized void forgetExpressions() {
+        if (linkedCache.size() < MAX_LINKED) return;
+        linkedCache.clear();
+        tiers.clear();
+        proxyCache.clear();
+        antiderivatives.clear();
+        definitionKeys.clear();
+        persistedKnots.clear();
+        costlyIntegrands.clear();
+        nestedIntegrands.clear();
+        for (String name : functions.names()) {
+            ExprNode body = functions.body(name);
+            if (body != null) tier(body);
+        }
+    }
+
+    // The parameters node reads, those of the definitions it calls included
+    public long parameterMask(ExprNode node) {
+        return dependencies(link(node));
+    }
+
+    // Moves whenever one of the parameters node reads is set; -1 while one is being set
+    public long parameterStamp(ExprNode node) {
+        return parameters.stamp(parameterMask(node));
+    }
+
+    // Entries in the per-expression caches, for telling that they stay put across edits
+    int expressionCacheSize() {
+        return linkedCache.size() + tiers.size() + proxyCache.size() + antiderivatives.size()
+                + definitionKeys.size() + costlyIntegrands.size() + nestedIntegrands.size();
+    }
+
+    private static int cost(ExprNode n, Map<ExprNode, Integer> memo) {
+        Integer known = memo.get(n);
+        if (known != null) return known;
+        long c = 1;
+        for (ExprNode arg : n.args) {
+            c += cost(arg, memo);
+        }
+        if (n.target != null) {
+            int body = cost(n.target, memo);
+            c += n.kind == NodeKind.DERIVATIVE ? (long) body * (n.order + 1) * (n.order + 1) : body;
+        }
+        if ((n.kind == NodeKind.INTEGRAL || n.kind == NodeKind.INTEGRAL2) && n.dependsOnX) {
+            c += 500L * cost(n.args[0], memo);
+        }
+        int result = (int) Math.min(c, Integer.MAX_VALUE / 2);
+        memo.put(n, result);
+        return result;
+    }
+
+    // Gauss-Kronrod unless a bound is infinite or the integrand is not finite at one, which
+    // double-exponential quadrature handles in a few dozen samples
+    private QuadratureResult quadrature(ChebyshevProxy.Sampler f, double a, double b, boolean costly) {
+        ChebyshevProxy.Sampler sampler = costly ? (xs, out) -> GaussKronrod.sampleParallel(f, xs, out) : f;
+        boolean improper = Double.isInfinite(a) || Double.isInfinite(b);
+        if (!improper && !Double.isNaN(a) && !Double.isNaN(b) && a != b) {
+            double[] ends = new double[2];
+            f.sample(new double[]{a, b}, ends);
+            improper = !Double.isFinite(ends[0]) || !Double.isFinite(ends[1]);
+        }
+        if (improper) return DoubleExponential.integrate(sampler, a, b, absoluteTolerance, relativeTolerance);
+        if (!costly) return GaussKronrod.integrate(f, a, b, absoluteTolerance, relativeTolerance);
+        // an integral taken once per sample of an outer one starts from a single segment
+        int pieces = INNER.get() == null ? PARALLEL_PIECES : 1;
+        return GaussKronrod.integrateParallel(f, a, b, absoluteTolerance, relativeTolerance, pieces);
+    }
+
+    private void samplePoints(ExprNode node, double[] xs, double[] out) {
+        TieredFunction f = tier(node);
+        Boolean outer = INNER.get();
+        INNER.set(Boolean.TRUE);
+        try {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = EvaluationBudget.isExhausted() ? Double.NaN : f.applyAsDouble(xs[i]);
+            }
+        } finally {
+            INNER.set(outer);
+        }
+    }
+
+    // Whether evaluating n involves an integral whose bounds move with x, callees included
+    private static boolean hasMovingIntegral(ExprNode n) {
+        if ((n.kind == NodeKind.INTEGRAL || n.kind == NodeKind.INTEGRAL2) && n.dependsOnX) return true;
+        for (ExprNode arg : n.args) {
+            if (hasMovingIntegral(arg)) return true;
+        }
+        return n.target != null && hasMovingIntegral(n.target);
+    }
+
+    private void sampleColumn(ExprNode node, double left, double step, int count, double[] out) {
+        double[] xs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = left + i * step;
+        }
+        evalColumn(node, xs, count, out, null);
+    }
+
+    private TieredFunction tier(ExprNode node) {
+        TieredFunction t = tiers.get(node);
+        if (t == null) {
+            DoubleUnaryOperator interpreted = x -> eval(node, x);
+            t = new TieredFunction(interpreted, interpreterOnly ? null : () -> compile(node), COMPILE_THRESHOLD);
+            TieredFunction raced = tiers.putIfAbsent(node, t);
+            if (raced != null) t = raced;
+        }
+        return t;
+    }
+
+    private DoubleUnaryOperator compile(ExprNode node) {
+        if (node.kind == NodeKind.CONSTRAINED) {
+            DoubleUnaryOperator body = compile(node.args[0]);
+            if (body == null) return null;
+            Constraint c = node.constraint;
+            return x -> applyConstraint(c, x, body);
+        }
+        return compiler.compile(node, this::callback, parameters.values());
+    }
+
+    private DoubleUnaryOperator callback(ExprNode n) {
+        if (n.kind == NodeKind.CALL && n.args.length == 1) {
+            if (n.target != null) return tier(n.target);
+            RecursiveDefinition r = functions.recursion(n.name);
+            if (r == null) return a -> Double.NaN;
+            TieredFunction body = tier(functions.body(r.name));
+            return a -> r.evaluate(a, body);
+        }
+        if (n.kind == NodeKind.DERIVATIVE && n.args.length == 1) {
+            return a -> derivativeAt(n, a);
+        }
+        return x -> eval(n, x);
+    }
+
+    private double eval(ExprNode n, double x) {
+        switch (n.kind) {
+            case CONST:
+                return n.value;
+            case VAR:
+                return x;
+            case PARAM:
+                return parameters.value(n.order);
+            case NEG:
+                return -eval(n.args[0], x);
+            case ADD:
+                return eval(n.args[0], x) + eval(n.args[1], x);
+            case SUB:
+                return eval(n.args[0], x) - eval(n.args[1], x);
+            case MUL:
+                return eval(n.args[0], x) * eval(n.args[1], x);
+            case DIV:
+                return Builtin.div(eval(n.args[0], x), eval(n.args[1], x));
+            case MOD:
+                return Builtin.mod(eval(n.args[0], x), eval(n.args[1], x));
+            case POW:
+                return Math.pow(eval(n.args[0], x), eval(n.args[1], x));
+            case FUNC:
+                if (n.fn.arity == 1) return n.fn.apply(eval(n.args[0], x));
+                return n.fn.apply(eval(n.args[0], x), eval(n.args[1], x));
+            case CALL:
+                return evaluateCall(n, x);
+            case DERIVATIVE:
+                return evaluateDerivative(n, x);
+            case INTEGRAL:
+                return evaluateIntegral(n, x);
+            case INTEGRAL2:
+                return integral2Result(n, x).value;
+            case CONSTRAINED:
+                return evaluateConstrained(n, x);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    // Evaluates a whole column of samples per node, arithmetic runs through the column kernels
+    // With a memo, each distinct subexpression (keyed by its canonical text) is computed once per
+    // column of xs and copied out on every later use
+    void evalColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        if (!EvaluationBudget.spend(len)) {
+            Arrays.fill(out, 0, len, Double.NaN);
+            return;
+        }
+        if (memo == null || n.kind == NodeKind.CONST || n.kind == NodeKind.VAR || n.kind == NodeKind.PARAM) {
+            computeColumn(n, xs, len, out, memo);
+            return;
+        }
+        double[] cached = memo.get(n.toString());
+        if (cached != null) {
+            System.arraycopy(cached, 0, out, 0, len);
+            return;
+        }
+        computeColumn(n, xs, len, out, memo);
+        if (!EvaluationBudget.isExhausted()) memo.put(n.toString(), Arrays.copyOf(out, len));
+    }
+
+    private void computeColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        switch (n.kind) {
+            case CONST:
+                Arrays.fill(out, 0, len, n.value);
+                return;
+            case VAR:
+                System.arraycopy(xs, 0, out, 0, len);
+                return;
+            case PARAM:
+                Arrays.fill(out, 0, len, parameters.value(n.order));
+                return;
+            case NEG:
+                evalColumn(n.args[0], xs, len, out, memo);
+                kernels.neg(out, out, len);
+                return;
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+                evalArithmeticColumn(n, xs, len, out, memo);
+                return;
+            case MOD:
+            case POW: {
+                evalColumn(n.args[0], xs, len, out, memo);
+                if (n.kind == NodeKind.POW && n.args[1].kind == NodeKind.CONST && n.args[1].value == 2.0) {
+                    kernels.binary(NodeKind.MUL, out, out, out, len);
+                    return;
+                }
+                double[] right = new double[len];
+                evalColumn(n.args[1], xs, len, right, memo);
+                for (int i = 0; i < len; i++) {
+                    out[i] = n.kind == NodeKind.POW ? Math.pow(out[i], right[i]) : Builtin.mod(out[i], right[i]);
+                }
+                return;
+            }
+            case FUNC:
+                evalFunctionColumn(n, xs, len, out, memo);
+                return;
+            case CALL:
+                evalCallColumn(n, xs, len, out, memo);
+                return;
+            case DERIVATIVE:
+                if (n.args.length != 1) break;
+                evalColumn(n.args[0], xs, len, out, memo);
+                for (int i = 0; i < len; i++) {
+                    out[i] = derivativeAt(n, out[i]);
+                }
+                return;
+            case INTEGRAL:
+                if (!n.dependsOnX) {
+                    Arrays.fill(out, 0, len, evaluateIntegral(n, 0.0));
+                    return;
+                }
+                evalIntegralColumn(n, xs, len, out, memo);
+                return;
+            case INTEGRAL2:
+                if (n.dependsOnX) break;
+                Arrays.fill(out, 0, len, integral2Result(n, 0.0).value);
+                return;
+            case CONSTRAINED:
+                evalColumn(n.args[0], xs, len, out, memo);
+                for (int i = 0; i < len; i++) {
+                    if (!n.constraint.allowsX(xs[i])) {
+                        out[i] = Double.NaN;
+                    } else if (!Double.isNaN(out[i]) && !Double.isInfinite(out[i]) && !n.constraint.allowsY(out[i])) {
+                        out[i] = Double.NaN;
+                    }
+                }
+                return;
+            default:
+                break;
+        }
+        for (int i = 0; i < len; i++) {
+            out[i] = EvaluationBudget.isExhausted() ? Double.NaN : eval(n, xs[i]);
+        }
+    }
+
+    private void evalArithmeticColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        ExprNode a = n.args[0];
+        ExprNode b = n.args[1];
+        if (b.kind == NodeKind.CONST) {
+            evalColumn(a, xs, len, out, memo);
+            kernels.binary(n.kind, out, b.value, out, len);
+            return;
+        }
+        if (a.kind == NodeKind.CONST && (n.kind == NodeKind.ADD || n.kind == NodeKind.MUL)) {
+            evalColumn(b, xs, len, out, memo);
+            kernels.binary(n.kind, out, a.value, out, len);
+            return;
+        }
+        double[] right = new double[len];
+        evalColumn(a, xs, len, out, memo);
+        evalColumn(b, xs, len, right, memo);
+        kernels.binary(n.kind, out, right, out, len);
+    }
+
+    private void evalFunctionColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        evalColumn(n.args[0], xs, len, out, memo);
+        if (n.fn == Builtin.SQRT) {
+            kernels.sqrt(out, out, len);
+        } else if (n.fn == Builtin.ABS) {
+            kernels.abs(out, out, len);
+        } else if (n.fn.arity == 1) {
+            // transcendental functions have no lane-wise form, they stay scalar
+            for (int i = 0; i < len; i++) {
+                out[i] = n.fn.apply(out[i]);
+            }
+        } else {
+            double[] second = new double[len];
+            evalColumn(n.args[1], xs, len, second, memo);
+            for (int i = 0; i < len; i++) {
+                out[i] = n.fn.apply(out[i], second[i]);
+            }
+        }
+    }
+
+    private void evalCallColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        RecursiveDefinition r = n.target == null ? functions.recursion(n.name) : null;
+        if ((n.target == null && r == null) || n.args.length != 1) {
+            Arrays.fill(out, 0, len, Double.NaN);
+            return;
+        }
+        double[] args = new double[len];
+        evalColumn(n.args[0], xs, len, args, memo);
+        if (r != null) {
+            // ascending arguments mostly hit the memo left by the previous one
+            TieredFunction body = tier(functions.body(r.name));
+            for (int i = 0; i < len; i++) {
+                out[i] = EvaluationBudget.isExhausted() ? Double.NaN : r.evaluate(args[i], body);
+            }
+            return;
+        }
+        // the callee sees a different x column, so its subexpressions cannot share this memo
+        evalColumn(n.target, args, len, out, null);
+    }
+
+    // int(f, a(x), b(x)) over a column: the bound columns, then one cumulative table of f answers
+    // every sample as P(b) - P(a)
+    private void evalIntegralColumn(ExprNode n, double[] xs, int len, double[] out, Map<String, double[]> memo) {
+        double[] lower = new double[len];
+        evalColumn(n.args[1], xs, len, lower, memo);
+        evalColumn(n.args[2], xs, len, out, memo);
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < len; i++) {
+            if (Double.isFinite(lower[i])) {
+                lo = Math.min(lo, lower[i]);
+                hi = Math.max(hi, lower[i]);
+            }
+            if (Double.isFinite(out[i])) {
+                lo = Math.min(lo, out[i]);
+                hi = Math.max(hi, out[i]);
+            }
+        }
+        AntiderivativeTable table = lo <= hi ? antiderivative(n.args[0], lo, hi) : null;
+        for (int i = 0; i < len; i++) {
+            out[i] = table == null ? Double.NaN : table.integrate(lower[i], out[i]);
+        }
+    }
+
+    // A table of the integrand covering [lo, hi]. Panning extends the existing one by the panels
+    // that came into view, plus a margin so small pans need no new panels at all
+    private AntiderivativeTable antiderivative(ExprNode integrand, double lo, double hi) {
+        AntiderivativeTable.Integrand f = new AntiderivativeTable.Integrand() {
+            @Override
+            public void sample(double[] xs, double[] out) {
+                evalColumn(integrand, xs, xs.length, out, null);
+            }
+
+            @Override
+            public boolean isContinuous(double a, double b) {
+                Interval y = evalInterval(integrand, Interval.of(a, b));
+                return y.continuous && !y.partial;
+            }
+
+            @Override
+            public double integrate(double a, double b) {
+                if (evalInterval(integrand, Interval.of(a, b)).isEmpty()) return Double.NaN;
+                QuadratureResult r = GaussKronrod.integrate(this, a, b, absoluteTolerance, relativeTolerance);
+                // e.g. across the pole of 1/x, where the integral does not exist
+                return r.error <= TABLE_PANEL_ERROR * Math.max(1.0, Math.abs(r.value)) ? r.value : Double.NaN;
+            }
+        };
+        double span = hi > lo ? hi - lo : Math.max(1.0, Math.abs(lo)) * 1e-3;
+        double margin = 0.25 * span;
+        long mask = dependencies(integrand);
+        long stamp = parameters.stamp(mask);
+        AntiderivativeTable t = antiderivatives.get(integrand);
+        if (t != null && t.h <= 4.0 * span / TABLE_PANELS && t.h >= span / (8.0 * TABLE_PANELS)) {
+            if (t.covers(lo, hi)) return t;
+            AntiderivativeTable extended = t.extend(f, lo - margin, hi + margin);
+            if (extended.knotCount() <= MAX_TABLE_KNOTS) {
+                if (EvaluationBudget.isExhausted()) return null;
+                remember(antiderivatives, integrand, extended, mask, stamp);
+                persist(integrand, extended, mask, stamp);
+                return extended;
+            }
+        }
+        // a power of two, so the next session asks the disk cache for the same spacing
+        double h = Math.scalb(1.0, Math.getExponent(span / TABLE_PANELS));
+        t = null;
+        if (diskCache != null) {
+            long key = persistentKey(integrand, TABLE_RECORD, h, 0.0);
+            AntiderivativeTable stored = AntiderivativeTable.fromArray(diskCache.get(key));
+            if (stored != null && stored.h == h) {
+                persistedKnots.put(key, stored.knotCount());
+                t = stored.covers(lo, hi) ? stored : stored.extend(f, lo - margin, hi + margin);
+                if (t.knotCount() > MAX_TABLE_KNOTS) t = null;
+            }
+        }
+        if (t == null) t = AntiderivativeTable.build(f, h, lo - margin, hi + margin);
+        if (EvaluationBudget.isExhausted()) return null;
+        remember(antiderivatives, integrand, t, mask, stamp);
+        persist(integrand, t, mask, stamp);
+        return t;
+    }
+
+    // Written under the parameter values of the key only if those are the ones it was built with
+    private void persist(ExprNode integrand, AntiderivativeTable t, long mask, long stamp) {
+        if (diskCache == null || !parameters.unchanged(mask, stamp)) return;
+        long key = persistentKey(integrand, TABLE_RECORD, t.h, 0.0);
+        Integer written = persistedKnots.get(key);
+        if (written != null && t.knotCount() < 2 * written) return;
+        persistedKnots.put(key, t.knotCount());
+        diskCache.put(key, t.toArray());
+    }
+
+    // Names the same result in every run: the integrand, each definition it reaches, the values
+    // of the parameters they use and the accuracy goal, plus a record kind and two numbers
+    private long persistentKey(ExprNode integrand, long kind, double u, double v) {
+        long[] definition = definitionKey(integrand);
+        long h = DiskCache.mix(definition[0], kind);
+        for (long mask = definition[1]; mask != 0; mask &= mask - 1) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            String name = parameters.name(slot);
+            h = DiskCache.mix(h, name == null ? 0L : ExprNode.hash(name));
+            h = DiskCache.mix(h, Double.doubleToLongBits(parameters.value(slot)));
+        }
+        h = DiskCache.mix(h, Double.doubleToLongBits(absoluteTolerance));
+        h = DiskCache.mix(h, Double.doubleToLongBits(relativeTolerance));
+        h = DiskCache.mix(h, Double.doubleToLongBits(u + 0.0));
+        return DiskCache.mix(h, Double.doubleToLongBits(v + 0.0));
+    }
+
+    private long[] definitionKey(ExprNode integrand) {
+        return definitionKeys.computeIfAbsent(integrand, node -> {
+            long[] key = {DiskCache.mix(0xcbf29ce484222325L, node.textHash), node.paramMask};
+            collectDefinitions(node, key, Collections.newSetFromMap(new IdentityHashMap<>()));
+            return key;
+        });
+    }
+
+    // The parameters a result for node reads, those of the definitions it calls included
+    private long dependencies(ExprNode node) {
+        return definitionKey(node)[1];
+    }
+
+    // Files a result unless a parameter in mask changed while it was worked out. A change that
+    // lands between the check and the put is caught by checking again, as invalidateParameter
+    // may already have run by then
+    private <K, V> void remember(Map<K, V> cache, K key, V value, long mask, long stamp) {
+        if (!parameters.unchanged(mask, stamp)) return;
+        cache.put(key, value);
+        if (!parameters.unchanged(mask, stamp)) cache.remove(key, value);
+    }
+
+    private void remember(long hash, long check, double a, double b, QuadratureResult result, long mask,
+                          long stamp) {
+        if (!parameters.unchanged(mask, stamp)) return;
+        integralCache.put(hash, check, a, b, result, mask);
+        if (!parameters.unchanged(mask, stamp)) integralCache.invalidate(mask);
+    }
+
+    // Calls show only a name in the text, so the bodies behind them are hashed in as well
+    private void collectDefinitions(ExprNode node, long[] key, Set<ExprNode> seen) {
+        if (node.kind == NodeKind.CALL || node.kind == NodeKind.DERIVATIVE) {
+            boolean recursive = node.target == null && functions.recursion(node.name) != null;
+            ExprNode body = recursive ? functions.body(node.name) : node.target;
+            if (body != null && seen.add(body)) {
+                key[0] = DiskCache.mix(key[0], body.textHash);
+                key[1] |= body.paramMask;
+                if (recursive) {
+                    for (Map.Entry<Double, Double> base : new TreeMap<>(functions.baseCases(node.name)).entrySet()) {
+                        key[0] = DiskCache.mix(key[0], Double.doubleToLongBits(base.getKey()));
+                        key[0] = DiskCache.mix(key[0], Double.doubleToLongBits(base.getValue()));
+                    }
+                }
+                collectDefinitions(body, key, seen);
+            }
+        }
+        for (ExprNode arg : node.args) {
+            collectDefinitions(arg, key, seen);
+        }
+    }
+
+    private double evaluateCall(ExprNode n, double x) {
+        if (n.args.length != 1) return Double.NaN;
+        if (n.target == null) {
+            RecursiveDefinition r = functions.recursion(n.name);
+            if (r == null) return Double.NaN;
+            return r.evaluate(eval(n.args[0], x), tier(functions.body(r.name)));
+        }
+        return eval(n.target, eval(n.args[0], x));
+    }
+
+    private double evaluateDerivative(ExprNode n, double x) {
+        if (n.args.length != 1) return Double.NaN;
+        return derivativeAt(n, eval(n.args[0], x));
+    }
+
+    private double derivativeAt(ExprNode n, double at) {
+        if (n.target == null || !EvaluationBudget.spend(n.order + 1)) return Double.NaN;
+        return evalJet(n.target, TaylorJet.variable(at, n.order)).derivative(n.order);
+    }
+
+    // Forward-mode differentiation: the same walk as eval, carrying a Taylor jet instead of a double
+    private TaylorJet evalJet(ExprNode n, TaylorJet x) {
+        switch (n.kind) {
+            case CONST:
+                return TaylorJet.constant(n.value, x.order());
+            case VAR:
+                return x;
+            case PARAM:
+                return TaylorJet.constant(parameters.value(n.order), x.order());
+            case NEG:
+                return evalJet(n.args[0], x).negate();
+            case ADD:
+                return evalJet(n.args[0], x).add(evalJet(n.args[1], x));
+            case SUB:
+                return evalJet(n.args[0], x).sub(evalJet(n.args[1], x));
+            case MUL:
+                return evalJet(n.args[0], x).mul(evalJet(n.args[1], x));
+            case DIV:
+                return evalJet(n.args[0], x).div(evalJet(n.args[1], x));
+            case MOD:
+                return evalJet(n.args[0], x).mod(evalJet(n.args[1], x));
+            case POW:
+                return evalJet(n.args[0], x).pow(evalJet(n.args[1], x));
+            case FUNC:
+                if (n.fn.arity == 1) return n.fn.apply(evalJet(n.args[0], x));
+                return n.fn.apply(evalJet(n.args[0], x), evalJet(n.args[1], x));
+            case CALL:
+                if (n.target == null || n.args.length != 1) break;
+                return evalJet(n.target, evalJet(n.args[0], x));
+            case DERIVATIVE:
+                if (n.target == null || n.args.length != 1) break;
+                return derivativeJet(n, evalJet(n.args[0], x));
+            case INTEGRAL:
+                return integralJet(n, x);
+            case INTEGRAL2:
+                if (n.dependsOnX) break;
+                return TaylorJet.constant(integral2Result(n, 0.0).value, x.order());
+            case CONSTRAINED: {
+                if (!n.constraint.allowsX(x.value())) break;
+                TaylorJet y = evalJet(n.args[0], x);
+                double v = y.value();
+                if (Double.isNaN(v) || Double.isInfinite(v) || n.constraint.allowsY(v)) return y;
+                break;
+            }
+            default:
+                break;
+        }
+        return TaylorJet.nan(x.order());
+    }
+
+    private static boolean intervalSupported(ExprNode n, Set<ExprNode> seen) {
+        if (!seen.add(n)) return true;
+        if (n.kind == NodeKind.CALL && n.target == null) return false;
+        if ((n.kind == NodeKind.DERIVATIVE || n.kind == NodeKind.INTEGRAL || n.kind == NodeKind.INTEGRAL2)
+                && n.dependsOnX) return false;
+        for (ExprNode arg : n.args) {
+            if (!intervalSupported(arg, seen)) return false;
+        }
+        return n.target == null || intervalSupported(n.target, seen);
+    }
+
+    // Interval arithmetic: the same walk again, over a whole range of x at once. Recursive calls,
+    // derivatives and integrals with moving bounds are only known at single points
+    private Interval evalInterval(ExprNode n, Interval x) {
+        if (x.isEmpty()) return Interval.EMPTY;
+        switch (n.kind) {
+            case CONST:
+                return Interval.point(n.value);
+            case VAR:
+                return x;
+            case PARAM:
+                return Interval.point(parameters.value(n.order));
+            case NEG:
+                return evalInterval(n.args[0], x).negate();
+            case ADD:
+                return evalInterval(n.args[0], x).add(evalInterval(n.args[1], x));
+            case SUB:
+                return evalInterval(n.args[0], x).sub(evalInterval(n.args[1], x));
+            case MUL:
+                return evalInterval(n.args[0], x).mul(evalInterval(n.args[1], x));
+            case DIV:
+                return evalInterval(n.args[0], x).div(evalInterval(n.args[1], x));
+            case MOD:
+                return evalInterval(n.args[0], x).mod(evalInterval(n.args[1], x));
+            case POW:
+                return evalInterval(n.args[0], x).pow(evalInterval(n.args[1], x));
+            case FUNC:
+                if (n.fn.arity == 1) return n.fn.apply(evalInterval(n.args[0], x));
+                return n.fn.apply(evalInterval(n.args[0], x), evalInterval(n.args[1], x));
+            case CALL: {
+                if (n.args.length != 1) return Interval.EMPTY;
+                Interval arg = evalInterval(n.args[0], x);
+                if (n.target != null) return evalInterval(n.target, arg);
+                return arg.isPoint() ? Interval.point(evaluateCall(n, x.lo)) : Interval.UNKNOWN;
+            }
+            case DERIVATIVE:
+            case INTEGRAL:
+            case INTEGRAL2:
+                if (x.isPoint() || !n.dependsOnX) return Interval.point(eval(n, x.lo));
+                return Interval.UNKNOWN;
+            case CONSTRAINED:
+                return evalInterval(n.args[0], x.constrainX(n.constraint)).constrainY(n.constraint);
+            default:
+                return Interval.EMPTY;
+        }
+    }
+
+    // f^(k)(g) as a jet: expand f to order k + n around g's value, then substitute g
+    private TaylorJet derivativeJet(ExprNode n, TaylorJet arg) {
+        int k = n.order;
+        TaylorJet f = evalJet(n.target, TaylorJet.variable(arg.value(), k + arg.order()));
+        double[] series = new double[arg.order() + 1];
+        double factorial = 1.0;
+        for (int j = 0; j < series.length; j++) {
+            if (j > 0) factorial *= j;
+            series[j] = f.derivative(k + j) / factorial;
+        }
+        return arg.compose(series);
+    }
+
+    // Leibniz rule: d/dx int(f, a(x), b(x)) = f(b) b' - f(a) a', with the value from quadrature
+    private TaylorJet integralJet(ExprNode n, TaylorJet x) {
+        double value = evaluateIntegral(n, x.value());
+        if (!n.dependsOnX) return TaylorJet.constant(value, x.order());
+        TaylorJet a = evalJet(n.args[1], x);
+        TaylorJet b = evalJet(n.args[2], x);
+        TaylorJet upper = b.integrate(0.0, evalJet(n.args[0], b));
+        TaylorJet lower = a.integrate(0.0, evalJet(n.args[0], a));
+        TaylorJet result = upper.sub(lower);
+        result.c[0] = value;
+        return result;
+    }
+
+    private double evaluateConstrained(ExprNode n, double x) {
+        return applyConstraint(n.constraint, x, v -> eval(n.args[0], v));
+    }
+
+    private double applyConstraint(Constraint c, double x, DoubleUnaryOperator body) {
+        if (!c.allowsX(x)) return Double.NaN;
+        double y = body.applyAsDouble(x);
+        if (Double.isNaN(y) || Double.isInfinite(y)) return y;
+        return c.allowsY(y) ? y : Double.NaN;
+    }
+
+    private double evaluateIntegral(ExprNode n, double x) {
+        return integralResult(n, x).value;
+    }
+
+    // Cached by integrand and bound values, so moving bounds hit too whenever they repeat
+    private QuadratureResult integralResult(ExprNode n, double x) {
+        return integralBetween(n, eval(n.args[1], x), eval(n.args[2], x));
+    }
+
+    private QuadratureResult integralBetween(ExprNode n, double a, double b) {
+        ExprNode integrand = n.args[0];
+        boolean moving = n.dependsOnX || n.dependsOnInner;
+        // an inner integral with moving bounds is taken once per node of the outer rule and would
+        // only push reusable results out of the cache; with fixed bounds it is worked out once
+        boolean memo = INNER.get() == null || !moving;
+        QuadratureResult cached = memo ? integralCache.get(integrand.textHash, integrand.textCheck, a, b) : null;
+        if (cached != null) return cached;
+        // taken before the disk key reads the parameter values
+        long mask = dependencies(integrand);
+        long stamp = parameters.stamp(mask);
+        // bounds moving with x would fill the disk a point at a time; their curves persist as tables
+        boolean persistent = diskCache != null && !moving;
+        long key = persistent ? persistentKey(integrand, INTEGRAL_RECORD, a, b) : 0L;
+        if (persistent) {
+            double[] stored = diskCache.get(key);
+            if (stored != null && stored.length == 2) {
+                QuadratureResult result = new QuadratureResult(stored[0], stored[1], 0);
+                remember(integrand.textHash, integrand.textCheck, a, b, result, mask, stamp);
+                return result;
+            }
+        }
+
+        if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(Double.NaN, Double.NaN, 0);
+        // Inner integrals with moving bounds are answered from antiderivative tables when sampled as
+        // a column, and a table depends on the order it was asked in; point by point each inner
+        // integral is a quadrature of its own and the result depends on a and b alone
+        boolean nested = nestedIntegrands.computeIfAbsent(integrand, EvaluatorSnapshot::hasMovingIntegral);
+        ChebyshevProxy.Sampler f = nested ? (xs, out) -> samplePoints(integrand, xs, out)
+                : (xs, out) -> evalColumn(integrand, xs, xs.length, out, null);
+        // decided by the integrand alone, so a result never depends on the machine it ran on
+        boolean costly = costlyIntegrands.computeIfAbsent(integrand,
+                node -> cost(node, new IdentityHashMap<>()) >= PARALLEL_COST);
+        QuadratureResult result = quadrature(f, a, b, costly);
+        if (!EvaluationBudget.isExhausted() && parameters.unchanged(mask, stamp)) {
+            if (persistent) diskCache.put(key, new double[]{result.value, result.error});
+            if (memo) remember(integrand.textHash, integrand.textCheck, a, b, result, mask, stamp);
+        }
+        return result;
+    }
+
+    // int2 over a <= x <= b and lower(x) <= y <= upper(x), y standing for the inner variable
+    private QuadratureResult integral2Result(ExprNode n, double x) {
+        return integral2Between(n, eval(n.args[1], x), eval(n.args[2], x));
+    }
+
+    // Cached like int(...), under a hash of the order of integration, the integrand and both inner
+    // bounds; the texts alone read the same for dx dy and dy dx
+    private QuadratureResult integral2Between(ExprNode n, double a, double b) {
+        ExprNode f = n.args[0];
+        ExprNode lower = n.args[3];
+        ExprNode upper = n.args[4];
+        long hash = DiskCache.mix(DiskCache.mix(DiskCache.mix(DiskCache.mix(DOUBLE_INTEGRAL_RECORD, n.order),
+                f.textHash), lower.textHash), upper.textHash);
+        long check = DiskCache.mix(DiskCache.mix(DiskCache.mix(n.order, f.textCheck), lower.textCheck),
+                upper.textCheck);
+        boolean moving = n.dependsOnX || n.dependsOnInner;
+        boolean memo = INNER.get() == null || !moving;
+        QuadratureResult cached = memo ? integralCache.get(hash, check, a, b) : null;
+        if (cached != null) return cached;
+        long mask = dependencies(n);
+        long stamp = parameters.stamp(mask);
+        boolean persistent = diskCache != null && !moving;
+        long key = persistent ? persistentKey(n, DOUBLE_INTEGRAL_RECORD, a, b) : 0L;
+        if (persistent) {
+            double[] stored = diskCache.get(key);
+            if (stored != null && stored.length == 2) {
+                QuadratureResult result = new QuadratureResult(stored[0], stored[1], 0);
+                remember(hash, check, a, b, result, mask, stamp);
+                return result;
+            }
+        }
+
+        if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(Double.NaN, Double.NaN, 0);
+        // y = lower + (upper - lower) s maps the region onto the rectangle [a, b] x [0, 1]
+        Cubature.Sampler sampler = (xs, ss, out) -> {
+            TieredFunction g1 = tier(lower);
+            TieredFunction g2 = tier(upper);
+            Boolean outer = INNER.get();
+            INNER.set(Boolean.TRUE);
+            try {
+                for (int i = 0; i < xs.length; i++) {
+                    if (EvaluationBudget.isExhausted()) {
+                        out[i] = Double.NaN;
+                        continue;
+                    }
+                    double lo = g1.applyAsDouble(xs[i]);
+                    double width = g2.applyAsDouble(xs[i]) - lo;
+                    out[i] = width * eval2(f, xs[i], lo + width * ss[i]);
+                }
+            } finally {
+                INNER.set(outer);
+            }
+        };
+        QuadratureResult result = Cubature.integrate(sampler, a, b, 0.0, 1.0, absoluteTolerance, relativeTolerance);
+        if (!EvaluationBudget.isExhausted() && parameters.unchanged(mask, stamp)) {
+            if (persistent) diskCache.put(key, new double[]{result.value, result.error});
+            if (memo) remember(hash, check, a, b, result, mask, stamp);
+        }
+        return result;
+    }
+
+    // The integrand of int2 at (x, y); only the parts that use y are walked here, everything else
+    // goes through eval
+    private double eval2(ExprNode n, double x, double y) {
+        if (!n.dependsOnInner) return eval(n, x);
+        switch (n.kind) {
+            case INNER_VAR:
+                return y;
+            case NEG:
+                return -eval2(n.args[0], x, y);
+            case ADD:
+                return eval2(n.args[0], x, y) + eval2(n.args[1], x, y);
+            case SUB:
+                return eval2(n.args[0], x, y) - eval2(n.args[1], x, y);
+            case MUL:
+                return eval2(n.args[0], x, y) * eval2(n.args[1], x, y);
+            case DIV:
+                return Builtin.div(eval2(n.args[0], x, y), eval2(n.args[1], x, y));
+            case MOD:
+                return Builtin.mod(eval2(n.args[0], x, y), eval2(n.args[1], x, y));
+            case POW:
+                return Math.pow(eval2(n.args[0], x, y), eval2(n.args[1], x, y));
+            case FUNC:
+                if (n.fn.arity == 1) return n.fn.apply(eval2(n.args[0], x, y));
+                return n.fn.apply(eval2(n.args[0], x, y), eval2(n.args[1], x, y));
+            case CALL: {
+                if (n.args.length != 1) break;
+                double arg = eval2(n.args[0], x, y);
+                if (n.target != null) return tier(n.target).applyAsDouble(arg);
+                RecursiveDefinition r = functions.recursion(n.name);
+                if (r == null) break;
+                return r.evaluate(arg, tier(functions.body(r.name)));
+            }
+            case DERIVATIVE:
+                if (n.args.length != 1) break;
+                return derivativeAt(n, eval2(n.args[0], x, y));
+            case INTEGRAL:
+                // bounds in y; an integrand in y as well is a triple integral
+                if (n.args[0].dependsOnInner) break;
+                return integralBetween(n, eval2(n.args[1], x, y), eval2(n.args[2], x, y)).value;
+            case INTEGRAL2:
+                return integral2Between(n, eval2(n.args[1], x, y), eval2(n.args[2], x, y)).value;
+            case CONSTRAINED:
+                return applyConstraint(n.constraint, x, v -> eval2(n.args[0], v, y));
+            default:
+                break;
+        }
+        return Double.NaN;
+    }
+}
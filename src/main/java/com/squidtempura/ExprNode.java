@@ -0,0 +1,326 @@
+package com.squidtempura;
+
+public class ExprNode {
+    public static final ExprNode INVALID = new ExprNode(NodeKind.CONST, Double.NaN, null, null, 0, new ExprNode[0], null, null);
+
+    private static final ExprNode[] NO_ARGS = new ExprNode[0];
+
+    public final NodeKind kind;
+    public final double value;
+    public final String name;
+    public final Builtin fn;
+    public final int order;
+    public final ExprNode[] args;
+    public final Constraint constraint;
+    public final ExprNode target;
+    public final boolean dependsOnX;
+    // whether the value depends on the inner variable of an enclosing int2
+    public final boolean dependsOnInner;
+    // bit i set when the value depends on the parameter in slot i, callees included
+    public final long paramMask;
+    // 64-bit FNV-1a of the canonical text, the same in every run
+    public final long textHash;
+    // a second hash of the text, independent of textHash, for caches that must tell apart texts
+    // whose textHash collides
+    public final long textCheck;
+    private final String text;
+
+    private ExprNode(NodeKind kind, double value, String name, Builtin fn, int order, ExprNode[] args,
+                     Constraint constraint, ExprNode target) {
+        this.kind = kind;
+        this.value = value;
+        this.name = name;
+        this.fn = fn;
+        this.order = order;
+        this.args = args;
+        this.constraint = constraint;
+        this.target = target;
+        this.dependsOnX = computeDependsOnX();
+        this.dependsOnInner = computeDependsOnInner();
+        this.paramMask = computeParamMask();
+        this.text = render();
+        this.textHash = hash(text);
+        this.textCheck = check(text);
+    }
+
+    public static ExprNode constant(double value) {
+        return new ExprNode(NodeKind.CONST, value, null, null, 0, NO_ARGS, null, null);
+    }
+
+    public static ExprNode variable() {
+        return new ExprNode(NodeKind.VAR, Double.NaN, "x", null, 0, NO_ARGS, null, null);
+    }
+
+    // The outer variable of an int2 that integrates over y first, so it prints as y
+    static ExprNode variable(String name) {
+        return new ExprNode(NodeKind.VAR, Double.NaN, name, null, 0, NO_ARGS, null, null);
+    }
+
+    public static ExprNode innerVariable(String name) {
+        return new ExprNode(NodeKind.INNER_VAR, Double.NaN, name, null, 0, NO_ARGS, null, null);
+    }
+
+    // A free parameter such as a in a*sin(x); slot is its index in Parameters, -1 until bound
+    public static ExprNode parameter(String name, int slot) {
+        return new ExprNode(NodeKind.PARAM, Double.NaN, name, null, slot, NO_ARGS, null, null);
+    }
+
+    public static ExprNode negate(ExprNode a) {
+        if (a.kind == NodeKind.CONST) return constant(-a.value);
+        return new ExprNode(NodeKind.NEG, Double.NaN, null, null, 0, new ExprNode[]{a}, null, null);
+    }
+
+    public static ExprNode binary(NodeKind kind, ExprNode a, ExprNode b) {
+        if (a.kind == NodeKind.CONST && b.kind == NodeKind.CONST) {
+            return constant(foldBinary(kind, a.value, b.value));
+        }
+        return new ExprNode(kind, Double.NaN, null, null, 0, new ExprNode[]{a, b}, null, null);
+    }
+
+    public static ExprNode func(Builtin fn, ExprNode[] args) {
+        boolean allConst = true;
+        for (ExprNode arg : args) {
+            if (arg.kind != NodeKind.CONST) allConst = false;
+        }
+        if (allConst && args.length == fn.arity) {
+            return constant(fn.arity == 1 ? fn.apply(args[0].value) : fn.apply(args[0].value, args[1].value));
+        }
+        return new ExprNode(NodeKind.FUNC, Double.NaN, fn.symbol, fn, 0, args, null, null);
+    }
+
+    public static ExprNode call(String name, ExprNode[] args) {
+        return call(name, args, null);
+    }
+
+    // A call whose target is the callee's already linked body, evaluated without a name lookup
+    public static ExprNode call(String name, ExprNode[] args, ExprNode target) {
+        return new ExprNode(NodeKind.CALL, Double.NaN, name, null, 0, args, null, target);
+    }
+
+    public static ExprNode derivative(String name, int order, ExprNode[] args) {
+        return derivative(name, order, args, null);
+    }
+
+    public static ExprNode derivative(String name, int order, ExprNode[] args, ExprNode target) {
+        return new ExprNode(NodeKind.DERIVATIVE, Double.NaN, name, null, order, args, null, target);
+    }
+
+    public static ExprNode integral(ExprNode integrand, ExprNode a, ExprNode b) {
+        return new ExprNode(NodeKind.INTEGRAL, Double.NaN, "int", null, 0, new ExprNode[]{integrand, a, b}, null, null);
+    }
+
+    // int2(f, x, a, b, y, lower(x), upper(x)): f over a <= x <= b, lower(x) <= y <= upper(x). With
+    // horizontal set the roles swap, int2(f, y, a, b, x, lower(y), upper(y)); either way the
+    // outer variable is a VAR node and the inner one an INNER_VAR
+    public static ExprNode integral2(ExprNode integrand, ExprNode a, ExprNode b, ExprNode lower, ExprNode upper,
+                                     boolean horizontal) {
+        return new ExprNode(NodeKind.INTEGRAL2, Double.NaN, "int2", null, horizontal ? 1 : 0,
+                new ExprNode[]{integrand, a, b, lower, upper}, null, null);
+    }
+
+    public static ExprNode constrained(ExprNode body, Constraint constraint) {
+        if (constraint == null) return body;
+        return new ExprNode(NodeKind.CONSTRAINED, Double.NaN, null, null, 0, new ExprNode[]{body}, constraint, null);
+    }
+
+    // Rebuilds this node over new children, folding constants again where possible
+    public ExprNode withArgs(ExprNode[] newArgs) {
+        switch (kind) {
+            case CONST:
+            case VAR:
+            case PARAM:
+            case INNER_VAR:
+                return this;
+            case NEG:
+                return negate(newArgs[0]);
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+            case POW:
+                return binary(kind, newArgs[0], newArgs[1]);
+            case FUNC:
+                return func(fn, newArgs);
+            case CALL:
+                return call(name, newArgs, target);
+            case DERIVATIVE:
+                return derivative(name, order, newArgs, target);
+            case INTEGRAL:
+                return integral(newArgs[0], newArgs[1], newArgs[2]);
+            case INTEGRAL2:
+                return integral2(newArgs[0], newArgs[1], newArgs[2], newArgs[3], newArgs[4], order == 1);
+            case CONSTRAINED:
+                return constrained(newArgs[0], constraint);
+            default:
+                return this;
+        }
+    }
+
+    public boolean isValid() {
+        return this != INVALID;
+    }
+
+    static double foldBinary(NodeKind kind, double a, double b) {
+        switch (kind) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return Builtin.div(a, b);
+            case MOD: return Builtin.mod(a, b);
+            case POW: return Math.pow(a, b);
+            default: return Double.NaN;
+        }
+    }
+
+    private boolean computeDependsOnX() {
+        switch (kind) {
+            case CONST:
+                return false;
+            case VAR:
+                return true;
+            case INTEGRAL:
+            case INTEGRAL2:
+                return args[1].dependsOnX || args[2].dependsOnX;
+            case CONSTRAINED:
+                if (constraint.xMin != null || constraint.xMax != null) return true;
+                return args[0].dependsOnX;
+            default:
+                for (ExprNode arg : args) {
+                    if (arg.dependsOnX) return true;
+                }
+                return false;
+        }
+    }
+
+    private boolean computeDependsOnInner() {
+        if (kind == NodeKind.INNER_VAR) return true;
+        // an int2's own inner variable is bound inside it
+        if (kind == NodeKind.INTEGRAL2) return args[1].dependsOnInner || args[2].dependsOnInner;
+        for (ExprNode arg : args) {
+            if (arg.dependsOnInner) return true;
+        }
+        return false;
+    }
+
+    private long computeParamMask() {
+        long mask = kind == NodeKind.PARAM && order >= 0 ? 1L << order : 0L;
+        for (ExprNode arg : args) {
+            mask |= arg.paramMask;
+        }
+        if (target != null) mask |= target.paramMask;
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // multiply-xorshift over the chars, from another seed and multiplier than hash
+    static long check(String s) {
+        long h = 0x6a09e667f3bcc909L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h + s.charAt(i)) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+        }
+        return h;
+    }
+
+    private String render() {
+        switch (kind) {
+            case CONST:
+                return formatNumber(value);
+            case VAR:
+            case PARAM:
+            case INNER_VAR:
+                return name;
+            case NEG:
+                return "-" + wrap(args[0], precedence() > args[0].precedence());
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+                return wrap(args[0], args[0].precedence() < precedence())
+                        + operatorSymbol()
+                        + wrap(args[1], args[1].precedence() <= precedence());
+            case POW:
+                return wrap(args[0], args[0].precedence() <= precedence())
+                        + "^"
+                        + wrap(args[1], args[1].precedence() < precedence());
+            case DERIVATIVE:
+                return name + "'".repeat(order) + renderArgs();
+            case CONSTRAINED:
+                return args[0].text + " {" + constraint + "}";
+            case INTEGRAL2: {
+                String outer = order == 1 ? "y" : "x";
+                String inner = order == 1 ? "x" : "y";
+                return name + "(" + args[0].text + "," + outer + "," + args[1].text + "," + args[2].text + ","
+                        + inner + "," + args[3].text + "," + args[4].text + ")";
+            }
+            default:
+                return name + renderArgs();
+        }
+    }
+
+    private String renderArgs() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(args[i].text);
+        }
+        return sb.append(')').toString();
+    }
+
+    private String wrap(ExprNode child, boolean parens) {
+        return parens ? "(" + child.text + ")" : child.text;
+    }
+
+    private String operatorSymbol() {
+        switch (kind) {
+            case ADD: return "+";
+            case SUB: return "-";
+            case MUL: return "*";
+            case DIV: return "/";
+            default: return "%";
+        }
+    }
+
+    private int precedence() {
+        switch (kind) {
+            case ADD:
+            case SUB:
+                return 1;
+            case MUL:
+            case DIV:
+            case MOD:
+                return 2;
+            case NEG:
+                return 3;
+            case POW:
+                return 4;
+            case CONST:
+                return value < 0 ? 3 : 5;
+            default:
+                return 5;
+        }
+    }
+
+    static String formatNumber(double v) {
+        if (Double.isInfinite(v)) return v > 0 ? "inf" : "-inf";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            return Long.toString((long) v);
+        }
+        return Double.toString(v);
+    }
+}
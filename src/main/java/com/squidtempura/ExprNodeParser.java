@@ -0,0 +1,460 @@
+package com.squidtempura;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExprNodeParser {
+
+    private static final String[] CONSTANT_NAMES = {"pi", "\u03c0", "e", "\u03c6", "inf"};
+    private static final double[] CONSTANT_VALUES = {Math.PI, Math.PI, Math.E, 1.61803398874,
+            Double.POSITIVE_INFINITY};
+
+    public ExprNode parse(String expression) {
+        return parse(expression, "x");
+    }
+
+    // Parses with `variable` as the free variable, e.g. n in a(n)=a(n-1)+1
+    public ExprNode parse(String expression, String variable) {
+        if (expression == null) return ExprNode.INVALID;
+        try {
+            return parseOrThrow(expression, variable);
+        } catch (SyntaxError ex) {
+            return ExprNode.INVALID;
+        }
+    }
+
+    // The unknown name, such as sinx, that parse(expression, variable) stopped at, null when
+    // it parses or fails for another reason
+    public String findUnknownName(String expression, String variable) {
+        if (expression == null) return null;
+        try {
+            parseOrThrow(expression, variable);
+            return null;
+        } catch (SyntaxError ex) {
+            return ex.unknownName;
+        }
+    }
+
+    private ExprNode parseOrThrow(String expression, String variable) {
+        Cursor c = new Cursor(expression, variable);
+        ExprNode node = c.parseExpression();
+        c.skipSpaces();
+        if (c.peek() == '{') {
+            int end = expression.lastIndexOf('}');
+            if (end < c.pos) throw new SyntaxError("Unclosed constraint", c.pos);
+            Constraint constraint = parseConstraint(expression.substring(c.pos + 1, end));
+            node = ExprNode.constrained(node, constraint);
+            c.pos = end + 1;
+            c.skipSpaces();
+        }
+        if (!c.atEnd()) throw new SyntaxError("Unexpected '" + c.peek() + "'", c.pos);
+        return node;
+    }
+
+    public Constraint parseConstraint(String constraintStr) {
+        if (constraintStr == null || constraintStr.trim().isEmpty()) return null;
+        Constraint c = new Constraint();
+        for (String clause : constraintStr.split("&&")) {
+            try {
+                applyClause(c, clause);
+            } catch (SyntaxError ignored) {
+                // malformed clauses are skipped, the rest still apply
+            }
+        }
+        return c.isEmpty() ? null : c;
+    }
+
+    private void applyClause(Constraint c, String clause) {
+        Cursor cur = new Cursor(clause, "x");
+        cur.skipSpaces();
+        if (cur.atEnd()) return;
+
+        String leftOp = null;
+        double leftValue = Double.NaN;
+        char var = cur.peekBoundVariable();
+        if (var == 0) {
+            leftValue = constantValue(cur.parseExpression(), cur);
+            leftOp = cur.readComparison();
+            if (leftOp == null) throw new SyntaxError("Expected comparison", cur.pos);
+            var = cur.peekBoundVariable();
+            if (var == 0) throw new SyntaxError("Expected x or y", cur.pos);
+        }
+        cur.pos++;
+        boolean isX = var == 'x';
+
+        if (leftOp != null) {
+            applyBound(c, leftOp, leftValue, isX, true);
+        }
+
+        cur.skipSpaces();
+        if (cur.atEnd()) return;
+        String rightOp = cur.readComparison();
+        if (rightOp == null) throw new SyntaxError("Expected comparison", cur.pos);
+        double rightValue = constantValue(cur.parseExpression(), cur);
+        cur.skipSpaces();
+        if (!cur.atEnd()) throw new SyntaxError("Unexpected '" + cur.peek() + "'", cur.pos);
+        applyBound(c, rightOp, rightValue, isX, false);
+    }
+
+    private void applyBound(Constraint c, String op, double value, boolean isX, boolean varOnRight) {
+        boolean inc = op.endsWith("=");
+        boolean less = op.startsWith("<");
+        // "v < x" bounds x from below, "x < v" bounds it from above
+        if (less == varOnRight) {
+            c.applyMin(value, inc, isX);
+        } else {
+            c.applyMax(value, inc, isX);
+        }
+    }
+
+    private double constantValue(ExprNode node, Cursor cur) {
+        if (node.kind != NodeKind.CONST || Double.isNaN(node.value)) {
+            throw new SyntaxError("Constraint bounds must be constant", cur.pos);
+        }
+        return node.value;
+    }
+
+    static boolean isConstantName(String name) {
+        return constantIndex(name) >= 0;
+    }
+
+    private static int constantIndex(String name) {
+        for (int i = 0; i < CONSTANT_NAMES.length; i++) {
+            if (CONSTANT_NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static class SyntaxError extends RuntimeException {
+        // set when the error is a name that is neither known nor a parameter
+        String unknownName;
+
+        SyntaxError(String message, int pos) {
+            super(message + " at " + pos);
+        }
+    }
+
+    private static class Cursor {
+        final String s;
+        final String variable;
+        int pos;
+
+        Cursor(String s, String variable) {
+            this.s = s;
+            this.variable = variable;
+        }
+
+        boolean atEnd() {
+            return pos >= s.length();
+        }
+
+        char peek() {
+            return pos < s.length() ? s.charAt(pos) : 0;
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        boolean accept(char c) {
+            skipSpaces();
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!accept(c)) throw new SyntaxError("Expected '" + c + "'", pos);
+        }
+
+        ExprNode parseExpression() {
+            ExprNode left = parseTerm();
+            while (true) {
+                if (accept('+')) {
+                    left = ExprNode.binary(NodeKind.ADD, left, parseTerm());
+                } else if (accept('-')) {
+                    left = ExprNode.binary(NodeKind.SUB, left, parseTerm());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        ExprNode parseTerm() {
+            ExprNode left = parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    left = ExprNode.binary(NodeKind.MUL, left, parseUnary());
+                } else if (accept('/')) {
+                    left = ExprNode.binary(NodeKind.DIV, left, parseUnary());
+                } else if (accept('%')) {
+                    left = ExprNode.binary(NodeKind.MOD, left, parseUnary());
+                } else if (startsOperand()) {
+                    // implicit multiplication: 2x, 3sin(x), (x+1)(x-1)
+                    left = ExprNode.binary(NodeKind.MUL, left, parsePower());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        boolean startsOperand() {
+            skipSpaces();
+            char c = peek();
+            return Character.isDigit(c) || c == '.' || c == '(' || isIdentifierStart(c);
+        }
+
+        ExprNode parseUnary() {
+            if (accept('-')) return ExprNode.negate(parseUnary());
+            if (accept('+')) return parseUnary();
+            return parsePower();
+        }
+
+        ExprNode parsePower() {
+            ExprNode base = parsePrimary();
+            if (accept('^')) {
+                return ExprNode.binary(NodeKind.POW, base, parseUnary());
+            }
+            return base;
+        }
+
+        ExprNode parsePrimary() {
+            skipSpaces();
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                ExprNode inner = parseExpression();
+                expect(')');
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return ExprNode.constant(readNumber());
+            }
+            if (isIdentifierStart(c)) {
+                return parseIdentifier();
+            }
+            if (atEnd()) throw new SyntaxError("Unexpected end of expression", pos);
+            throw new SyntaxError("Unexpected '" + c + "'", pos);
+        }
+
+        double readNumber() {
+            int start = pos;
+            while (Character.isDigit(peek()) || peek() == '.') pos++;
+            if (peek() == 'e' || peek() == 'E') {
+                int mark = pos;
+                pos++;
+                if (peek() == '+' || peek() == '-') pos++;
+                if (Character.isDigit(peek())) {
+                    while (Character.isDigit(peek())) pos++;
+                } else {
+                    // not an exponent, the 'e' is Euler's constant: 2e
+                    pos = mark;
+                }
+            }
+            try {
+                return Double.parseDouble(s.substring(start, pos));
+            } catch (NumberFormatException ex) {
+                throw new SyntaxError("Bad number", start);
+            }
+        }
+
+        String readIdentifier() {
+            int start = pos;
+            while (pos < s.length() && isIdentifierPart(s.charAt(pos))) pos++;
+            return s.substring(start, pos);
+        }
+
+        ExprNode parseIdentifier() {
+            int start = pos;
+            String ident = readIdentifier();
+
+            int primes = 0;
+            while (peek() == '\'') {
+                primes++;
+                pos++;
+                skipSpaces();
+            }
+            if (primes > 0) {
+                if (peek() != '(') throw new SyntaxError("Expected '(' after derivative", pos);
+                return ExprNode.derivative(ident, primes, parseArgs());
+            }
+
+            skipSpaces();
+            boolean call = peek() == '(';
+            if (call) {
+                if (ident.equals("int")) {
+                    ExprNode[] args = parseArgs();
+                    if (args.length != 3) throw new SyntaxError("int expects 3 arguments", start);
+                    return ExprNode.integral(args[0], args[1], args[2]);
+                }
+                if (ident.equals("int2")) {
+                    ExprNode[] args = parseArgs();
+                    if (args.length != 7) throw new SyntaxError("int2 expects 7 arguments", start);
+                    return doubleIntegral(args, start);
+                }
+                Builtin fn = Builtin.lookup(ident);
+                if (fn != null) return builtinCall(fn, start);
+                if (!isAtomName(ident)) {
+                    List<String> parts = splitKnownNames(ident);
+                    if (parts != null && Builtin.lookup(parts.get(parts.size() - 1)) != null) {
+                        ExprNode product = atomProduct(parts.subList(0, parts.size() - 1));
+                        ExprNode callNode = builtinCall(Builtin.lookup(parts.get(parts.size() - 1)), start);
+                        return ExprNode.binary(NodeKind.MUL, product, callNode);
+                    }
+                    return ExprNode.call(ident, parseArgs());
+                }
+            }
+
+            if (isAtomName(ident)) return atom(ident);
+            List<String> parts = splitKnownNames(ident);
+            if (parts != null && Builtin.lookup(parts.get(parts.size() - 1)) == null) {
+                return atomProduct(parts);
+            }
+            // a single letter, possibly with a numeric subscript such as k1 or k_1, is a free
+            // parameter set from a slider; any other unknown name is rejected, as it is far more
+            // likely a typo such as sinx than a constant
+            if (isParameterName(ident)) return ExprNode.parameter(ident, -1);
+            SyntaxError error = new SyntaxError("Unknown name '" + ident + "'", start);
+            error.unknownName = ident;
+            throw error;
+        }
+
+        boolean isParameterName(String name) {
+            if (name.isEmpty() || !Character.isLetter(name.charAt(0))) return false;
+            int i = name.length() > 1 && name.charAt(1) == '_' ? 2 : 1;
+            if (i == 2 && name.length() == 2) return false;
+            for (; i < name.length(); i++) {
+                if (!Character.isDigit(name.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        // int2(f, x, a, b, y, lower, upper): the second and fifth arguments name the variables.
+        // Both are variables inside f, and the outer one is inside lower and upper
+        ExprNode doubleIntegral(ExprNode[] args, int start) {
+            String outer = variableName(args[1]);
+            String inner = variableName(args[4]);
+            if (outer == null || inner == null || outer.equals(inner)) {
+                throw new SyntaxError("int2 needs two different variable names", start);
+            }
+            boolean horizontal = outer.equals("y") && inner.equals("x");
+            ExprNode outerVar = horizontal ? ExprNode.variable("y") : ExprNode.variable();
+            ExprNode innerVar = ExprNode.innerVariable(horizontal ? "x" : "y");
+            return ExprNode.integral2(rename(args[0], outer, outerVar, inner, innerVar), args[2], args[3],
+                    rename(args[5], outer, outerVar, null, null), rename(args[6], outer, outerVar, null, null),
+                    horizontal);
+        }
+
+        // The name a variable argument of int2 stands for, null when it is not a bare name
+        String variableName(ExprNode n) {
+            if (n.kind == NodeKind.VAR) return variable;
+            if (n.kind == NodeKind.PARAM) return n.name;
+            return null;
+        }
+
+        ExprNode rename(ExprNode n, String outer, ExprNode outerVar, String inner, ExprNode innerVar) {
+            String name = variableName(n);
+            if (name != null) {
+                if (name.equals(outer)) return outerVar;
+                if (name.equals(inner)) return innerVar;
+                return n;
+            }
+            if (n.args.length == 0) return n;
+            ExprNode[] args = new ExprNode[n.args.length];
+            for (int i = 0; i < args.length; i++) {
+                // a nested integral's own variables stay its own
+                boolean bound = (n.kind == NodeKind.INTEGRAL && i == 0)
+                        || (n.kind == NodeKind.INTEGRAL2 && (i == 0 || i >= 3));
+                args[i] = bound ? n.args[i] : rename(n.args[i], outer, outerVar, inner, innerVar);
+            }
+            return n.withArgs(args);
+        }
+
+        ExprNode builtinCall(Builtin fn, int start) {
+            ExprNode[] args = parseArgs();
+            if (args.length != fn.arity) throw new SyntaxError(fn.symbol + " expects " + fn.arity + " argument(s)", start);
+            return ExprNode.func(fn, args);
+        }
+
+        ExprNode[] parseArgs() {
+            expect('(');
+            List<ExprNode> args = new ArrayList<>();
+            if (accept(')')) return args.toArray(new ExprNode[0]);
+            do {
+                args.add(parseExpression());
+            } while (accept(','));
+            expect(')');
+            return args.toArray(new ExprNode[0]);
+        }
+
+        boolean isAtomName(String name) {
+            return name.equals(variable) || isConstantName(name);
+        }
+
+        ExprNode atom(String name) {
+            if (name.equals(variable)) return ExprNode.variable();
+            return ExprNode.constant(CONSTANT_VALUES[constantIndex(name)]);
+        }
+
+        ExprNode atomProduct(List<String> names) {
+            ExprNode product = null;
+            for (String name : names) {
+                ExprNode a = atom(name);
+                product = product == null ? a : ExprNode.binary(NodeKind.MUL, product, a);
+            }
+            return product;
+        }
+
+        // Splits run-together names the way exp4j did, e.g. "xsin" -> x, sin
+        List<String> splitKnownNames(String ident) {
+            List<String> parts = new ArrayList<>();
+            int i = 0;
+            while (i < ident.length()) {
+                int best = -1;
+                for (int j = ident.length(); j > i; j--) {
+                    String candidate = ident.substring(i, j);
+                    if (isAtomName(candidate) || Builtin.lookup(candidate) != null) {
+                        best = j;
+                        break;
+                    }
+                }
+                if (best < 0) return null;
+                String part = ident.substring(i, best);
+                if (Builtin.lookup(part) != null && best != ident.length()) return null;
+                parts.add(part);
+                i = best;
+            }
+            return parts.isEmpty() ? null : parts;
+        }
+
+        char peekBoundVariable() {
+            skipSpaces();
+            char c = peek();
+            if (c != 'x' && c != 'y') return 0;
+            char next = pos + 1 < s.length() ? s.charAt(pos + 1) : 0;
+            return isIdentifierPart(next) ? 0 : c;
+        }
+
+        String readComparison() {
+            skipSpaces();
+            char c = peek();
+            if (c != '<' && c != '>') return null;
+            pos++;
+            if (peek() == '=') {
+                pos++;
+                return c + "=";
+            }
+            return String.valueOf(c);
+        }
+    }
+}
@@ -2,5 +2,6 @@ package com.squidtempura;
 
 public enum ExprType {
     FUNCTION,
-    VERTICAL
+    VERTICAL,
+    SEQUENCE
 }
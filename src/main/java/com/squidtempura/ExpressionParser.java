@@ -1,6 +1,8 @@
 package com.squidtempura;
 
 public class ExpressionParser {
+    private final ExprNodeParser nodeParser = new ExprNodeParser();
+
     public ParsedExpression parse(String expression) {
         int start = expression.lastIndexOf('{');
         int end = expression.lastIndexOf('}');
@@ -8,7 +10,7 @@ public class ExpressionParser {
             String base = expression.substring(0, start).trim();
             if (base.isEmpty()) base = expression;
             String constraintStr = expression.substring(start + 1, end).trim();
-            Constraint c = parseConstraint(constraintStr);
+            Constraint c = nodeParser.parseConstraint(constraintStr);
             return parseBaseExpression(base, c);
         }
         return parseBaseExpression(expression, null);
@@ -26,28 +28,55 @@ public class ExpressionParser {
         return def;
     }
 
+    public ExprNode parseBody(FunctionDefinition def) {
+        if (def.isBaseCase()) return ExprNode.constant(tryParseConstant(def.body));
+        return nodeParser.parse(def.body, def.param);
+    }
+
+    // The unknown name, such as sinx in y=sinx+1, that the body of a function or definition
+    // stopped at, null when there is none
+    public String findUnknownName(String expression) {
+        ParsedExpression parsed = parse(expression);
+        if (parsed.type == ExprType.VERTICAL) return null;
+        FunctionDefinition def = parseFunctionDefinition(expression);
+        if (def != null) return def.isBaseCase() ? null : nodeParser.findUnknownName(def.body, def.param);
+        return nodeParser.findUnknownName(parsed.baseExpression, "x");
+    }
+
     private ParsedExpression parseBaseExpression(String base, Constraint constraint) {
         String trimmed = base.trim();
         FunctionDefinition def = tryParseDefinition(trimmed);
         if (def != null) {
-            return new ParsedExpression(def.body, constraint, ExprType.FUNCTION, Double.NaN);
+            // base cases are drawn as part of their sequence
+            if (def.isBaseCase()) return new ParsedExpression(def.body, ExprNode.INVALID, constraint, ExprType.SEQUENCE, Double.NaN);
+            ExprNode body = parseBody(def);
+            if (callsItself(body, def.name)) {
+                ExprNode term = ExprNode.call(def.name, new ExprNode[]{ExprNode.variable()});
+                return new ParsedExpression(def.body, ExprNode.constrained(term, constraint), constraint, ExprType.SEQUENCE, Double.NaN);
+            }
+            return new ParsedExpression(def.body, ExprNode.constrained(body, constraint), constraint, ExprType.FUNCTION, Double.NaN);
         }
         int eq = trimmed.indexOf('=');
         if (eq >= 0) {
             String left = trimmed.substring(0, eq).trim();
             String right = trimmed.substring(eq + 1).trim();
             if (left.equalsIgnoreCase("y")) {
-                return new ParsedExpression(right, constraint, ExprType.FUNCTION, Double.NaN);
+                return functionExpression(right, constraint);
             }
             if (left.equalsIgnoreCase("x")) {
-                Double v = tryParseDouble(right);
+                Double v = tryParseConstant(right);
                 if (v == null) {
-                    return new ParsedExpression("", constraint, ExprType.VERTICAL, Double.NaN);
+                    return new ParsedExpression("", ExprNode.INVALID, constraint, ExprType.VERTICAL, Double.NaN);
                 }
-                return new ParsedExpression("", constraint, ExprType.VERTICAL, v);
+                return new ParsedExpression("", ExprNode.INVALID, constraint, ExprType.VERTICAL, v);
             }
         }
-        return new ParsedExpression(trimmed, constraint, ExprType.FUNCTION, Double.NaN);
+        return functionExpression(trimmed, constraint);
+    }
+
+    private ParsedExpression functionExpression(String body, Constraint constraint) {
+        ExprNode node = ExprNode.constrained(nodeParser.parse(body), constraint);
+        return new ParsedExpression(body, node, constraint, ExprType.FUNCTION, Double.NaN);
     }
 
     private FunctionDefinition tryParseDefinition(String trimmed) {
@@ -66,10 +95,25 @@ public class ExpressionParser {
 
         if (name.isEmpty()) return null;
         if (!isValidIdentifier(name)) return null;
-        if (!arg.equalsIgnoreCase("x")) return null;
-
         if (right.isEmpty()) return null;
-        return new FunctionDefinition(name, right);
+
+        if (arg.equalsIgnoreCase("x")) return new FunctionDefinition(name, right);
+        if (isValidIdentifier(arg) && !ExprNodeParser.isConstantName(arg) && Builtin.lookup(arg) == null) {
+            return new FunctionDefinition(name, arg, right, Double.NaN);
+        }
+        // a base case such as a(0)=1
+        Double at = tryParseConstant(arg);
+        Double value = tryParseConstant(right);
+        if (at == null || value == null) return null;
+        return new FunctionDefinition(name, "x", right, at);
+    }
+
+    private static boolean callsItself(ExprNode node, String name) {
+        if ((node.kind == NodeKind.CALL || node.kind == NodeKind.DERIVATIVE) && name.equals(node.name)) return true;
+        for (ExprNode arg : node.args) {
+            if (callsItself(arg, name)) return true;
+        }
+        return false;
     }
 
     private boolean isValidIdentifier(String s) {
@@ -83,103 +127,10 @@ public class ExpressionParser {
         return true;
     }
 
-    private Constraint parseConstraint(String constraintStr) {
-        if (constraintStr.isEmpty()) return null;
-        Constraint c = new Constraint();
-        String[] parts = constraintStr.split("&&");
-        for (String raw : parts) {
-            String s = raw.replace(" ", "");
-            if (s.isEmpty()) continue;
-
-            if (s.contains("x")) {
-                applyBoundForVar(c, s, true);
-            } else if (s.contains("y")) {
-                applyBoundForVar(c, s, false);
-            }
-        }
-        return c.isEmpty() ? null : c;
-    }
-
-    private void applyBoundForVar(Constraint c, String s, boolean isX) {
-        char var = isX ? 'x' : 'y';
-        int idx = s.indexOf(var);
-        if (idx < 0) return;
-
-        String left = s.substring(0, idx);
-        String right = s.substring(idx + 1);
-
-        Bound leftBound = parseLeftBound(left);
-        Bound rightBound = parseRightBound(right);
-
-        if (leftBound != null) {
-            if (leftBound.op.equals("<")) {
-                c.applyMin(leftBound.value, false, isX);
-            } else if (leftBound.op.equals("<=")) {
-                c.applyMin(leftBound.value, true, isX);
-            } else if (leftBound.op.equals(">")) {
-                c.applyMax(leftBound.value, false, isX);
-            } else if (leftBound.op.equals(">=")) {
-                c.applyMax(leftBound.value, true, isX);
-            }
-        }
-
-        if (rightBound != null) {
-            if (rightBound.op.equals("<")) {
-                c.applyMax(rightBound.value, false, isX);
-            } else if (rightBound.op.equals("<=")) {
-                c.applyMax(rightBound.value, true, isX);
-            } else if (rightBound.op.equals(">")) {
-                c.applyMin(rightBound.value, false, isX);
-            } else if (rightBound.op.equals(">=")) {
-                c.applyMin(rightBound.value, true, isX);
-            }
-        }
-    }
-
-    private Bound parseLeftBound(String s) {
-        if (s.isEmpty()) return null;
-        String op;
-        if (s.endsWith("<=")) op = "<=";
-        else if (s.endsWith(">=")) op = ">=";
-        else if (s.endsWith("<")) op = "<";
-        else if (s.endsWith(">")) op = ">";
-        else return null;
-
-        String num = s.substring(0, s.length() - op.length());
-        Double v = tryParseDouble(num);
-        return v == null ? null : new Bound(op, v);
-    }
-
-    private Bound parseRightBound(String s) {
-        if (s.isEmpty()) return null;
-        String op;
-        if (s.startsWith("<=")) op = "<=";
-        else if (s.startsWith(">=")) op = ">=";
-        else if (s.startsWith("<")) op = "<";
-        else if (s.startsWith(">")) op = ">";
-        else return null;
-
-        String num = s.substring(op.length());
-        Double v = tryParseDouble(num);
-        return v == null ? null : new Bound(op, v);
-    }
-
-    private Double tryParseDouble(String s) {
+    private Double tryParseConstant(String s) {
         if (s == null || s.isEmpty()) return null;
-        try {
-            return Double.parseDouble(s);
-        } catch (NumberFormatException ex) {
-            return null;
-        }
-    }
-
-    private static class Bound {
-        final String op;
-        final double value;
-
-        Bound(String op, double value) {
-            this.op = op;
-            this.value = value;
-        }
+        ExprNode node = nodeParser.parse(s);
+        if (node.kind != NodeKind.CONST || Double.isNaN(node.value)) return null;
+        return node.value;
     }
 }
@@ -0,0 +1,42 @@
+package com.squidtempura;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One finished frame in world coordinates, built by FrameRenderer and never changed afterwards.
+// The panel draws it at whatever transform is current, so the last frame stays on screen while
+// the next one is computed after a pan or zoom.
+public class FrameModel {
+    public static class Area {
+        public final IntegralSpec spec;
+        public final Path2D shape;
+
+        public Area(IntegralSpec spec, Path2D shape) {
+            this.spec = spec;
+            this.shape = shape;
+        }
+    }
+
+    public final FrameRequest request;
+    // per expression: the curve of a function, the dots of a sequence, the shaded integrals
+    public final Map<String, Path2D> curves;
+    public final Map<String, List<Point2D>> dots;
+    public final Map<String, List<Area>> areas;
+    // intersections and axis intercepts
+    public final List<Point2D> intersections;
+    // expressions that ran out of time and are drawn incompletely
+    public final Set<String> degraded;
+
+    public FrameModel(FrameRequest request, Map<String, Path2D> curves, Map<String, List<Point2D>> dots,
+                      Map<String, List<Area>> areas, List<Point2D> intersections, Set<String> degraded) {
+        this.request = request;
+        this.curves = curves;
+        this.dots = dots;
+        this.areas = areas;
+        this.intersections = intersections;
+        this.degraded = degraded;
+    }
+}
@@ -0,0 +1,577 @@
+package com.squidtempura;
+
+import javax.swing.SwingUtilities;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Builds frames off the event thread: curve samples, sequence dots, integral shading and
+// intersections for a FrameRequest, delivered to the listener on the event thread as a
+// FrameModel. One frame is built at a time; a new request cancels the one in progress, whose
+// partial result is thrown away. Everything below run() belongs to the render thread.
+public class FrameRenderer {
+    // time each expression may spend evaluating per frame before it is drawn degraded
+    public static final long EXPRESSION_BUDGET_MILLIS = 100;
+    // samples kept per expression, in widths of the view
+    private static final int KEPT_VIEWS = 4;
+
+    private final Consumer<FrameModel> listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "integrax-render");
+        t.setDaemon(true);
+        return t;
+    });
+    // the job last requested, touched on the event thread only
+    private Job latest;
+
+    // render thread state
+    private SampleFrame frame;
+    // shading per IntegralSpec.key(), see IntegralShading
+    private final Map<String, IntegralShading> shadings = new HashMap<>();
+    // curve samples per expression on the world grid x = k / scale, see SampleStrip; they and
+    // the shadings are kept while the grid stays, i.e. for one scale and snapshot
+    private final Map<String, SampleStrip> strips = new HashMap<>();
+    // per expression, the stamp of the parameters it reads when what is kept for it was worked
+    // out; a slider drops only what belongs to the expressions that use its parameter
+    private final Map<String, Long> stamps = new HashMap<>();
+    private FrameRequest grid;
+    // what each expression gave in the last frame, then the axis intercepts of each expression
+    // and the crossings of each pair, keyed by the expression or by both expressions
+    private Map<String, Sampled> sampled = new HashMap<>();
+    private Map<String, Crossings> crossings = new HashMap<>();
+
+    // One expression as drawn for one range of columns
+    private static final class Sampled {
+        final FrameRequest view;
+        // ys[i] is the sample at grid index from + i, all NaN unless it is a function
+        final long from;
+        final double[] ys;
+        final boolean[] breaks;
+        final Path2D curve;
+        final List<Point2D> dots;
+
+        Sampled(FrameRequest view, long from, double[] ys, boolean[] breaks, Path2D curve, List<Point2D> dots) {
+            this.view = view;
+            this.from = from;
+            this.ys = ys;
+            this.breaks = breaks;
+            this.curve = curve;
+            this.dots = dots;
+        }
+    }
+
+    // Intercepts of one expression or crossings of two on the grid segments from..to, where
+    // segment k runs from sample k - 1 to sample k
+    private static final class Crossings {
+        final FrameRequest view;
+        final long from;
+        final long to;
+        final List<Point2D> points;
+
+        Crossings(FrameRequest view, long from, long to, List<Point2D> points) {
+            this.view = view;
+            this.from = from;
+            this.to = to;
+            this.points = points;
+        }
+    }
+
+    private final class Job implements Runnable {
+        final FrameRequest request;
+        // one budget per expression, shared by its curve, intercepts and shading
+        final Map<ParsedExpression, EvaluationBudget> budgets = new ConcurrentHashMap<>();
+        volatile boolean cancelled;
+
+        Job(FrameRequest request) {
+            this.request = request;
+        }
+
+        EvaluationBudget budgetFor(ParsedExpression parsed) {
+            EvaluationBudget budget = budgets.computeIfAbsent(parsed, p -> EvaluationBudget.ofMillis(EXPRESSION_BUDGET_MILLIS));
+            if (cancelled) budget.cancel();
+            return budget;
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (EvaluationBudget budget : budgets.values()) {
+                budget.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            FrameModel model = render(this);
+            if (cancelled) return;
+            SwingUtilities.invokeLater(() -> {
+                if (latest == this) listener.accept(model);
+            });
+        }
+    }
+
+    public FrameRenderer(Consumer<FrameModel> listener) {
+        this.listener = listener;
+    }
+
+    // Asks for a frame; one already on its way for a matching request is left alone
+    public void request(FrameRequest request) {
+        if (latest != null && latest.request.matches(request)) return;
+        if (latest != null) latest.cancel();
+        latest = new Job(request);
+        executor.execute(latest);
+    }
+
+    // Values on a curve outside of a frame, e.g. for a click
+    public static double evaluateAt(EvaluatorSnapshot snapshot, ParsedExpression parsed, double x, EvaluationBudget budget) {
+        if (parsed.type != ExprType.FUNCTION) return Double.NaN;
+        ChebyshevProxy proxy = snapshot.currentProxy(parsed.node);
+        if (proxy != null && proxy.covers(x, x)) return proxy.value(x);
+        // constraints are part of the parsed node
+        return snapshot.evaluate(parsed.node, x, budget);
+    }
+
+    public static double clampYToConstraint(ParsedExpression parsed, double y) {
+        if (parsed.constraint == null) return y;
+        if (parsed.constraint.yMin != null) {
+            double min = parsed.constraint.yMin;
+            if (y < min || (y == min && !parsed.constraint.yMinInc)) {
+                y = min;
+            }
+        }
+        if (parsed.constraint.yMax != null) {
+            double max = parsed.constraint.yMax;
+            if (y > max || (y == max && !parsed.constraint.yMaxInc)) {
+                y = max;
+            }
+        }
+        return y;
+    }
+
+    private static boolean isValid(double v) {
+        return !(Double.isNaN(v) || Double.isInfinite(v));
+    }
+
+    private FrameModel render(Job job) {
+        FrameRequest request = job.request;
+        if (grid == null || !grid.sameGrid(request)) {
+            shadings.clear();
+            strips.clear();
+            grid = request;
+        }
+        for (int i = 0; i < request.expressions.size(); i++) {
+            ParsedExpression parsed = request.parsed.get(i);
+            long stamp = parsed.node.isValid() ? request.snapshot.parameterStamp(parsed.node) : 0L;
+            Long kept = stamps.put(request.expressions.get(i), stamp);
+            if (kept == null || kept != stamp || stamp < 0) forget(request.expressions.get(i), parsed);
+        }
+        stamps.keySet().retainAll(request.expressions);
+        Map<String, Path2D> curves = new HashMap<>();
+        Map<String, List<Point2D>> dots = new HashMap<>();
+        Map<String, List<FrameModel.Area>> areas = new HashMap<>();
+        Map<String, Sampled> current = new HashMap<>();
+
+        for (int i = 0; i < request.expressions.size() && !job.cancelled; i++) {
+            String expression = request.expressions.get(i);
+            ParsedExpression parsed = request.parsed.get(i);
+            List<FrameModel.Area> shaded = new ArrayList<>();
+            for (IntegralSpec spec : new IntegralParser().extractIntegrals(parsed.node)) {
+                Path2D area = integralArea(request, spec, job.budgetFor(parsed));
+                if (area != null) shaded.add(new FrameModel.Area(spec, area));
+            }
+            areas.put(expression, Collections.unmodifiableList(shaded));
+
+            // a vertical pan leaves the columns, and so everything sampled on them, as they are
+            Sampled s = sampled.get(expression);
+            if (s == null || !s.view.sameColumns(request)) s = sample(job, expression, parsed);
+            current.put(expression, s);
+            if (s.curve != null) curves.put(expression, s.curve);
+            if (s.dots != null) dots.put(expression, s.dots);
+        }
+        Map<String, Crossings> found = new HashMap<>();
+        List<Point2D> intersections = job.cancelled ? new ArrayList<>() : computeIntersections(job, current, found);
+
+        Set<String> degraded = new HashSet<>();
+        for (int i = 0; i < request.expressions.size(); i++) {
+            EvaluationBudget budget = job.budgets.get(request.parsed.get(i));
+            if (budget != null && budget.isIncomplete()) degraded.add(request.expressions.get(i));
+        }
+        // only what was worked out in full is kept for the next frame
+        if (!job.cancelled) {
+            current.keySet().removeAll(degraded);
+            sampled = current;
+            crossings = found;
+            strips.keySet().retainAll(current.keySet());
+        }
+        return new FrameModel(request, Collections.unmodifiableMap(curves), Collections.unmodifiableMap(dots),
+                Collections.unmodifiableMap(areas), Collections.unmodifiableList(intersections),
+                Collections.unmodifiableSet(degraded));
+    }
+
+    // Drops everything kept for one expression: its samples, shading and crossings, and the
+    // shared columns, which may hold its old values
+    private void forget(String expression, ParsedExpression parsed) {
+        strips.remove(expression);
+        sampled.remove(expression);
+        for (IntegralSpec spec : new IntegralParser().extractIntegrals(parsed.node)) {
+            shadings.remove(spec.key());
+        }
+        crossings.keySet().removeIf(key -> key.equals(expression) || key.startsWith(expression + "\n")
+                || key.endsWith("\n" + expression));
+        frame = null;
+    }
+
+    // The grid columns a frame samples, from the one left of the view to the one right of it
+    private static long firstColumn(FrameRequest request) {
+        return (long) Math.floor(request.left() * request.scale);
+    }
+
+    private static long lastColumn(FrameRequest request) {
+        return (long) Math.ceil(request.right() * request.scale);
+    }
+
+    private Sampled sample(Job job, String expression, ParsedExpression parsed) {
+        FrameRequest request = job.request;
+        long from = firstColumn(request);
+        long to = lastColumn(request);
+        double step = 1.0 / request.scale;
+        double[] ys = sampleParsedFunction(job, expression, parsed, from, to);
+        // never join samples across a pole or jump
+        boolean[] breaks = findBreaks(request.snapshot, parsed, from * step, step, ys.length);
+        Path2D curve = parsed.type == ExprType.FUNCTION ? curve(ys, breaks, from, step) : null;
+        List<Point2D> dots = null;
+        if (parsed.type == ExprType.SEQUENCE && parsed.node.isValid()) {
+            dots = Collections.unmodifiableList(sequenceDots(request, parsed, job.budgetFor(parsed)));
+        }
+        return new Sampled(request, from, ys, breaks, curve, dots);
+    }
+
+    private static Path2D curve(double[] ys, boolean[] breaks, long from, double step) {
+        Path2D path = new Path2D.Double();
+        boolean first = true;
+        for (int i = 0; i < ys.length; i++) {
+            double x = (from + i) * step;
+            double y = ys[i];
+
+            if (Double.isNaN(y) || Double.isInfinite(y)) {
+                first = true;
+                continue;
+            }
+            if (breaks != null && breaks[i]) first = true;
+
+            if (first) {
+                path.moveTo(x, y);
+                first = false;
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        return path;
+    }
+
+    // The cached shading of spec, rebuilt when the zoom level or the definitions change; within
+    // one zoom level a pan samples only the newly exposed strip
+    private Path2D integralArea(FrameRequest request, IntegralSpec spec, EvaluationBudget budget) {
+        IntegralShading shading = shadings.get(spec.key());
+        if (shading == null || !shading.matches(request.snapshot, request.scale)) {
+            shading = new IntegralShading(spec, request.snapshot, request.scale, budget);
+            shadings.put(spec.key(), shading);
+        }
+        Path2D area = shading.area(request.left(), request.right(), request.bottom(), request.top(), budget);
+        if (!shading.isComplete()) shadings.remove(spec.key());
+        return area;
+    }
+
+    // Recursive definitions only have values on their lattice, drawn as dots
+    private List<Point2D> sequenceDots(FrameRequest request, ParsedExpression parsed, EvaluationBudget budget) {
+        List<Point2D> out = new ArrayList<>();
+        ExprNode term = parsed.node.kind == NodeKind.CONSTRAINED ? parsed.node.args[0] : parsed.node;
+        RecursiveDefinition r = request.snapshot.recursion(term.name);
+        if (r == null) return out;
+        long first = (long) Math.ceil((request.left() - r.origin) / r.step);
+        long last = (long) Math.floor((request.right() - r.origin) / r.step);
+        first = Math.max(first, 0);
+        if (last < first) return out;
+        // never draw more dots than there are pixels
+        long stride = Math.max(1, (last - first + 1) / Math.max(1, request.width));
+        for (long k = first; k <= last && !budget.isIncomplete(); k += stride) {
+            double x = r.origin + k * r.step;
+            double y = request.snapshot.evaluate(parsed.node, x, budget);
+            if (!isValid(y)) continue;
+            out.add(new Point2D.Double(x, y));
+        }
+        return out;
+    }
+
+    // Samples at grid indices from..to. Those the expression's strip already holds from earlier
+    // frames are reused, so a pan evaluates only the columns it exposes
+    private double[] sampleParsedFunction(Job job, String expression, ParsedExpression parsed, long from, long to) {
+        double[] ys = new double[(int) (to - from + 1)];
+        if (parsed.type != ExprType.FUNCTION) {
+            Arrays.fill(ys, Double.NaN);
+            return ys;
+        }
+        EvaluatorSnapshot snapshot = job.request.snapshot;
+        EvaluationBudget budget = job.budgetFor(parsed);
+        SampleStrip strip = strips.computeIfAbsent(expression, e -> new SampleStrip(1.0 / job.request.scale));
+        // a proxy is fitted to the whole view, never to a strip of a few pixels
+        double low = from * strip.step;
+        double high = to * strip.step;
+        strip.cover(from, to, KEPT_VIEWS * ys.length, (left, step, count, out) -> {
+            ChebyshevProxy proxy = snapshot.proxy(parsed.node, low, high, budget);
+            if (proxy != null && proxy.covers(left, left + (count - 1) * step)) {
+                proxy.sample(left, step, count, out);
+                return;
+            }
+            // every expression is handed the same strip, so they still share their columns
+            if (frame == null || !frame.matches(snapshot, left, step, count)) {
+                frame = snapshot.frame(left, step, count);
+            }
+            System.arraycopy(frame.sample(parsed.node, budget), 0, out, 0, count);
+        });
+        for (int i = 0; i < ys.length; i++) {
+            ys[i] = strip.at(from + i);
+        }
+        // samples cut short by the budget may hold gaps and are not kept
+        if (budget.isIncomplete()) strips.remove(expression);
+        return ys;
+    }
+
+    // Marks the segments between samples k - 1 and k that interval arithmetic cannot prove
+    // continuous, such as those around the poles of tan(x); null when there are none
+    private static boolean[] findBreaks(EvaluatorSnapshot snapshot, ParsedExpression parsed, double left, double step, int count) {
+        if (parsed.type != ExprType.FUNCTION || count < 2) return null;
+        if (!snapshot.isIntervalSupported(parsed.node)) return null;
+        boolean[] breaks = new boolean[count];
+        return markBreaks(snapshot, parsed.node, left, step, 0, count - 1, breaks) ? breaks : null;
+    }
+
+    // Bisects only the ranges that fail, so a smooth curve costs a single interval evaluation
+    private static boolean markBreaks(EvaluatorSnapshot snapshot, ExprNode node, double left, double step,
+                                      int from, int to, boolean[] breaks) {
+        Interval y = snapshot.evaluateInterval(node, left + from * step, left + to * step);
+        if (y.continuous || y.isEmpty()) return false;
+        if (to - from == 1) {
+            breaks[to] = true;
+            return true;
+        }
+        int mid = (from + to) >>> 1;
+        boolean before = markBreaks(snapshot, node, left, step, from, mid, breaks);
+        boolean after = markBreaks(snapshot, node, left, step, mid, to, breaks);
+        return before || after;
+    }
+
+    // Axis intercepts and pairwise crossings. Those of the last frame are kept wherever its
+    // columns overlap this frame's, so after a pan only the newly exposed segments are searched
+    // and after a vertical one none are; found receives them all for the next frame
+    private List<Point2D> computeIntersections(Job job, Map<String, Sampled> current, Map<String, Crossings> found) {
+        FrameRequest request = job.request;
+        List<Point2D> result = new ArrayList<>();
+        if (request.expressions.size() < 2 || request.width <= 2) return result;
+
+        int n = request.expressions.size();
+        for (int i = 0; i < n && !job.cancelled; i++) {
+            String ei = request.expressions.get(i);
+            ParsedExpression pi = request.parsed.get(i);
+            Sampled si = current.get(ei);
+            // Axis intercepts for each function/line
+            addAll(request, result, crossings(job, ei, pi, null, si, null, found));
+            for (int j = i + 1; j < n; j++) {
+                String ej = request.expressions.get(j);
+                addAll(request, result, crossings(job, ei + "\n" + ej, pi, request.parsed.get(j), si, current.get(ej), found));
+            }
+        }
+        return result;
+    }
+
+    private static void addAll(FrameRequest request, List<Point2D> out, List<Point2D> points) {
+        for (Point2D p : points) {
+            if (!containsNear(request, out, p)) out.add(p);
+        }
+    }
+
+    private boolean isComplete(Job job, ParsedExpression parsed) {
+        EvaluationBudget budget = job.budgets.get(parsed);
+        return budget == null || !budget.isIncomplete();
+    }
+
+    // The intercepts of pi when pj is null, else the crossings of pi and pj
+    private List<Point2D> crossings(Job job, String key, ParsedExpression pi, ParsedExpression pj, Sampled si,
+                                    Sampled sj, Map<String, Crossings> found) {
+        FrameRequest request = job.request;
+        double step = 1.0 / request.scale;
+        long from = si.from + 1;
+        long to = si.from + si.ys.length - 1;
+        List<Point2D> points = new ArrayList<>();
+        Crossings last = crossings.get(key);
+        if (last == null || !last.view.sameGrid(request) || last.from > to || last.to < from) {
+            scan(job, pi, pj, si, sj, from, to, points);
+        } else {
+            long keepFrom = Math.max(from, last.from);
+            long keepTo = Math.min(to, last.to);
+            if (from < keepFrom) scan(job, pi, pj, si, sj, from, keepFrom - 1, points);
+            for (Point2D p : last.points) {
+                if (p.getX() >= (keepFrom - 1) * step && p.getX() <= keepTo * step && !containsNear(request, points, p)) {
+                    points.add(p);
+                }
+            }
+            if (keepTo < to) scan(job, pi, pj, si, sj, keepTo + 1, to, points);
+        }
+        if (!job.cancelled && isComplete(job, pi) && (pj == null || isComplete(job, pj))) {
+            found.put(key, new Crossings(request, from, to, points));
+        }
+        return points;
+    }
+
+    // Searches the segments from..to for the intercepts of pi, or for its crossings with pj
+    private void scan(Job job, ParsedExpression pi, ParsedExpression pj, Sampled si, Sampled sj,
+                      long from, long to, List<Point2D> out) {
+        FrameRequest request = job.request;
+        double step = 1.0 / request.scale;
+        if (pi.type == ExprType.VERTICAL || (pj != null && pj.type == ExprType.VERTICAL)) {
+            if (pj != null && pi.type == ExprType.VERTICAL && pj.type == ExprType.VERTICAL) {
+                return;
+            }
+            ParsedExpression v = pi.type == ExprType.VERTICAL ? pi : pj;
+            if (Double.isNaN(v.xConst)) return;
+            // the segment the line is in
+            long k = (long) Math.ceil(v.xConst * request.scale);
+            if (k < from || k > to) return;
+            Point2D p = pj == null ? verticalIntercept(v) : intersectVerticalWithFunction(job, v, v == pi ? pj : pi);
+            if (p != null && !containsNear(request, out, p)) out.add(p);
+            return;
+        }
+
+        if (pj == null && from <= 0 && to >= 0) {
+            // y-intercept at x = 0
+            double y0 = evaluateParsedFunction(job, pi, 0);
+            if (isValid(y0)) {
+                Point2D p = new Point2D.Double(0, y0);
+                if (!containsNear(request, out, p)) out.add(p);
+            }
+        }
+
+        for (long k = from; k <= to && !job.cancelled; k++) {
+            int i = (int) (k - si.from);
+            double prevF = si.ys[i - 1];
+            double f = si.ys[i];
+            double prevG = pj == null ? 0.0 : sj.ys[i - 1];
+            double g = pj == null ? 0.0 : sj.ys[i];
+            if (!isValid(prevF) || !isValid(f) || !isValid(prevG) || !isValid(g)) continue;
+
+            double d0 = prevF - prevG;
+            double d1 = f - g;
+            // a sign change across a pole is not a crossing
+            boolean jump = (si.breaks != null && si.breaks[i]) || (pj != null && sj.breaks != null && sj.breaks[i]);
+
+            if (!jump && (d0 == 0.0 || d0 * d1 < 0.0)) {
+                double a = (k - 1) * step;
+                double b = k * step;
+                Point2D ip = pj == null ? refineRoot(job, pi, a, b) : refineIntersection(job, pi, pj, a, b);
+                if (ip != null && !containsNear(request, out, ip)) out.add(ip);
+            }
+        }
+    }
+
+    private double evaluateParsedFunction(Job job, ParsedExpression parsed, double x) {
+        return evaluateAt(job.request.snapshot, parsed, x, job.budgetFor(parsed));
+    }
+
+    private Point2D refineIntersection(Job job, ParsedExpression f, ParsedExpression g, double a, double b) {
+        double fa = evaluateParsedFunction(job, f, a) - evaluateParsedFunction(job, g, a);
+        double fb = evaluateParsedFunction(job, f, b) - evaluateParsedFunction(job, g, b);
+        if (!isValid(fa) || !isValid(fb)) return null;
+
+        double left = a;
+        double right = b;
+        for (int k = 0; k < 18; k++) {
+            double mid = (left + right) / 2.0;
+            double fm = evaluateParsedFunction(job, f, mid) - evaluateParsedFunction(job, g, mid);
+            if (!isValid(fm)) return null;
+
+            if (fa == 0.0) {
+                left = a;
+                right = a;
+                break;
+            }
+            if (fa * fm <= 0) {
+                right = mid;
+                fb = fm;
+            } else {
+                left = mid;
+                fa = fm;
+            }
+        }
+
+        double x = (left + right) / 2.0;
+        double y = evaluateParsedFunction(job, f, x);
+        if (!isValid(y)) return null;
+        return new Point2D.Double(x, y);
+    }
+
+    private Point2D refineRoot(Job job, ParsedExpression parsed, double a, double b) {
+        double fa = evaluateParsedFunction(job, parsed, a);
+        double fb = evaluateParsedFunction(job, parsed, b);
+        if (!isValid(fa) || !isValid(fb)) return null;
+
+        double left = a;
+        double right = b;
+        for (int k = 0; k < 18; k++) {
+            double mid = (left + right) / 2.0;
+            double fm = evaluateParsedFunction(job, parsed, mid);
+            if (!isValid(fm)) return null;
+
+            if (fa == 0.0) {
+                left = a;
+                right = a;
+                break;
+            }
+            if (fa * fm <= 0) {
+                right = mid;
+                fb = fm;
+            } else {
+                left = mid;
+                fa = fm;
+            }
+        }
+
+        double x = (left + right) / 2.0;
+        return new Point2D.Double(x, 0.0);
+    }
+
+    private static Point2D verticalIntercept(ParsedExpression v) {
+        if (v.constraint != null && !v.constraint.allowsX(v.xConst)) return null;
+        double y0 = clampYToConstraint(v, 0.0);
+        return Double.isNaN(y0) ? null : new Point2D.Double(v.xConst, y0);
+    }
+
+    private Point2D intersectVerticalWithFunction(Job job, ParsedExpression v, ParsedExpression f) {
+        if (v.constraint != null && !v.constraint.allowsX(v.xConst)) return null;
+        double y = evaluateParsedFunction(job, f, v.xConst);
+        if (!isValid(y)) return null;
+        if (v.constraint != null && !v.constraint.allowsY(y)) return null;
+        return new Point2D.Double(v.xConst, y);
+    }
+
+    private static boolean containsNear(FrameRequest request, List<Point2D> pts, Point2D p) {
+        double sx = (p.getX() + request.offsetX) * request.scale + request.width / 2.0;
+        double sy = (-p.getY() - request.offsetY) * request.scale + request.height / 2.0;
+        for (Point2D q : pts) {
+            double qx = (q.getX() + request.offsetX) * request.scale + request.width / 2.0;
+            double qy = (-q.getY() - request.offsetY) * request.scale + request.height / 2.0;
+            if (Math.hypot(sx - qx, sy - qy) <= 6.0) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,65 @@
+package com.squidtempura;
+
+import java.util.List;
+
+// Everything one frame depends on, taken on the event thread: the view, the expressions and the
+// evaluator snapshot. Requests that match give the same frame.
+public class FrameRequest {
+    public final int width;
+    public final int height;
+    public final double scale;
+    public final double offsetX;
+    public final double offsetY;
+    public final List<String> expressions;
+    // parsed[i] belongs to expressions.get(i)
+    public final List<ParsedExpression> parsed;
+    public final EvaluatorSnapshot snapshot;
+    // bumped by the panel when a parameter changes, which the snapshot does not show; the
+    // renderer then works out again only the expressions that use it
+    public final long version;
+
+    public FrameRequest(int width, int height, double scale, double offsetX, double offsetY,
+                        List<String> expressions, List<ParsedExpression> parsed, EvaluatorSnapshot snapshot,
+                        long version) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.expressions = expressions;
+        this.parsed = parsed;
+        this.snapshot = snapshot;
+        this.version = version;
+    }
+
+    public boolean matches(FrameRequest other) {
+        return sameColumns(other) && height == other.height && offsetY == other.offsetY
+                && version == other.version && expressions.equals(other.expressions);
+    }
+
+    // Whether both sample the same world grid x = k / scale, with the same definitions on it
+    public boolean sameGrid(FrameRequest other) {
+        return other != null && scale == other.scale && snapshot == other.snapshot;
+    }
+
+    // Whether both sample the same columns of the grid, which a vertical pan does not change
+    public boolean sameColumns(FrameRequest other) {
+        return sameGrid(other) && width == other.width && offsetX == other.offsetX;
+    }
+
+    public double left() {
+        return (-width / 2.0) / scale - offsetX;
+    }
+
+    public double right() {
+        return (width / 2.0) / scale - offsetX;
+    }
+
+    public double bottom() {
+        return (-height / 2.0) / scale - offsetY;
+    }
+
+    public double top() {
+        return (height / 2.0) / scale - offsetY;
+    }
+}
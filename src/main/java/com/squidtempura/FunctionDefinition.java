@@ -2,10 +2,23 @@ package com.squidtempura;
 
 public class FunctionDefinition {
     public final String name;
+    public final String param;
     public final String body;
+    // the argument of a base case such as a(0)=1, NaN for the general rule
+    public final double at;
 
     public FunctionDefinition(String name, String body) {
+        this(name, "x", body, Double.NaN);
+    }
+
+    public FunctionDefinition(String name, String param, String body, double at) {
         this.name = name;
+        this.param = param;
         this.body = body;
+        this.at = at;
+    }
+
+    public boolean isBaseCase() {
+        return !Double.isNaN(at);
     }
 }
@@ -1,241 +1,262 @@
 package com.squidtempura;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-import net.objecthunter.exp4j.function.Function;
-
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+// Holds the current EvaluatorSnapshot. setFunctions builds a new one off to the side and swaps it
+// in atomically, so a render that captured the old snapshot finishes against consistent definitions.
 public class FunctionEvaluator {
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+    private static final int PARSED_LIMIT = 256;
 
-    private final Map<String, String> functions = new HashMap<>();
-    private final List<Function> compiledFunctions = new ArrayList<>();
-    private boolean functionsDirty = true;
-    private final Map<String, Double> integralCache = new HashMap<>();
-    private static final int MAX_DEPTH = 20;
-    private final ThreadLocal<Integer> evalDepth = ThreadLocal.withInitial(() -> 0);
+    private final ExprNodeParser parser = new ExprNodeParser();
+    // the most recently parsed strings; older ones are parsed again when asked for
+    private final Map<String, ExprNode> parsedCache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ExprNode> eldest) {
+            return size() > PARSED_LIMIT;
+        }
+    };
+    private final BytecodeCompiler compiler = new BytecodeCompiler();
+    private final ColumnKernels kernels = ColumnKernels.create();
+    private final Parameters parameters = new Parameters();
+    private int integralCacheEntries = IntegralCache.DEFAULT_MAX_ENTRIES;
+    private long integralCacheBytes = IntegralCache.DEFAULT_MAX_BYTES;
+    private DiskCache diskCache = openDiskCache(System.getProperty("integrax.cacheDir"),
+            Long.getLong("integrax.cacheBytes", DiskCache.DEFAULT_MAX_BYTES));
+    private volatile EvaluatorSnapshot snapshot = rebuild(new FunctionGraph(Collections.emptyMap()),
+            Boolean.getBoolean("integrax.interpreterOnly"), !Boolean.getBoolean("integrax.noProxies"),
+            toleranceProperty("integrax.absTolerance"), toleranceProperty("integrax.relTolerance"));
+    // what the snapshot was last built from by setDefinitions
+    private List<FunctionDefinition> definitions = Collections.emptyList();
+
+    public EvaluatorSnapshot snapshot() {
+        return snapshot;
+    }
 
     public double evaluate(String expr, double x) {
-        return evaluateInternal(expr, x);
+        return snapshot.evaluate(parse(expr), x);
     }
 
-    public void setFunctions(Map<String, String> defs) {
-        functions.clear();
-        if (defs != null) {
-            functions.putAll(defs);
-        }
-        functionsDirty = true;
-        integralCache.clear();
+    public double evaluate(ExprNode node, double x) {
+        return snapshot.evaluate(node, x);
     }
 
-    private double evaluateInternal(String expr, double x) {
-        int depth = evalDepth.get();
-        if (depth > MAX_DEPTH) return Double.NaN;
-        evalDepth.set(depth + 1);
-        ensureFunctions();
+    public void evaluate(String expr, double[] xs, double[] out) {
+        snapshot.evaluate(parse(expr), xs, out);
+    }
 
-        String processed = applyDerivativeSyntax(expr);
-        processed = evaluateIntegrals(processed, x);
-        try {
-            Expression e = new ExpressionBuilder(processed)
-                    .variable("x")
-                    .functions(compiledFunctions)
-                    .build()
-                    .setVariable("x", x);
-
-            return e.evaluate();
-
-        } catch (Exception ex) {
-            return Double.NaN;
-        } finally {
-            evalDepth.set(depth);
+    public void evaluate(ExprNode node, double[] xs, double[] out) {
+        snapshot.evaluate(node, xs, out);
+    }
+
+    public void evaluate(ExprNode node, double left, double step, int count, double[] out) {
+        snapshot.evaluate(node, left, step, count, out);
+    }
+
+    public double evaluate(ExprNode node, double x, EvaluationBudget budget) {
+        return snapshot.evaluate(node, x, budget);
+    }
+
+    public void evaluate(ExprNode node, double[] xs, double[] out, EvaluationBudget budget) {
+        snapshot.evaluate(node, xs, out, budget);
+    }
+
+    public void evaluate(ExprNode node, double left, double step, int count, double[] out, EvaluationBudget budget) {
+        snapshot.evaluate(node, left, step, count, out, budget);
+    }
+
+    public double[] evaluateWithDerivatives(ExprNode node, double x, int order, EvaluationBudget budget) {
+        return snapshot.evaluateWithDerivatives(node, x, order, budget);
+    }
+
+    public double[] evaluateWithDerivatives(ExprNode node, double x, int order) {
+        return snapshot.evaluateWithDerivatives(node, x, order);
+    }
+
+    public Interval evaluateInterval(ExprNode node, double x0, double x1) {
+        return snapshot.evaluateInterval(node, x0, x1);
+    }
+
+    public boolean isInterpreterOnly() {
+        return snapshot.isInterpreterOnly();
+    }
+
+    // Turns off the bytecode tier, mainly to compare it against the tree walker
+    public synchronized void setInterpreterOnly(boolean interpreterOnly) {
+        snapshot = rebuild(snapshot.functions(), interpreterOnly, snapshot.isProxiesEnabled(),
+                snapshot.getAbsoluteTolerance(), snapshot.getRelativeTolerance());
+    }
+
+    public boolean isProxiesEnabled() {
+        return snapshot.isProxiesEnabled();
+    }
+
+    // Turns Chebyshev proxies for expensive expressions on or off
+    public synchronized void setProxiesEnabled(boolean proxies) {
+        snapshot = rebuild(snapshot.functions(), snapshot.isInterpreterOnly(), proxies,
+                snapshot.getAbsoluteTolerance(), snapshot.getRelativeTolerance());
+    }
+
+    public double getAbsoluteTolerance() {
+        return snapshot.getAbsoluteTolerance();
+    }
+
+    public double getRelativeTolerance() {
+        return snapshot.getRelativeTolerance();
+    }
+
+    // Accuracy goal of int(...): done once the error estimate is below either tolerance.
+    // Cached integrals belong to the snapshot, so they are recomputed at the new accuracy
+    public synchronized void setIntegralTolerance(double absolute, double relative) {
+        snapshot = rebuild(snapshot.functions(), snapshot.isInterpreterOnly(), snapshot.isProxiesEnabled(), absolute, relative);
+    }
+
+    // Counters of the current snapshot's integral cache; every new snapshot starts an empty one
+    public IntegralCache getIntegralCache() {
+        return snapshot.getIntegralCache();
+    }
+
+    public synchronized void setIntegralCacheLimits(int maxEntries, long maxBytes) {
+        integralCacheEntries = maxEntries;
+        integralCacheBytes = maxBytes;
+        snapshot = rebuild(snapshot.functions(), snapshot.isInterpreterOnly(), snapshot.isProxiesEnabled(),
+                snapshot.getAbsoluteTolerance(), snapshot.getRelativeTolerance());
+    }
+
+    // Keeps integrals and antiderivative tables in `directory` across runs, or stops when it is
+    // null. A directory that cannot be used leaves the cache off
+    public synchronized void setCacheDirectory(Path directory, long maxBytes) {
+        if (diskCache != null) diskCache.close();
+        diskCache = directory == null ? null : DiskCache.open(directory, maxBytes);
+        snapshot = rebuild(snapshot.functions(), snapshot.isInterpreterOnly(), snapshot.isProxiesEnabled(),
+                snapshot.getAbsoluteTolerance(), snapshot.getRelativeTolerance());
+    }
+
+    public boolean isDiskCacheEnabled() {
+        return diskCache != null;
+    }
+
+    public QuadratureResult integrate(ExprNode integral, double x) {
+        return snapshot.integrate(integral, x);
+    }
+
+    public QuadratureResult integrate(ExprNode integral, double x, EvaluationBudget budget) {
+        return snapshot.integrate(integral, x, budget);
+    }
+
+    public ExprNode parse(String expr) {
+        synchronized (parsedCache) {
+            ExprNode node = parsedCache.get(expr);
+            if (node != null) return node;
+        }
+        ExprNode node = parser.parse(expr);
+        synchronized (parsedCache) {
+            parsedCache.put(expr, node);
         }
+        return node;
     }
 
-    private void ensureFunctions() {
-        if (!functionsDirty) return;
-        compiledFunctions.clear();
-        for (Map.Entry<String, String> entry : functions.entrySet()) {
-            String name = entry.getKey();
-            String body = entry.getValue();
-            compiledFunctions.add(new Function(name, 1) {
-                @Override
-                public double apply(double... args) {
-                    return evaluateInternal(body, args[0]);
-                }
-            });
-
-            String dName = name + "_d";
-            compiledFunctions.add(new Function(dName, 1) {
-                @Override
-                public double apply(double... args) {
-                    double x = args[0];
-                    double h = 1e-5 * (1.0 + Math.abs(x));
-                    double f1 = evaluateInternal(body, x + h);
-                    double f2 = evaluateInternal(body, x - h);
-                    if (Double.isNaN(f1) || Double.isNaN(f2)) return Double.NaN;
-                    return (f1 - f2) / (2.0 * h);
-                }
-            });
+    int parsedCacheSize() {
+        synchronized (parsedCache) {
+            return parsedCache.size();
         }
-        functionsDirty = false;
-    }
-
-    private String evaluateIntegrals(String expr, double x) {
-        String out = expr;
-        int safety = 0;
-        while (true) {
-            int idx = out.lastIndexOf("int(");
-            if (idx < 0) break;
-            if (safety++ > 50) break;
-
-            ParsedIntegral parsed = parseIntegral(out, idx);
-            if (parsed == null) break;
-
-            boolean aHasX = containsVarX(parsed.aExpr);
-            boolean bHasX = containsVarX(parsed.bExpr);
-            String cacheKey = null;
-            if (!aHasX && !bHasX) {
-                cacheKey = parsed.integrandExpr + "|" + parsed.aExpr + "|" + parsed.bExpr;
-                Double cached = integralCache.get(cacheKey);
-                if (cached != null) {
-                    String replacement = Double.isNaN(cached) ? "NaN" : Double.toString(cached);
-                    out = out.substring(0, idx) + replacement + out.substring(parsed.endIndex + 1);
-                    continue;
-                }
-            }
+    }
 
-            double a = evaluateSimpleExpression(parsed.aExpr, x);
-            double b = evaluateSimpleExpression(parsed.bExpr, x);
-            double value = integrateSimpson(parsed.integrandExpr, a, b);
-            if (cacheKey != null) {
-                integralCache.put(cacheKey, value);
+    public void setFunctions(Map<String, String> defs) {
+        List<FunctionDefinition> list = new ArrayList<>();
+        if (defs != null) {
+            for (Map.Entry<String, String> entry : defs.entrySet()) {
+                list.add(new FunctionDefinition(entry.getKey(), entry.getValue()));
             }
+        }
+        setDefinitions(list);
+    }
 
-            String replacement = Double.isNaN(value) ? "NaN" : Double.toString(value);
-            out = out.substring(0, idx) + replacement + out.substring(parsed.endIndex + 1);
+    // General rules plus base cases such as a(0)=1. The memo of every recursive definition starts
+    // empty again here either way; the same definitions again, as after editing a plain
+    // expression, keep the snapshot and every other cache with it
+    public synchronized void setDefinitions(List<FunctionDefinition> defs) {
+        if (sameDefinitions(definitions, defs)) {
+            snapshot.clearRecursion();
+            return;
         }
-        return out;
-    }
-
-    private ParsedIntegral parseIntegral(String expr, int intIndex) {
-        int start = intIndex + 4; // after "int("
-        int depth = 1;
-        int i = start;
-        for (; i < expr.length(); i++) {
-            char c = expr.charAt(i);
-            if (c == '(') depth++;
-            else if (c == ')') {
-                depth--;
-                if (depth == 0) break;
+        definitions = new ArrayList<>(defs);
+        Map<String, ExprNode> bodies = new HashMap<>();
+        Map<String, Map<Double, Double>> baseCases = new HashMap<>();
+        for (FunctionDefinition def : defs) {
+            if (def.isBaseCase()) {
+                baseCases.computeIfAbsent(def.name, k -> new HashMap<>()).put(def.at, parse(def.body).value);
+            } else {
+                ExprNode body = def.param.equals("x") ? parse(def.body) : parser.parse(def.body, def.param);
+                bodies.put(def.name, parameters.bind(body));
             }
         }
-        if (depth != 0) return null;
-
-        String inside = expr.substring(start, i);
-        String[] parts = splitTopLevelCommas(inside);
-        if (parts.length != 3) return null;
-
-        ParsedIntegral p = new ParsedIntegral();
-        p.integrandExpr = parts[0].trim();
-        p.aExpr = parts[1].trim();
-        p.bExpr = parts[2].trim();
-        p.endIndex = i;
-        return p;
-    }
-
-    private String[] splitTopLevelCommas(String s) {
-        List<String> parts = new ArrayList<>();
-        int depth = 0;
-        int last = 0;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '(') depth++;
-            else if (c == ')') depth--;
-            else if (c == ',' && depth == 0) {
-                parts.add(s.substring(last, i));
-                last = i + 1;
+        snapshot = rebuild(new FunctionGraph(bodies, baseCases), snapshot.isInterpreterOnly(), snapshot.isProxiesEnabled(),
+                snapshot.getAbsoluteTolerance(), snapshot.getRelativeTolerance());
+    }
+
+    private static boolean sameDefinitions(List<FunctionDefinition> a, List<FunctionDefinition> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            FunctionDefinition p = a.get(i);
+            FunctionDefinition q = b.get(i);
+            if (!p.name.equals(q.name) || !p.param.equals(q.param) || !p.body.equals(q.body)
+                    || Double.compare(p.at, q.at) != 0) {
+                return false;
             }
         }
-        parts.add(s.substring(last));
-        return parts.toArray(new String[0]);
+        return true;
     }
 
-    private double evaluateSimpleExpression(String expr, double x) {
-        String processed = applyDerivativeSyntax(expr);
-        processed = evaluateIntegrals(processed, x);
-        try {
-            Expression e = new ExpressionBuilder(processed)
-                    .variable("x")
-                    .functions(compiledFunctions)
-                    .build()
-                    .setVariable("x", x);
-            return e.evaluate();
-        } catch (Exception ex) {
-            return Double.NaN;
-        }
+    public double getParameter(String name) {
+        return parameters.value(parameters.slot(name));
     }
 
-    //Simpson's rule
-    private double integrateSimpson(String integrandExpr, double a, double b) {
-        if (Double.isNaN(a) || Double.isNaN(b)) return Double.NaN;
-        if (a == b) return 0.0;
-        double left = a;
-        double right = b;
-        double sign = 1.0;
-        if (right < left) {
-            double tmp = left;
-            left = right;
-            right = tmp;
-            sign = -1.0;
-        }
+    // Rebinds a parameter in place: compiled code reads the new value directly and only cached
+    // results that depend on this parameter are dropped
+    public void setParameter(String name, double value) {
+        int slot = parameters.slot(name);
+        if (slot < 0) return;
+        parameters.set(slot, value);
+    }
 
-        int n = 500;
-        if (n % 2 == 1) n++;
-        double h = (right - left) / n;
+    // Whether node reads the parameter, directly or through a definition it calls
+    public boolean dependsOn(ExprNode node, String name) {
+        int slot = parameters.slot(name);
+        return slot >= 0 && (snapshot.parameterMask(node) & (1L << slot)) != 0;
+    }
 
-        double sum = evaluateSimpleExpression(integrandExpr, left);
-        double end = evaluateSimpleExpression(integrandExpr, right);
-        if (Double.isNaN(sum) || Double.isNaN(end)) return Double.NaN;
-        sum += end;
+    // Definitions that cannot be evaluated, e.g. circular ones, with a message per name
+    public Map<String, String> getDefinitionErrors() {
+        return snapshot.getDefinitionErrors();
+    }
 
-        for (int i = 1; i < n; i++) {
-            double x = left + i * h;
-            double fx = evaluateSimpleExpression(integrandExpr, x);
-            if (Double.isNaN(fx)) return Double.NaN;
-            sum += (i % 2 == 0 ? 2.0 : 4.0) * fx;
-        }
-        return sign * (h / 3.0) * sum;
+    public String findError(ExprNode node) {
+        return snapshot.findError(node);
     }
 
-    private boolean containsVarX(String expr) {
-        for (int i = 0; i < expr.length(); i++) {
-            char c = expr.charAt(i);
-            if (c == 'x' || c == 'X') {
-                boolean leftOk = i == 0 || !Character.isLetterOrDigit(expr.charAt(i - 1));
-                boolean rightOk = i == expr.length() - 1 || !Character.isLetterOrDigit(expr.charAt(i + 1));
-                if (leftOk && rightOk) return true;
-            }
-        }
-        return false;
+    private EvaluatorSnapshot rebuild(FunctionGraph functions, boolean interpreterOnly, boolean proxies,
+                                      double absoluteTolerance, double relativeTolerance) {
+        return new EvaluatorSnapshot(functions, parameters, interpreterOnly, proxies, absoluteTolerance, relativeTolerance,
+                new IntegralCache(integralCacheEntries, integralCacheBytes), diskCache, compiler, kernels);
     }
 
-    private String applyDerivativeSyntax(String expr) {
-        String out = expr;
-        for (String name : functions.keySet()) {
-            out = out.replace(name + "'(", name + "_d(");
-            out = out.replace(name + "' (", name + "_d(");
-        }
-        return out;
+    private static DiskCache openDiskCache(String directory, long maxBytes) {
+        return directory == null || directory.isEmpty() ? null : DiskCache.open(Paths.get(directory), maxBytes);
     }
 
-    private static class ParsedIntegral {
-        String integrandExpr;
-        String aExpr;
-        String bExpr;
-        int endIndex;
+    private static double toleranceProperty(String name) {
+        try {
+            return Double.parseDouble(System.getProperty(name, String.valueOf(DEFAULT_TOLERANCE)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_TOLERANCE;
+        }
     }
 }
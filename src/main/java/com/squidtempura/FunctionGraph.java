@@ -0,0 +1,247 @@
+package com.squidtempura;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Dependency graph of named definitions. Bodies are linked callee-first, so a call either
+// inlines the callee or points straight at its linked body, and cycles are reported up front.
+// The one cycle allowed is a definition calling itself at smaller arguments with base cases;
+// calls to it stay unresolved and go through its RecursiveDefinition.
+public class FunctionGraph {
+    private static final int UNVISITED = 0;
+    private static final int VISITING = 1;
+    private static final int DONE = 2;
+
+    private final Map<String, ExprNode> definitions;
+    private final Map<String, Map<Double, Double>> baseCases;
+    private final Map<String, RecursiveDefinition> recursive = new HashMap<>();
+    private final Map<String, ExprNode> linked = new HashMap<>();
+    private final Map<String, String> errors = new LinkedHashMap<>();
+    private final Map<String, Integer> state = new HashMap<>();
+    private final List<String> path = new ArrayList<>();
+
+    public FunctionGraph(Map<String, ExprNode> definitions) {
+        this(definitions, Collections.emptyMap());
+    }
+
+    public FunctionGraph(Map<String, ExprNode> definitions, Map<String, Map<Double, Double>> baseCases) {
+        this.definitions = definitions;
+        this.baseCases = baseCases;
+        for (String name : definitions.keySet()) {
+            visit(name);
+        }
+    }
+
+    public ExprNode body(String name) {
+        return linked.get(name);
+    }
+
+    public RecursiveDefinition recursion(String name) {
+        return recursive.get(name);
+    }
+
+    // Base cases such as a(0)=1 given for a name, empty when there are none
+    public Map<Double, Double> baseCases(String name) {
+        Map<Double, Double> bases = baseCases.get(name);
+        return bases == null ? Collections.emptyMap() : Collections.unmodifiableMap(bases);
+    }
+
+    // Names whose bodies linked cleanly
+    public Set<String> names() {
+        return Collections.unmodifiableSet(linked.keySet());
+    }
+
+    public Map<String, String> errors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    public String errorFor(ExprNode node) {
+        for (String name : calledNames(node)) {
+            if (!definitions.containsKey(name)) return "Unknown function '" + name + "'";
+            String error = errors.get(name);
+            if (error != null) return error;
+        }
+        return null;
+    }
+
+    public ExprNode link(ExprNode n) {
+        if (n.args.length == 0) return n;
+        ExprNode[] args = new ExprNode[n.args.length];
+        boolean changed = false;
+        for (int i = 0; i < args.length; i++) {
+            args[i] = link(n.args[i]);
+            changed |= args[i] != n.args[i];
+        }
+
+        if (n.kind == NodeKind.CALL || n.kind == NodeKind.DERIVATIVE) {
+            if (recursive.containsKey(n.name)) return changed ? n.withArgs(args) : n;
+            ExprNode target = linked.get(n.name);
+            if (target == null || args.length != 1) {
+                return changed ? n.withArgs(args) : n;
+            }
+            if (n.kind == NodeKind.CALL) {
+                if (canInline(target, args[0])) return substitute(target, args[0]);
+                return ExprNode.call(n.name, args, target);
+            }
+            return ExprNode.derivative(n.name, n.order, args, target);
+        }
+        return changed ? n.withArgs(args) : n;
+    }
+
+    private void visit(String name) {
+        int s = state.getOrDefault(name, UNVISITED);
+        if (s == DONE) return;
+        if (s == VISITING) {
+            reportCycle(name);
+            return;
+        }
+
+        state.put(name, VISITING);
+        Set<String> callees = calledNames(definitions.get(name));
+        if (callees.contains(name) && !prepareRecursion(name)) {
+            state.put(name, DONE);
+            return;
+        }
+        path.add(name);
+        for (String callee : callees) {
+            if (definitions.containsKey(callee) && !callee.equals(name)) visit(callee);
+        }
+        path.remove(path.size() - 1);
+        state.put(name, DONE);
+
+        if (errors.containsKey(name)) {
+            recursive.remove(name);
+            return;
+        }
+        for (String callee : callees) {
+            if (errors.containsKey(callee)) {
+                recursive.remove(name);
+                errors.put(name, name + " depends on " + callee + ": " + errors.get(callee));
+                return;
+            }
+        }
+        linked.put(name, link(definitions.get(name)));
+    }
+
+    // Accepts self-recursion of the form a(x - c) with c > 0 and at least one base case
+    private boolean prepareRecursion(String name) {
+        Map<Double, Double> bases = baseCases.get(name);
+        if (bases == null || bases.isEmpty()) {
+            errors.put(name, name + " calls itself but has no base case such as " + name + "(0)=1");
+            return false;
+        }
+        List<Double> offsets = new ArrayList<>();
+        if (!collectSelfOffsets(definitions.get(name), name, offsets)) {
+            errors.put(name, name + " must call itself at a smaller argument, such as " + name + "(x-1)");
+            return false;
+        }
+        double step = offsets.get(0);
+        for (double offset : offsets) {
+            step = gcd(step, offset);
+        }
+        recursive.put(name, new RecursiveDefinition(name, bases, step));
+        return true;
+    }
+
+    private static boolean collectSelfOffsets(ExprNode node, String name, List<Double> out) {
+        if ((node.kind == NodeKind.CALL || node.kind == NodeKind.DERIVATIVE) && name.equals(node.name)) {
+            if (node.kind != NodeKind.CALL || node.args.length != 1) return false;
+            double offset = decrement(node.args[0]);
+            if (!(offset > 0)) return false;
+            out.add(offset);
+            return true;
+        }
+        for (int i = 0; i < node.args.length; i++) {
+            // inside an integrand x means the integration variable
+            if (bindsX(node, i) && calledNames(node.args[i]).contains(name)) return false;
+            if (!collectSelfOffsets(node.args[i], name, out)) return false;
+        }
+        return true;
+    }
+
+    // c for arguments of the form x - c or x + (-c), NaN otherwise
+    private static double decrement(ExprNode arg) {
+        if (arg.kind != NodeKind.SUB && arg.kind != NodeKind.ADD) return Double.NaN;
+        ExprNode a = arg.args[0];
+        ExprNode b = arg.args[1];
+        if (arg.kind == NodeKind.SUB && a.kind == NodeKind.VAR && b.kind == NodeKind.CONST) return b.value;
+        if (arg.kind == NodeKind.ADD && a.kind == NodeKind.VAR && b.kind == NodeKind.CONST) return -b.value;
+        if (arg.kind == NodeKind.ADD && b.kind == NodeKind.VAR && a.kind == NodeKind.CONST) return -a.value;
+        return Double.NaN;
+    }
+
+    // Largest step dividing both offsets, so every offset lands on the lattice
+    private static double gcd(double a, double b) {
+        while (b > 1e-9 * a) {
+            double r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    private void reportCycle(String name) {
+        List<String> cycle = new ArrayList<>(path.subList(path.indexOf(name), path.size()));
+        cycle.add(name);
+        String message = "Circular definition: " + String.join(" -> ", cycle);
+        for (String member : cycle) {
+            errors.putIfAbsent(member, message);
+        }
+    }
+
+    private static Set<String> calledNames(ExprNode node) {
+        Set<String> names = new LinkedHashSet<>();
+        collectCalls(node, names);
+        return names;
+    }
+
+    private static void collectCalls(ExprNode node, Set<String> out) {
+        if (node.kind == NodeKind.CALL || node.kind == NodeKind.DERIVATIVE) {
+            out.add(node.name);
+        }
+        for (ExprNode arg : node.args) {
+            collectCalls(arg, out);
+        }
+    }
+
+    // Inlining copies the argument into every use of x, so only do it when that costs nothing
+    private static boolean canInline(ExprNode body, ExprNode arg) {
+        if (arg.kind == NodeKind.VAR || arg.kind == NodeKind.CONST) return true;
+        return countFreeUses(body) <= 1;
+    }
+
+    private static int countFreeUses(ExprNode node) {
+        if (node.kind == NodeKind.VAR) return 1;
+        if (!node.dependsOnX) return 0;
+        int count = 0;
+        for (int i = 0; i < node.args.length; i++) {
+            // the integrand's x is the integration variable, not ours
+            if (bindsX(node, i)) continue;
+            count += countFreeUses(node.args[i]);
+        }
+        return count;
+    }
+
+    // Whether x in argument i of node is an integration variable: the integrand of int, and the
+    // integrand and inner bounds of int2
+    private static boolean bindsX(ExprNode node, int i) {
+        if (node.kind == NodeKind.INTEGRAL) return i == 0;
+        return node.kind == NodeKind.INTEGRAL2 && (i == 0 || i >= 3);
+    }
+
+    static ExprNode substitute(ExprNode node, ExprNode arg) {
+        if (node.kind == NodeKind.VAR) return arg;
+        if (!node.dependsOnX) return node;
+        ExprNode[] args = new ExprNode[node.args.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = bindsX(node, i) ? node.args[i] : substitute(node.args[i], arg);
+        }
+        return node.withArgs(args);
+    }
+}
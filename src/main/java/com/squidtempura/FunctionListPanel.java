@@ -3,13 +3,21 @@ package com.squidtempura;
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class FunctionListPanel extends JPanel {
 
+    private static final double SLIDER_RANGE = 10.0;
+    private static final int SLIDER_STEPS_PER_UNIT = 100;
+    private static final Color DEGRADED_COLOR = new Color(200, 120, 0);
+
     private GraphPanel graphPanel;
     private JPanel listPanel;
+    private JPanel parameterPanel;
     private List<JTextField> fields = new ArrayList<>();
+    private Set<String> parameterNames = new LinkedHashSet<>();
 
     public FunctionListPanel(GraphPanel graphPanel) {
         this.graphPanel = graphPanel;
@@ -17,12 +25,18 @@ public class FunctionListPanel extends JPanel {
 
         listPanel = new JPanel();
         listPanel.setLayout(new BoxLayout(listPanel, BoxLayout.Y_AXIS));
+        parameterPanel = new JPanel();
+        parameterPanel.setLayout(new BoxLayout(parameterPanel, BoxLayout.Y_AXIS));
 
-        JScrollPane scroll = new JScrollPane(listPanel);
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(listPanel, BorderLayout.NORTH);
+        content.add(parameterPanel, BorderLayout.CENTER);
+        JScrollPane scroll = new JScrollPane(content);
         JButton addButton = new JButton("Add");
         addButton.addActionListener(e -> addFunctionField(""));
         add(scroll, BorderLayout.CENTER);
         add(addButton, BorderLayout.SOUTH);
+        graphPanel.setDegradedListener(this::updateErrors);
         addFunctionField("x^2");
     }
 
@@ -48,5 +62,59 @@ public class FunctionListPanel extends JPanel {
             }
             graphPanel.setExpression(exprs);
         }
+        updateErrors();
+        updateParameters();
+    }
+
+    // One slider per free parameter; dragging only rebinds the value, nothing is re-parsed
+    private void updateParameters() {
+        Set<String> names = graphPanel.getParameterNames();
+        if (names.equals(parameterNames)) return;
+        parameterNames = names;
+        parameterPanel.removeAll();
+        for (String name : names) {
+            parameterPanel.add(createSlider(name));
+        }
+        parameterPanel.revalidate();
+        parameterPanel.repaint();
+    }
+
+    private JPanel createSlider(String name) {
+        double value = graphPanel.getParameter(name);
+        JLabel label = new JLabel(formatParameter(name, value));
+        int max = (int) (SLIDER_RANGE * SLIDER_STEPS_PER_UNIT);
+        int position = (int) Math.round(Math.max(-SLIDER_RANGE, Math.min(SLIDER_RANGE, value)) * SLIDER_STEPS_PER_UNIT);
+        JSlider slider = new JSlider(-max, max, position);
+        slider.addChangeListener(e -> {
+            double v = slider.getValue() / (double) SLIDER_STEPS_PER_UNIT;
+            label.setText(formatParameter(name, v));
+            graphPanel.setParameter(name, v);
+        });
+
+        JPanel row = new JPanel(new BorderLayout());
+        row.add(label, BorderLayout.NORTH);
+        row.add(slider, BorderLayout.CENTER);
+        return row;
+    }
+
+    private String formatParameter(String name, double value) {
+        return String.format("%s = %.2f", name, value);
+    }
+
+    private void updateErrors() {
+        for (JTextField field : fields) {
+            String text = field.getText().trim();
+            String error = text.isEmpty() ? null : graphPanel.getExpressionError(text);
+            if (error != null) {
+                field.setToolTipText(error);
+                field.setForeground(Color.RED);
+            } else if (graphPanel.isDegraded(text)) {
+                field.setToolTipText("too slow, degraded");
+                field.setForeground(DEGRADED_COLOR);
+            } else {
+                field.setToolTipText(null);
+                field.setForeground(UIManager.getColor("TextField.foreground"));
+            }
+        }
     }
 }
@@ -0,0 +1,272 @@
+package com.squidtempura;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Globally adaptive 7-point Gauss / 15-point Kronrod quadrature, after QUADPACK's QAG: the
+// subinterval with the largest error estimate is bisected until the total estimate meets the
+// tolerance, so smooth integrands take a single 15-point rule and the effort goes where f is rough.
+public class GaussKronrod {
+    private static final int MAX_INTERVALS = 256;
+    // segments evaluated side by side in each round of integrateParallel
+    private static final int BATCH = 16;
+
+    // Kronrod nodes on [0, 1], the odd ones are the Gauss nodes, the last is the center
+    private static final double[] XGK = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0.0
+    };
+    private static final double[] WGK = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714
+    };
+    private static final double[] WG = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327
+    };
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private static final class Segment {
+        final double a;
+        final double b;
+        final double value;
+        final double error;
+
+        Segment(double a, double b, double value, double error) {
+            this.a = a;
+            this.b = b;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    // f is sampled 15 points at a time. Subintervals with undefined samples count as infinitely
+    // wrong and are split first, so a NaN at an isolated point does not spoil the integral.
+    public static QuadratureResult integrate(ChebyshevProxy.Sampler f, double a, double b,
+                                             double absoluteTolerance, double relativeTolerance) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) return QuadratureResult.NAN;
+        if (a == b) return new QuadratureResult(0.0, 0.0, 0);
+        if (b < a) return integrate(f, b, a, absoluteTolerance, relativeTolerance).negate();
+
+        double[] xs = new double[15];
+        double[] ys = new double[15];
+        PriorityQueue<Segment> queue = new PriorityQueue<>((s, t) -> Double.compare(t.error, s.error));
+        queue.add(segment(f, a, b, xs, ys));
+        int evaluations = 15;
+        double value = queue.peek().value;
+        double error = queue.peek().error;
+        while (!(error <= Math.max(absoluteTolerance, relativeTolerance * Math.abs(value)))
+                && queue.size() < MAX_INTERVALS) {
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            Segment worst = queue.poll();
+            double mid = 0.5 * (worst.a + worst.b);
+            if (!(worst.a < mid && mid < worst.b)) {
+                // no more room between two doubles
+                queue.add(worst);
+                break;
+            }
+            Segment left = segment(f, worst.a, mid, xs, ys);
+            Segment right = segment(f, mid, worst.b, xs, ys);
+            evaluations += 30;
+            // halves sampled after the budget ran out hold NaN, so the sums before them stand
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            queue.add(left);
+            queue.add(right);
+            // summed afresh, since an infinite error cannot be subtracted back out
+            value = 0.0;
+            error = 0.0;
+            for (Segment s : queue) {
+                value += s.value;
+                error += s.error;
+            }
+        }
+        if (Double.isNaN(value) || Double.isInfinite(error)) return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+        return new QuadratureResult(value, error, evaluations);
+    }
+
+    // The same scheme for integrands that cost a lot per sample. [a, b] is cut into `pieces`
+    // equal segments up front, sampled together, since a single 15-point rule is too little work
+    // to spread over the pool; a nested integrand passes 1, as it would otherwise pay for the
+    // split at every level. Then each round bisects up to BATCH of the worst segments and samples
+    // all their points at once, split into fork-join tasks.
+    // Which segments are split depends only on the estimates, samples do not depend on how the
+    // points are split up, and the sums run in a fixed order, so the result is bit for bit the
+    // same whatever the number of threads.
+    public static QuadratureResult integrateParallel(ChebyshevProxy.Sampler f, double a, double b,
+                                                     double absoluteTolerance, double relativeTolerance,
+                                                     int pieces) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) return QuadratureResult.NAN;
+        if (a == b) return new QuadratureResult(0.0, 0.0, 0);
+        if (b < a) return integrateParallel(f, b, a, absoluteTolerance, relativeTolerance, pieces).negate();
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>((s, t) -> Double.compare(t.error, s.error));
+        int count = Math.max(1, Math.min(pieces, MAX_INTERVALS / 2));
+        double[] first = new double[2 * count];
+        for (int i = 0; i < count; i++) {
+            first[2 * i] = i == 0 ? a : first[2 * i - 1];
+            first[2 * i + 1] = i == count - 1 ? b : a + (b - a) * (i + 1) / count;
+        }
+        int evaluations = 15 * count;
+        double value = 0.0;
+        double error = 0.0;
+        for (Segment s : segments(f, first)) {
+            queue.add(s);
+            value += s.value;
+            error += s.error;
+        }
+        while (!(error <= Math.max(absoluteTolerance, relativeTolerance * Math.abs(value)))
+                && queue.size() < MAX_INTERVALS) {
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            List<Segment> full = new ArrayList<>();
+            List<Double> halves = new ArrayList<>();
+            while (halves.size() < 4 * BATCH && queue.size() + halves.size() / 4 < MAX_INTERVALS && !queue.isEmpty()) {
+                Segment worst = queue.poll();
+                double mid = 0.5 * (worst.a + worst.b);
+                if (worst.a < mid && mid < worst.b) {
+                    halves.add(worst.a);
+                    halves.add(mid);
+                    halves.add(mid);
+                    halves.add(worst.b);
+                } else {
+                    // no more room between two doubles
+                    full.add(worst);
+                }
+            }
+            queue.addAll(full);
+            if (halves.isEmpty()) break;
+            double[] ends = new double[halves.size()];
+            for (int i = 0; i < ends.length; i++) {
+                ends[i] = halves.get(i);
+            }
+            Segment[] split = segments(f, ends);
+            evaluations += 15 * ends.length / 2;
+            if (EvaluationBudget.isExhausted()) return QuadratureResult.partial(value, error, evaluations);
+            for (Segment s : split) {
+                queue.add(s);
+            }
+            value = 0.0;
+            error = 0.0;
+            for (Segment s : queue) {
+                value += s.value;
+                error += s.error;
+            }
+            if (!full.isEmpty()) break;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(error)) return new QuadratureResult(Double.NaN, Double.NaN, evaluations);
+        return new QuadratureResult(value, error, evaluations);
+    }
+
+    // One segment per pair in `ends`, their points sampled as one column in parallel
+    private static Segment[] segments(ChebyshevProxy.Sampler f, double[] ends) {
+        int count = ends.length / 2;
+        double[] xs = new double[15 * count];
+        double[] ys = new double[xs.length];
+        for (int i = 0; i < count; i++) {
+            nodes(ends[2 * i], ends[2 * i + 1], xs, 15 * i);
+        }
+        sampleParallel(f, xs, ys);
+        Segment[] out = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            out[i] = rule(ends[2 * i], ends[2 * i + 1], ys, 15 * i);
+        }
+        return out;
+    }
+
+    // A few chunks per thread, each its own task under the caller's budget
+    static void sampleParallel(ChebyshevProxy.Sampler f, double[] xs, double[] ys) {
+        EvaluationBudget budget = EvaluationBudget.current();
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        int chunk = Math.max(1, -Math.floorDiv(-xs.length, 4 * pool.getParallelism()));
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int from = 0; from < xs.length; from += chunk) {
+            int start = from;
+            int end = Math.min(xs.length, from + chunk);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    EvaluationBudget previous = EvaluationBudget.install(budget);
+                    try {
+                        double[] part = new double[end - start];
+                        f.sample(Arrays.copyOfRange(xs, start, end), part);
+                        System.arraycopy(part, 0, ys, start, part.length);
+                    } finally {
+                        EvaluationBudget.exit(previous);
+                    }
+                }
+            });
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    private static Segment segment(ChebyshevProxy.Sampler f, double a, double b, double[] xs, double[] ys) {
+        nodes(a, b, xs, 0);
+        f.sample(xs, ys);
+        return rule(a, b, ys, 0);
+    }
+
+    // The 15 Kronrod points of [a, b] at xs[offset...]
+    private static void nodes(double a, double b, double[] xs, int offset) {
+        double center = 0.5 * (a + b);
+        double half = 0.5 * (b - a);
+        for (int j = 0; j < 7; j++) {
+            xs[offset + 2 * j] = center - half * XGK[j];
+            xs[offset + 2 * j + 1] = center + half * XGK[j];
+        }
+        xs[offset + 14] = center;
+    }
+
+    // Both rules and the error estimate from the samples ys[offset...] at those points
+    private static Segment rule(double a, double b, double[] samples, int offset) {
+        double[] ys = offset == 0 && samples.length == 15 ? samples : Arrays.copyOfRange(samples, offset, offset + 15);
+        double half = 0.5 * (b - a);
+        double fc = ys[14];
+        double kronrod = WGK[7] * fc;
+        double gauss = WG[3] * fc;
+        double absolute = Math.abs(kronrod);
+        for (int j = 0; j < 7; j++) {
+            double sum = ys[2 * j] + ys[2 * j + 1];
+            kronrod += WGK[j] * sum;
+            absolute += WGK[j] * (Math.abs(ys[2 * j]) + Math.abs(ys[2 * j + 1]));
+            if (j % 2 == 1) gauss += WG[j / 2] * sum;
+        }
+        if (Double.isNaN(kronrod) || Double.isInfinite(kronrod)) {
+            return new Segment(a, b, Double.NaN, Double.POSITIVE_INFINITY);
+        }
+        double mean = 0.5 * kronrod;
+        double spread = WGK[7] * Math.abs(fc - mean);
+        for (int j = 0; j < 7; j++) {
+            spread += WGK[j] * (Math.abs(ys[2 * j] - mean) + Math.abs(ys[2 * j + 1] - mean));
+        }
+
+        // QUADPACK's scaling of |K15 - G7|, which is pessimistic for rough integrands and close
+        // to the real error for smooth ones
+        double error = Math.abs((kronrod - gauss) * half);
+        spread *= half;
+        absolute *= half;
+        if (spread != 0.0 && error != 0.0) {
+            error = spread * Math.min(1.0, Math.pow(200.0 * error / spread, 1.5));
+        }
+        if (absolute > Double.MIN_NORMAL / (50.0 * EPSILON)) {
+            error = Math.max(50.0 * EPSILON * absolute, error);
+        }
+        return new Segment(a, b, kronrod * half, error);
+    }
+}
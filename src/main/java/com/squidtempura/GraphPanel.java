@@ -6,14 +6,21 @@ import java.awt.event.*;
 import java.awt.geom.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class GraphPanel extends JPanel {
 
     private static final double MIN_SCALE = 0.2;
     private static final double MAX_SCALE = 200000.0;
     private static final double ZOOM_BASE = 1.08;
+    // time a click may spend on the event thread, shared by every curve it looks at
+    private static final long CLICK_BUDGET_MILLIS = FrameRenderer.EXPRESSION_BUDGET_MILLIS;
 
     private double scale = 50;
     private double offsetX = 0;
@@ -28,6 +35,8 @@ public class GraphPanel extends JPanel {
 
     private double clickedX = Double.NaN;
     private double clickedY = Double.NaN;
+    private double clickedSlope = Double.NaN;
+    private ParsedExpression nearestCurve;
     private boolean labelVisible = false;
     private List<Point2D> selectedIntersections = new ArrayList<>();
     private List<Point2D> intersections = new ArrayList<>();
@@ -36,8 +45,26 @@ public class GraphPanel extends JPanel {
     private final IntegralParser integralParser = new IntegralParser();
     private final List<IntegralRegion> integralRegions = new ArrayList<>();
     private final Map<String, IntegralLabel> integralLabels = new HashMap<>();
+    // areas are worked out here, one at a time, never on the event thread
+    private final ExecutorService areaExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "integrax-area");
+        t.setDaemon(true);
+        return t;
+    });
+    // per IntegralSpec.key(): the job still refining its label, and finished areas to reuse
+    private final Map<String, AreaJob> areaJobs = new HashMap<>();
+    private final Map<String, QuadratureResult> areas = new HashMap<>();
+    // the integral each finished area belongs to, for telling which a parameter affects
+    private final Map<String, ExprNode> areaNodes = new HashMap<>();
 
     private FunctionEvaluator evaluator = new FunctionEvaluator();
+    // curves, shading and intersections are computed here and drawn from the last finished model
+    private final FrameRenderer renderer = new FrameRenderer(this::showFrame);
+    private FrameModel model;
+    // bumped whenever a frame computed before would be out of date, see FrameRequest
+    private long frameVersion;
+    private Set<String> degradedExpressions = new HashSet<>();
+    private Runnable degradedListener;
     private List<String> expressions = new ArrayList<String>();
 
     public GraphPanel() {
@@ -122,22 +149,30 @@ public class GraphPanel extends JPanel {
             repaint();
             return;
         }
-        Point2D hit = findNearestCurvePoint(p);
+        EvaluationBudget budget = EvaluationBudget.ofMillis(CLICK_BUDGET_MILLIS);
+        Point2D hit = findNearestCurvePoint(p, budget);
         if (hit != null) {
             if (isSamePoint(hit)) {
                 labelVisible = !labelVisible;
             } else {
                 clickedX = hit.getX();
                 clickedY = hit.getY();
+                clickedSlope = tangentSlope(nearestCurve, clickedX, budget);
                 labelVisible = true;
             }
         } else {
             clickedX = Double.NaN;
             clickedY = Double.NaN;
+            clickedSlope = Double.NaN;
             labelVisible = false;
         }
         repaint();
     }
+
+    private double tangentSlope(ParsedExpression parsed, double x, EvaluationBudget budget) {
+        if (parsed == null || parsed.type != ExprType.FUNCTION) return Double.NaN;
+        return evaluator.evaluateWithDerivatives(parsed.node, x, 1, budget)[1];
+    }
     
     private void setupKeyBindings() {
         InputMap im = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
@@ -152,6 +187,7 @@ public class GraphPanel extends JPanel {
                 labelVisible = false;
                 selectedIntersections.clear();
                 integralLabels.clear();
+                cancelAreaJobs();
                 repaint();
             }
         });
@@ -171,6 +207,34 @@ public class GraphPanel extends JPanel {
         super.paintComponent(g);
 
         Graphics2D g2 = (Graphics2D) g;
+        // nothing is evaluated while painting: the renderer is asked for a frame of the current
+        // view and until it arrives the last one is drawn at the new transform
+        FrameRequest request = currentRequest();
+        if (model == null || !model.request.matches(request)) renderer.request(request);
+        paintFrame(g2);
+    }
+
+    private FrameRequest currentRequest() {
+        List<ParsedExpression> parsed = new ArrayList<>();
+        for (String expression : expressions) {
+            parsed.add(getParsed(expression));
+        }
+        return new FrameRequest(getWidth(), getHeight(), scale, offsetX, offsetY, new ArrayList<>(expressions),
+                parsed, evaluator.snapshot(), frameVersion);
+    }
+
+    // A finished frame from the renderer, on the event thread
+    private void showFrame(FrameModel frame) {
+        model = frame;
+        intersections = new ArrayList<>(frame.intersections);
+        if (!frame.degraded.equals(degradedExpressions)) {
+            degradedExpressions = frame.degraded;
+            if (degradedListener != null) degradedListener.run();
+        }
+        repaint();
+    }
+
+    private void paintFrame(Graphics2D g2) {
 
         g2.setRenderingHint(
                 RenderingHints.KEY_ANTIALIASING,
@@ -356,8 +420,6 @@ public class GraphPanel extends JPanel {
         double bottom = (-getHeight()/2.0) / scale - offsetY;
         double top = (getHeight()/2.0) / scale - offsetY;
 
-        double step = (right - left) / getWidth();
-
         int index = 0;
 
         for (String expression : expressions) {
@@ -369,37 +431,24 @@ public class GraphPanel extends JPanel {
                 index++;
                 continue;
             }
-
-            Path2D path = new Path2D.Double();
-            boolean first = true;
-
-            for (double x = left; x <= right; x += step) {
-                double y = evaluateParsedFunction(parsed, x);
-
-                if (Double.isNaN(y) || Double.isInfinite(y)) {
-                    first = true;
-                    continue;
-                }
-
-                if (first) {
-                    path.moveTo(x, y);
-                    first = false;
-                } else {
-                    path.lineTo(x, y);
+            if (parsed.type == ExprType.SEQUENCE) {
+                if (parsed.node.isValid()) {
+                    drawSequence(g2, expression);
+                    index++;
                 }
+                continue;
             }
 
-            g2.draw(path);
+            // an expression the renderer has not got to yet is left out until it has
+            Path2D path = model == null ? null : model.curves.get(expression);
+            if (path != null) g2.draw(path);
             index++;
         }
     }
 
     private void drawIntegralAreas(Graphics2D g2, AffineTransform worldToPanel) {
         integralRegions.clear();
-        if (expressions.isEmpty()) return;
-
-        double left = (-getWidth() / 2.0) / scale - offsetX;
-        double right = (getWidth() / 2.0) / scale - offsetX;
+        if (expressions.isEmpty() || model == null) return;
 
         Composite savedComposite = g2.getComposite();
         g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.12f));
@@ -413,17 +462,13 @@ public class GraphPanel extends JPanel {
         int colorIdx = 0;
 
         for (String expression : expressions) {
-            ParsedExpression parsed = getParsed(expression);
-            String base = parsed.baseExpression;
-            List<IntegralSpec> specs = integralParser.extractIntegrals(base);
-            for (IntegralSpec spec : specs) {
-                Path2D area = buildIntegralArea(spec, left, right);
-                if (area == null) continue;
-
+            List<FrameModel.Area> areas = model.areas.get(expression);
+            if (areas == null) continue;
+            for (FrameModel.Area area : areas) {
                 g2.setColor(fills[colorIdx % fills.length]);
-                g2.fill(area);
-                Shape screenShape = worldToPanel.createTransformedShape(area);
-                integralRegions.add(new IntegralRegion(spec, screenShape));
+                g2.fill(area.shape);
+                Shape screenShape = worldToPanel.createTransformedShape(area.shape);
+                integralRegions.add(new IntegralRegion(area.spec, screenShape));
                 colorIdx++;
             }
         }
@@ -432,7 +477,6 @@ public class GraphPanel extends JPanel {
     }
 
     private void drawIntersections(Graphics2D g2) {
-        intersections = computeIntersections();
         if (intersections.isEmpty()) return;
 
         g2.setColor(new Color(20, 20, 20));
@@ -476,7 +520,14 @@ public class GraphPanel extends JPanel {
         for (IntegralLabel label : integralLabels.values()) {
             int sx = (int) ((label.worldX + offsetX) * scale + getWidth() / 2f);
             int sy = (int) ((-label.worldY - offsetY) * scale + getHeight() / 2f);
-            String text = String.format("Area ≈ %.6f", label.area);
+            String text;
+            if (!label.done && Double.isNaN(label.area)) {
+                text = "Area \u2248 computing\u2026";
+            } else {
+                text = String.format("Area \u2248 %.6f", label.area);
+                if (Double.isFinite(label.error)) text += String.format(" \u00b1 %.1e", label.error);
+                if (!label.done) text += " \u2026";
+            }
             g2.drawString(text, sx + 10, sy - 10);
         }
 
@@ -497,6 +548,7 @@ public class GraphPanel extends JPanel {
             int sy = (int) ((-clickedY - offsetY) * scale + getHeight() / 2f);
 
             String text = String.format("(%.4f , %.4f)", clickedX, clickedY);
+            if (isValid(clickedSlope)) text += String.format("  slope %.4f", clickedSlope);
             g2.drawString(text, sx + 10, sy - 10);
             g2.setTransform(saved);
         }
@@ -507,15 +559,68 @@ public class GraphPanel extends JPanel {
         parsedCache.clear();
         updateFunctionDefinitions();
         integralLabels.clear();
+        cancelAreaJobs();
+        areas.clear();
+        areaNodes.clear();
+        repaint();
+    }
+
+    // Free parameters used anywhere on screen, in order of first appearance
+    public Set<String> getParameterNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String expression : expressions) {
+            FunctionDefinition def = expressionParser.parseFunctionDefinition(expression);
+            ExprNode node = def != null ? expressionParser.parseBody(def) : getParsed(expression).node;
+            Parameters.collectNames(node, names);
+        }
+        return names;
+    }
+
+    public double getParameter(String name) {
+        return evaluator.getParameter(name);
+    }
+
+    // Slider drags land here: no re-parsing, and only what uses the parameter is worked out
+    // again. The new version tells the renderer a frame is due, and it redraws only the
+    // expressions whose parameters moved
+    public void setParameter(String name, double value) {
+        evaluator.setParameter(name, value);
+        frameVersion++;
+        areaNodes.entrySet().removeIf(e -> {
+            if (!evaluator.dependsOn(e.getValue(), name)) return false;
+            areas.remove(e.getKey());
+            return true;
+        });
+        // the old value stays up, marked as refining, until the new one comes in
+        for (IntegralLabel label : new ArrayList<>(integralLabels.values())) {
+            if (!evaluator.dependsOn(label.node, name)) continue;
+            AreaJob running = areaJobs.remove(label.key);
+            if (running != null) running.cancel();
+            integralLabels.put(label.key, new IntegralLabel(label.key, label.node, label.worldX, label.worldY,
+                    label.area, label.error, false));
+            startAreaJob(label.key, label.node);
+        }
         repaint();
     }
 
-    private Point2D findNearestCurvePoint(Point p) {
+    public String getExpressionError(String expression) {
+        FunctionDefinition def = expressionParser.parseFunctionDefinition(expression);
+        if (def != null) {
+            String error = evaluator.getDefinitionErrors().get(def.name);
+            if (error != null) return error;
+        }
+        String unknown = expressionParser.findUnknownName(expression);
+        if (unknown != null) return "Unknown name '" + unknown + "'";
+        return evaluator.findError(getParsed(expression).node);
+    }
+
+    private Point2D findNearestCurvePoint(Point p, EvaluationBudget budget) {
         if (expressions.isEmpty()) return null;
 
         double x = (p.x - getWidth() / 2.0) / scale - offsetX;
         double bestDist = Double.POSITIVE_INFINITY;
         Point2D best = null;
+        nearestCurve = null;
 
         for (String expression : expressions) {
             ParsedExpression parsed = getParsed(expression);
@@ -525,15 +630,16 @@ public class GraphPanel extends JPanel {
                 double dist = Math.abs(dx);
                 if (dist <= 8.0 && (parsed.constraint == null || parsed.constraint.allowsX(parsed.xConst))) {
                     double my = -(p.y - getHeight() / 2.0) / scale - offsetY;
-                    double y = clampYToConstraint(parsed, my);
+                    double y = FrameRenderer.clampYToConstraint(parsed, my);
                     if (!Double.isNaN(y)) {
+                        nearestCurve = parsed;
                         return new Point2D.Double(parsed.xConst, y);
                     }
                 }
                 continue;
             }
 
-            double y = evaluateParsedFunction(parsed, x);
+            double y = evaluateParsedFunction(parsed, x, budget);
             if (Double.isNaN(y) || Double.isInfinite(y)) continue;
 
             double sx = (x + offsetX) * scale + getWidth() / 2.0;
@@ -546,6 +652,7 @@ public class GraphPanel extends JPanel {
             if (dist < bestDist) {
                 bestDist = dist;
                 best = new Point2D.Double(x, y);
+                nearestCurve = parsed;
             }
         }
 
@@ -599,11 +706,18 @@ public class GraphPanel extends JPanel {
             String key = region.spec.key();
             if (integralLabels.containsKey(key)) {
                 integralLabels.remove(key);
+                AreaJob job = areaJobs.remove(key);
+                if (job != null) job.cancel();
             } else {
                 double wx = (p.x - getWidth() / 2.0) / scale - offsetX;
                 double wy = -(p.y - getHeight() / 2.0) / scale - offsetY;
-                double area = evaluator.evaluate(region.spec.toExpression(), 0.0);
-                integralLabels.put(key, new IntegralLabel(key, wx, wy, area));
+                QuadratureResult area = areas.get(key);
+                if (area != null) {
+                    integralLabels.put(key, new IntegralLabel(key, region.spec.node, wx, wy, area.value, area.error, true));
+                } else {
+                    integralLabels.put(key, new IntegralLabel(key, region.spec.node, wx, wy, Double.NaN, Double.NaN, false));
+                    startAreaJob(key, region.spec.node);
+                }
             }
             return true;
         }
@@ -611,254 +725,62 @@ public class GraphPanel extends JPanel {
         return false;
     }
 
-    private int indexOfSelectedIntersection(Point2D p) {
-        double sx2 = (p.getX() + offsetX) * scale + getWidth() / 2.0;
-        double sy2 = (-p.getY() - offsetY) * scale + getHeight() / 2.0;
-        for (int i = 0; i < selectedIntersections.size(); i++) {
-            Point2D q = selectedIntersections.get(i);
-            double sx1 = (q.getX() + offsetX) * scale + getWidth() / 2.0;
-            double sy1 = (-q.getY() - offsetY) * scale + getHeight() / 2.0;
-            if (Math.hypot(sx1 - sx2, sy1 - sy2) <= 6.0) return i;
-        }
-        return -1;
+    private void startAreaJob(String key, ExprNode node) {
+        AreaJob job = new AreaJob(key, node, evaluator.snapshot(), this::updateArea);
+        areaJobs.put(key, job);
+        job.start(areaExecutor);
     }
 
-    private List<Point2D> computeIntersections() {
-        List<Point2D> result = new ArrayList<>();
-        if (expressions.size() < 2 || getWidth() <= 2) return result;
-
-        double left = (-getWidth() / 2.0) / scale - offsetX;
-        double right = (getWidth() / 2.0) / scale - offsetX;
-        double step = (right - left) / getWidth();
-
-        int n = expressions.size();
-        for (int i = 0; i < n; i++) {
-            ParsedExpression pi = getParsed(expressions.get(i));
-            // Axis intercepts for each function/line
-            addAxisIntercepts(pi, left, right, step, result);
-            for (int j = i + 1; j < n; j++) {
-                ParsedExpression pj = getParsed(expressions.get(j));
-
-                if (pi.type == ExprType.VERTICAL && pj.type == ExprType.VERTICAL) {
-                    continue;
-                }
-
-                if (pi.type == ExprType.VERTICAL || pj.type == ExprType.VERTICAL) {
-                    ParsedExpression v = pi.type == ExprType.VERTICAL ? pi : pj;
-                    ParsedExpression f = pi.type == ExprType.VERTICAL ? pj : pi;
-                    Point2D ip = intersectVerticalWithFunction(v, f, left, right);
-                    if (ip != null && !containsNear(result, ip)) result.add(ip);
-                    continue;
-                }
-
-                double prevX = left;
-                double prevF = evaluateParsedFunction(pi, prevX);
-                double prevG = evaluateParsedFunction(pj, prevX);
-                if (!isValid(prevF) || !isValid(prevG)) {
-                    prevF = Double.NaN;
-                    prevG = Double.NaN;
-                }
-
-                for (double x = left + step; x <= right; x += step) {
-                    double y1 = evaluateParsedFunction(pi, x);
-                    double y2 = evaluateParsedFunction(pj, x);
-                    if (!isValid(y1) || !isValid(y2) || Double.isNaN(prevF) || Double.isNaN(prevG)) {
-                        prevX = x;
-                        prevF = y1;
-                        prevG = y2;
-                        continue;
-                    }
-
-                    double d0 = prevF - prevG;
-                    double d1 = y1 - y2;
-
-                    if (d0 == 0.0 || d0 * d1 < 0.0) {
-                        Point2D ip = refineIntersection(pi, pj, prevX, x);
-                        if (ip != null && !containsNear(result, ip)) {
-                            result.add(ip);
-                        }
-                    }
-
-                    prevX = x;
-                    prevF = y1;
-                    prevG = y2;
-                }
+    // Called on the event thread with each estimate of a job that has not been cancelled
+    private void updateArea(AreaJob job, QuadratureResult result, boolean last) {
+        if (areaJobs.get(job.key) != job) return;
+        if (last) {
+            areaJobs.remove(job.key);
+            // an estimate cut short is tried again next time
+            if (result != null && !result.incomplete) {
+                areas.put(job.key, result);
+                areaNodes.put(job.key, job.node);
             }
         }
-        return result;
-    }
-
-    private Point2D refineIntersection(ParsedExpression f, ParsedExpression g, double a, double b) {
-        double fa = evaluateParsedFunction(f, a) - evaluateParsedFunction(g, a);
-        double fb = evaluateParsedFunction(f, b) - evaluateParsedFunction(g, b);
-        if (!isValid(fa) || !isValid(fb)) return null;
-
-        double left = a;
-        double right = b;
-        for (int k = 0; k < 18; k++) {
-            double mid = (left + right) / 2.0;
-            double fm = evaluateParsedFunction(f, mid) - evaluateParsedFunction(g, mid);
-            if (!isValid(fm)) return null;
-
-            if (fa == 0.0) {
-                left = a;
-                right = a;
-                break;
-            }
-            if (fa * fm <= 0) {
-                right = mid;
-                fb = fm;
-            } else {
-                left = mid;
-                fa = fm;
-            }
-        }
-
-        double x = (left + right) / 2.0;
-        double y = evaluateParsedFunction(f, x);
-        if (!isValid(y)) return null;
-        return new Point2D.Double(x, y);
+        IntegralLabel label = integralLabels.get(job.key);
+        if (label == null) return;
+        // out of time: the last estimate, if any, is as good as it gets
+        integralLabels.put(job.key, result != null ? label.withArea(result, last)
+                : new IntegralLabel(label.key, label.node, label.worldX, label.worldY, label.area, label.error, true));
+        repaint();
     }
 
-    private void addAxisIntercepts(ParsedExpression parsed, double left, double right, double step, List<Point2D> out) {
-        if (parsed.type == ExprType.VERTICAL) {
-            if (parsed.constraint != null && !parsed.constraint.allowsX(parsed.xConst)) return;
-            if (parsed.xConst >= left && parsed.xConst <= right) {
-                double y0 = clampYToConstraint(parsed, 0.0);
-                if (!Double.isNaN(y0)) {
-                    Point2D p = new Point2D.Double(parsed.xConst, y0);
-                    if (!containsNear(out, p)) out.add(p);
-                }
-            }
-            return;
-        }
-
-        // y-intercept at x = 0 if visible
-        if (left <= 0 && right >= 0) {
-            double y0 = evaluateParsedFunction(parsed, 0);
-            if (isValid(y0)) {
-                Point2D p = new Point2D.Double(0, y0);
-                if (!containsNear(out, p)) out.add(p);
-            }
-        }
-
-        // x-intercepts where f(x) == 0
-        double prevX = left;
-        double prevY = evaluateParsedFunction(parsed, prevX);
-        if (!isValid(prevY)) prevY = Double.NaN;
-
-        for (double x = left + step; x <= right; x += step) {
-            double y = evaluateParsedFunction(parsed, x);
-            if (!isValid(y) || Double.isNaN(prevY)) {
-                prevX = x;
-                prevY = y;
-                continue;
-            }
-
-            if (prevY == 0.0 || prevY * y < 0.0) {
-                Point2D root = refineRoot(parsed, prevX, x);
-                if (root != null && !containsNear(out, root)) out.add(root);
-            }
-
-            prevX = x;
-            prevY = y;
+    private void cancelAreaJobs() {
+        for (AreaJob job : areaJobs.values()) {
+            job.cancel();
         }
+        areaJobs.clear();
     }
 
-    private Point2D refineRoot(ParsedExpression parsed, double a, double b) {
-        double fa = evaluateParsedFunction(parsed, a);
-        double fb = evaluateParsedFunction(parsed, b);
-        if (!isValid(fa) || !isValid(fb)) return null;
-
-        double left = a;
-        double right = b;
-        for (int k = 0; k < 18; k++) {
-            double mid = (left + right) / 2.0;
-            double fm = evaluateParsedFunction(parsed, mid);
-            if (!isValid(fm)) return null;
-
-            if (fa == 0.0) {
-                left = a;
-                right = a;
-                break;
-            }
-            if (fa * fm <= 0) {
-                right = mid;
-                fb = fm;
-            } else {
-                left = mid;
-                fa = fm;
-            }
+    private int indexOfSelectedIntersection(Point2D p) {
+        double sx2 = (p.getX() + offsetX) * scale + getWidth() / 2.0;
+        double sy2 = (-p.getY() - offsetY) * scale + getHeight() / 2.0;
+        for (int i = 0; i < selectedIntersections.size(); i++) {
+            Point2D q = selectedIntersections.get(i);
+            double sx1 = (q.getX() + offsetX) * scale + getWidth() / 2.0;
+            double sy1 = (-q.getY() - offsetY) * scale + getHeight() / 2.0;
+            if (Math.hypot(sx1 - sx2, sy1 - sy2) <= 6.0) return i;
         }
-
-        double x = (left + right) / 2.0;
-        return new Point2D.Double(x, 0.0);
+        return -1;
     }
 
     private boolean isValid(double v) {
         return !(Double.isNaN(v) || Double.isInfinite(v));
     }
 
-    private boolean containsNear(List<Point2D> pts, Point2D p) {
-        double sx = (p.getX() + offsetX) * scale + getWidth() / 2.0;
-        double sy = (-p.getY() - offsetY) * scale + getHeight() / 2.0;
-        for (Point2D q : pts) {
-            double qx = (q.getX() + offsetX) * scale + getWidth() / 2.0;
-            double qy = (-q.getY() - offsetY) * scale + getHeight() / 2.0;
-            if (Math.hypot(sx - qx, sy - qy) <= 6.0) return true;
+    // Recursive definitions only have values on their lattice, drawn as dots
+    private void drawSequence(Graphics2D g2, String expression) {
+        List<Point2D> dots = model == null ? null : model.dots.get(expression);
+        if (dots == null) return;
+        double radius = 2.5 / scale;
+        for (Point2D p : dots) {
+            g2.fill(new Ellipse2D.Double(p.getX() - radius, p.getY() - radius, radius * 2, radius * 2));
         }
-        return false;
-    }
-
-    private Path2D buildIntegralArea(IntegralSpec spec, double left, double right) {
-        double a = evaluator.evaluate(spec.aExpr, 0.0);
-        double b = evaluator.evaluate(spec.bExpr, 0.0);
-        if (Double.isNaN(a) || Double.isNaN(b)) return null;
-        if (a == b) return null;
-
-        double start = Math.min(a, b);
-        double end = Math.max(a, b);
-        if (end < left || start > right) return null;
-
-        start = Math.max(start, left);
-        end = Math.min(end, right);
-
-        int samples = Math.max(2, getWidth());
-        double step = (end - start) / samples;
-        if (step <= 0) return null;
-
-        Path2D area = new Path2D.Double();
-        boolean segment = false;
-        double lastX = start;
-
-        for (int i = 0; i <= samples; i++) {
-            double x = start + i * step;
-            double y = evaluator.evaluate(spec.integrandExpr, x);
-            if (Double.isNaN(y) || Double.isInfinite(y)) {
-                if (segment) {
-                    area.lineTo(lastX, 0);
-                    area.closePath();
-                    segment = false;
-                }
-                continue;
-            }
-
-            if (!segment) {
-                area.moveTo(x, 0);
-                area.lineTo(x, y);
-                segment = true;
-            } else {
-                area.lineTo(x, y);
-            }
-            lastX = x;
-        }
-
-        if (segment) {
-            area.lineTo(end, 0);
-            area.closePath();
-        }
-
-        return area;
     }
 
     private void drawVerticalLine(Graphics2D g2, ParsedExpression parsed, double left, double right, double bottom, double top) {
@@ -883,48 +805,17 @@ public class GraphPanel extends JPanel {
         g2.draw(new Line2D.Double(parsed.xConst, yMin, parsed.xConst, yMax));
     }
 
-    private double clampYToConstraint(ParsedExpression parsed, double y) {
-        if (parsed.constraint == null) return y;
-        if (parsed.constraint.yMin != null) {
-            double min = parsed.constraint.yMin;
-            if (y < min || (y == min && !parsed.constraint.yMinInc)) {
-                y = min;
-            }
-        }
-        if (parsed.constraint.yMax != null) {
-            double max = parsed.constraint.yMax;
-            if (y > max || (y == max && !parsed.constraint.yMaxInc)) {
-                y = max;
-            }
-        }
-        return y;
+    private double evaluateParsedFunction(ParsedExpression parsed, double x, EvaluationBudget budget) {
+        return FrameRenderer.evaluateAt(evaluator.snapshot(), parsed, x, budget);
     }
 
-    private Point2D intersectVerticalWithFunction(ParsedExpression v, ParsedExpression f, double left, double right) {
-        if (Double.isNaN(v.xConst)) return null;
-        if (v.xConst < left || v.xConst > right) return null;
-        if (v.constraint != null && !v.constraint.allowsX(v.xConst)) return null;
-
-        double y = evaluateParsedFunction(f, v.xConst);
-        if (!isValid(y)) return null;
-        if (v.constraint != null && !v.constraint.allowsY(y)) return null;
-        return new Point2D.Double(v.xConst, y);
+    // Whether the expression ran out of time in the last frame and was drawn incompletely
+    public boolean isDegraded(String expression) {
+        return degradedExpressions.contains(expression);
     }
 
-    private double evaluateParsedFunction(ParsedExpression parsed, double x) {
-        if (parsed.type != ExprType.FUNCTION) return Double.NaN;
-        if (parsed.constraint != null && !parsed.constraint.allowsX(x)) {
-            return Double.NaN;
-        }
-
-        double y = evaluator.evaluate(parsed.baseExpression, x);
-        if (!isValid(y)) return y;
-
-        if (parsed.constraint != null && !parsed.constraint.allowsY(y)) {
-            return Double.NaN;
-        }
-
-        return y;
+    public void setDegradedListener(Runnable listener) {
+        degradedListener = listener;
     }
 
     private ParsedExpression getParsed(String expression) {
@@ -937,13 +828,13 @@ public class GraphPanel extends JPanel {
     }
 
     private void updateFunctionDefinitions() {
-        Map<String, String> defs = new HashMap<>();
+        List<FunctionDefinition> defs = new ArrayList<>();
         for (String expression : expressions) {
             FunctionDefinition def = expressionParser.parseFunctionDefinition(expression);
             if (def != null) {
-                defs.put(def.name, def.body);
+                defs.add(def);
             }
         }
-        evaluator.setFunctions(defs);
+        evaluator.setDefinitions(defs);
     }
 }
@@ -0,0 +1,201 @@
+package com.squidtempura;
+
+// Bounded LRU cache of integral results, keyed by the integrand's textHash and textCheck and the
+// bound values themselves, so int(x^2,0,3) and int(x^2, 0.0, 3) share an entry and integrals with moving
+// bounds are cached per point as well. Entries live unboxed in parallel arrays: an open-addressing
+// hash table over them plus an intrusive recency list. All methods are synchronized; each holds
+// the lock for a few array accesses only.
+public class IntegralCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 14;
+    public static final long DEFAULT_MAX_BYTES = 2L << 20;
+    // four keys, two values and a mask, two recency links, and two hash table slots
+    public static final int BYTES_PER_ENTRY = 7 * 8 + 2 * 4 + 2 * 4;
+
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long[] integrands;
+    // a second, independent hash of the integrand; two texts would have to collide in both
+    private final long[] checks;
+    private final long[] lows;
+    private final long[] highs;
+    private final double[] values;
+    private final double[] errors;
+    private final long[] masks;
+    // most recently used first; free entries are chained through next
+    private final int[] prev;
+    private final int[] next;
+    // entry index + 1 per slot, 0 when empty; linear probing
+    private final int[] table;
+    private int head = NONE;
+    private int tail = NONE;
+    private int free;
+    private int size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Holds at most maxEntries, and fewer when maxBytes is the tighter limit
+    public IntegralCache(int maxEntries, long maxBytes) {
+        capacity = (int) Math.max(1, Math.min(maxEntries, maxBytes / BYTES_PER_ENTRY));
+        integrands = new long[capacity];
+        checks = new long[capacity];
+        lows = new long[capacity];
+        highs = new long[capacity];
+        values = new double[capacity];
+        errors = new double[capacity];
+        masks = new long[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity) * 4];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        free = 0;
+    }
+
+    public synchronized QuadratureResult get(long integrand, long check, double a, double b) {
+        int e = find(integrand, check, bits(a), bits(b));
+        if (e == NONE) {
+            misses++;
+            return null;
+        }
+        hits++;
+        unlink(e);
+        pushFront(e);
+        return new QuadratureResult(values[e], errors[e], 0);
+    }
+
+    // paramMask: the parameters the integrand depends on, see invalidate
+    public synchronized void put(long integrand, long check, double a, double b, QuadratureResult result,
+                                 long paramMask) {
+        if (Double.isNaN(a) || Double.isNaN(b)) return;
+        long lo = bits(a);
+        long hi = bits(b);
+        int e = find(integrand, check, lo, hi);
+        if (e == NONE) {
+            if (free == NONE) {
+                evictions++;
+                remove(tail);
+            }
+            e = free;
+            free = next[e];
+            integrands[e] = integrand;
+            checks[e] = check;
+            lows[e] = lo;
+            highs[e] = hi;
+            insert(e);
+            size++;
+        } else {
+            unlink(e);
+        }
+        values[e] = result.value;
+        errors[e] = result.error;
+        masks[e] = paramMask;
+        pushFront(e);
+    }
+
+    // Drops every entry whose integrand uses one of the parameters in `bits`
+    public synchronized void invalidate(long bits) {
+        int e = head;
+        while (e != NONE) {
+            int following = next[e];
+            if ((masks[e] & bits) != 0) remove(e);
+            e = following;
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses, %d evictions", size, capacity, hits, misses, evictions);
+    }
+
+    // -0.0 and 0.0 are the same bound
+    private static long bits(double v) {
+        return Double.doubleToLongBits(v + 0.0);
+    }
+
+    private int slot(long integrand, long lo, long hi) {
+        long h = integrand * 0x9E3779B97F4A7C15L + lo;
+        h = h * 0x9E3779B97F4A7C15L + hi;
+        h ^= h >>> 29;
+        return (int) h & (table.length - 1);
+    }
+
+    private int find(long integrand, long check, long lo, long hi) {
+        int mask = table.length - 1;
+        for (int s = slot(integrand, lo, hi); table[s] != 0; s = (s + 1) & mask) {
+            int e = table[s] - 1;
+            if (integrands[e] == integrand && checks[e] == check && lows[e] == lo && highs[e] == hi) return e;
+        }
+        return NONE;
+    }
+
+    private void insert(int e) {
+        int mask = table.length - 1;
+        int s = slot(integrands[e], lows[e], highs[e]);
+        while (table[s] != 0) {
+            s = (s + 1) & mask;
+        }
+        table[s] = e + 1;
+    }
+
+    private void remove(int e) {
+        int mask = table.length - 1;
+        int s = slot(integrands[e], lows[e], highs[e]);
+        while (table[s] != e + 1) {
+            s = (s + 1) & mask;
+        }
+        // backward-shift deletion keeps every probe chain unbroken without tombstones
+        int hole = s;
+        for (int t = (s + 1) & mask; table[t] != 0; t = (t + 1) & mask) {
+            int other = table[t] - 1;
+            int home = slot(integrands[other], lows[other], highs[other]);
+            // move it into the hole unless its home lies cyclically in (hole, t]
+            boolean stays = hole <= t ? (home > hole && home <= t) : (home > hole || home <= t);
+            if (!stays) {
+                table[hole] = table[t];
+                hole = t;
+            }
+        }
+        table[hole] = 0;
+        unlink(e);
+        next[e] = free;
+        free = e;
+        size--;
+    }
+
+    private void unlink(int e) {
+        if (prev[e] != NONE) next[prev[e]] = next[e]; else head = next[e];
+        if (next[e] != NONE) prev[next[e]] = prev[e]; else tail = prev[e];
+    }
+
+    private void pushFront(int e) {
+        prev[e] = NONE;
+        next[e] = head;
+        if (head != NONE) prev[head] = e;
+        head = e;
+        if (tail == NONE) tail = e;
+    }
+}
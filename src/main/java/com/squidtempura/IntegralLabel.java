@@ -2,14 +2,27 @@ package com.squidtempura;
 
 public class IntegralLabel {
     public final String key;
+    public final ExprNode node;
     public final double worldX;
     public final double worldY;
     public final double area;
+    // estimated error of area
+    public final double error;
+    // false while the area is still being refined; area is NaN until a first estimate is in
+    public final boolean done;
 
-    public IntegralLabel(String key, double worldX, double worldY, double area) {
+    public IntegralLabel(String key, ExprNode node, double worldX, double worldY, double area, double error,
+                         boolean done) {
         this.key = key;
+        this.node = node;
         this.worldX = worldX;
         this.worldY = worldY;
         this.area = area;
+        this.error = error;
+        this.done = done;
+    }
+
+    public IntegralLabel withArea(QuadratureResult result, boolean done) {
+        return new IntegralLabel(key, node, worldX, worldY, result.value, result.error, done);
     }
 }
@@ -0,0 +1,170 @@
+package com.squidtempura;
+
+import java.awt.geom.Path2D;
+
+// The shaded area of one integral at one zoom level, kept across frames. Its samples, of the
+// integrand or of both inner bounds of a double integral, sit on the world grid t = k / scale
+// along the outer axis, so a pan samples only the strip that came into view. The world-space
+// path is rebuilt from them only when the view leaves the samples it was built from or moves
+// out of the band it is clipped to; otherwise every frame reuses it as is.
+public class IntegralShading {
+    // samples kept per pixel of the view's extent along the outer axis
+    private static final int KEPT_VIEWS = 4;
+    // the path is clipped to the view stretched by this many extents on either side
+    private static final double BAND = 2.0;
+
+    public final IntegralSpec spec;
+    public final EvaluatorSnapshot snapshot;
+    public final double scale;
+    // outer bounds with a <= b, NaN when undefined
+    private final double a;
+    private final double b;
+    // the upper and lower edge at a and at b
+    private final double upperA;
+    private final double lowerA;
+    private final double upperB;
+    private final double lowerB;
+    // the integrand, or the upper inner bound; lowers is null for a single integral
+    private final SampleStrip uppers;
+    private final SampleStrip lowers;
+    private Path2D area;
+    private long areaFrom;
+    private long areaTo;
+    private double bandLow;
+    private double bandHigh;
+    private boolean complete = true;
+
+    public IntegralShading(IntegralSpec spec, EvaluatorSnapshot snapshot, double scale, EvaluationBudget budget) {
+        this.spec = spec;
+        this.snapshot = snapshot;
+        this.scale = scale;
+        double u = snapshot.evaluate(spec.a, 0.0, budget);
+        double v = snapshot.evaluate(spec.b, 0.0, budget);
+        a = Math.min(u, v);
+        b = Math.max(u, v);
+        uppers = new SampleStrip(1.0 / scale);
+        lowers = spec.isDouble() ? new SampleStrip(1.0 / scale) : null;
+        ExprNode upper = spec.isDouble() ? spec.upper : spec.integrand;
+        boolean defined = !Double.isNaN(a) && !Double.isNaN(b);
+        upperA = defined ? snapshot.evaluate(upper, a, budget) : Double.NaN;
+        upperB = defined ? snapshot.evaluate(upper, b, budget) : Double.NaN;
+        lowerA = !defined ? Double.NaN : spec.isDouble() ? snapshot.evaluate(spec.lower, a, budget) : 0.0;
+        lowerB = !defined ? Double.NaN : spec.isDouble() ? snapshot.evaluate(spec.lower, b, budget) : 0.0;
+        complete = !budget.isIncomplete();
+    }
+
+    public boolean matches(EvaluatorSnapshot snapshot, double scale) {
+        return this.snapshot == snapshot && this.scale == scale;
+    }
+
+    // False once a budget ran out while sampling: the samples may hold gaps and must not be kept
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // The area in world coordinates for the view [left, right] x [bottom, top], null when none of
+    // it is in view
+    public Path2D area(double left, double right, double bottom, double top, EvaluationBudget budget) {
+        if (Double.isNaN(a) || Double.isNaN(b) || a == b) return null;
+        // the outer variable runs along the x axis, or up the y axis for dx dy
+        boolean horizontal = spec.horizontal;
+        double outerLow = horizontal ? bottom : left;
+        double outerHigh = horizontal ? top : right;
+        double innerLow = horizontal ? left : bottom;
+        double innerHigh = horizontal ? right : top;
+        if (b < outerLow || a > outerHigh) return null;
+
+        double step = uppers.step;
+        long from = Math.max((long) Math.ceil(a / step), (long) Math.floor(outerLow / step));
+        long to = Math.min((long) Math.floor(b / step), (long) Math.ceil(outerHigh / step));
+        if (area != null && from >= areaFrom && to <= areaTo && innerLow >= bandLow && innerHigh <= bandHigh) {
+            return area;
+        }
+
+        int limit = (int) Math.min(Integer.MAX_VALUE / 2, KEPT_VIEWS * ((outerHigh - outerLow) / step + 1));
+        if (from <= to) {
+            cover(uppers, spec.isDouble() ? spec.upper : spec.integrand, from, to, limit, budget);
+            if (lowers != null) cover(lowers, spec.lower, from, to, limit, budget);
+        }
+        if (budget.isIncomplete()) complete = false;
+
+        double extent = innerHigh - innerLow;
+        bandLow = innerLow - BAND * extent;
+        bandHigh = innerHigh + BAND * extent;
+        areaFrom = from;
+        areaTo = to;
+        area = build(from, to, step, horizontal);
+        return area;
+    }
+
+    private void cover(SampleStrip strip, ExprNode node, long from, long to, int limit, EvaluationBudget budget) {
+        // a proxy is fitted to the whole visible part, never to a strip of a few pixels
+        double low = Math.max(a, from * strip.step);
+        double high = Math.min(b, to * strip.step);
+        strip.cover(from, to, limit, (left, step, count, out) -> {
+            ChebyshevProxy proxy = snapshot.proxy(node, low, high, budget);
+            if (proxy != null && proxy.covers(left, left + (count - 1) * step)) {
+                proxy.sample(left, step, count, out);
+            } else {
+                snapshot.evaluate(node, left, step, count, out, budget);
+            }
+        });
+    }
+
+    // Forward along the upper edge, back along the lower one, one closed piece per run of
+    // points where both are defined
+    private Path2D build(long from, long to, double step, boolean horizontal) {
+        int n = (int) Math.max(0, to - from + 1) + 2;
+        double[] ts = new double[n];
+        double[] highs = new double[n];
+        double[] lows = new double[n];
+        int m = 0;
+        // the exact bounds when they are in view, then the grid strictly between them
+        if (from * step - step < a) {
+            ts[m] = a;
+            highs[m] = upperA;
+            lows[m++] = lowerA;
+        }
+        for (long k = from; k <= to; k++) {
+            double t = k * step;
+            if (t <= a || t >= b) continue;
+            ts[m] = t;
+            highs[m] = uppers.at(k);
+            lows[m++] = lowers == null ? 0.0 : lowers.at(k);
+        }
+        if (to * step + step > b) {
+            ts[m] = b;
+            highs[m] = upperB;
+            lows[m++] = lowerB;
+        }
+
+        Path2D path = new Path2D.Double();
+        int start = -1;
+        for (int i = 0; i <= m; i++) {
+            boolean defined = i < m && !Double.isNaN(highs[i]) && !Double.isNaN(lows[i]);
+            if (defined && start < 0) start = i;
+            if (defined || start < 0) continue;
+            for (int j = start; j < i; j++) {
+                point(path, j == start, horizontal, ts[j], highs[j]);
+            }
+            for (int j = i - 1; j >= start; j--) {
+                point(path, false, horizontal, ts[j], lows[j]);
+            }
+            path.closePath();
+            start = -1;
+        }
+        return path;
+    }
+
+    // toward an asymptote such as 1/sqrt(x) at 0 the area runs off the band, not off to 1e300
+    private void point(Path2D path, boolean move, boolean horizontal, double t, double v) {
+        v = Math.max(bandLow, Math.min(bandHigh, v));
+        double x = horizontal ? v : t;
+        double y = horizontal ? t : v;
+        if (move) {
+            path.moveTo(x, y);
+        } else {
+            path.lineTo(x, y);
+        }
+    }
+}
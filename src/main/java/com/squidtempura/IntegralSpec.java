@@ -1,21 +1,43 @@
 package com.squidtempura;
 
 public class IntegralSpec {
+    public final ExprNode node;
+    public final ExprNode integrand;
+    public final ExprNode a;
+    public final ExprNode b;
+    // the inner bounds of a double integral as functions of the outer variable, null otherwise
+    public final ExprNode lower;
+    public final ExprNode upper;
+    // dx dy: the outer variable is y and the region lies between x = lower(y) and x = upper(y)
+    public final boolean horizontal;
     public final String integrandExpr;
     public final String aExpr;
     public final String bExpr;
 
-    public IntegralSpec(String integrandExpr, String aExpr, String bExpr) {
-        this.integrandExpr = integrandExpr;
-        this.aExpr = aExpr;
-        this.bExpr = bExpr;
+    public IntegralSpec(ExprNode node) {
+        this.node = node;
+        this.integrand = node.args[0];
+        this.a = node.args[1];
+        this.b = node.args[2];
+        boolean twice = node.kind == NodeKind.INTEGRAL2;
+        this.lower = twice ? node.args[3] : null;
+        this.upper = twice ? node.args[4] : null;
+        this.horizontal = twice && node.order == 1;
+        this.integrandExpr = integrand.toString();
+        this.aExpr = a.toString();
+        this.bExpr = b.toString();
+    }
+
+    public boolean isDouble() {
+        return lower != null;
     }
 
     public String key() {
-        return integrandExpr + "|" + aExpr + "|" + bExpr;
+        if (!isDouble()) return integrandExpr + "|" + aExpr + "|" + bExpr;
+        return integrandExpr + "|" + aExpr + "|" + bExpr + "|" + lower + "|" + upper + (horizontal ? "|dx dy" : "|dy dx");
     }
 
     public String toExpression() {
-        return "int(" + integrandExpr + "," + aExpr + "," + bExpr + ")";
+        return node.toString();
     }
 }
@@ -0,0 +1,314 @@
+package com.squidtempura;
+
+import java.util.function.DoubleUnaryOperator;
+
+// A guaranteed enclosure [lo, hi] of every defined value an expression takes over an input
+// interval. Endpoints are rounded outwards. partial means some inputs may give NaN, and continuous
+// is false unless the expression is provably continuous over the whole input.
+public class Interval {
+    public static final Interval EMPTY = new Interval(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, true, true);
+    // nothing is known, e.g. around a pole or for derivatives over a range
+    public static final Interval UNKNOWN = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true, false);
+
+    private static final double HALF_PI = Math.PI / 2.0;
+    // beyond this, rounding in x exceeds the spacing of trig extrema
+    private static final double TRIG_LIMIT = 1e8;
+
+    public final double lo;
+    public final double hi;
+    public final boolean partial;
+    public final boolean continuous;
+
+    private Interval(double lo, double hi, boolean partial, boolean continuous) {
+        this.lo = lo;
+        this.hi = hi;
+        this.partial = partial;
+        this.continuous = continuous;
+    }
+
+    public static Interval of(double lo, double hi) {
+        if (Double.isNaN(lo) || Double.isNaN(hi) || lo > hi) return EMPTY;
+        return new Interval(lo, hi, false, true);
+    }
+
+    public static Interval point(double v) {
+        if (Double.isNaN(v)) return EMPTY;
+        return new Interval(v, v, false, true);
+    }
+
+    public boolean isEmpty() {
+        return lo > hi;
+    }
+
+    public boolean isPoint() {
+        return lo == hi;
+    }
+
+    public boolean contains(double v) {
+        return v >= lo && v <= hi;
+    }
+
+    // Widened by one ulp each way, which covers the error of every Math function used here
+    private Interval rounded(double newLo, double newHi, boolean newPartial, boolean newContinuous) {
+        if (Double.isNaN(newLo)) newLo = Double.NEGATIVE_INFINITY;
+        if (Double.isNaN(newHi)) newHi = Double.POSITIVE_INFINITY;
+        if (newLo > newHi) return EMPTY;
+        return new Interval(Math.nextDown(newLo), Math.nextUp(newHi), newPartial, newContinuous);
+    }
+
+    private Interval monotone(double fLo, double fHi) {
+        return rounded(Math.min(fLo, fHi), Math.max(fLo, fHi), partial, continuous);
+    }
+
+    private Interval discontinuous() {
+        return new Interval(lo, hi, partial, false);
+    }
+
+    private Interval undefinedIn(boolean somewhere) {
+        return somewhere ? new Interval(lo, hi, true, continuous) : this;
+    }
+
+    public Interval negate() {
+        if (isEmpty()) return EMPTY;
+        return new Interval(-hi, -lo, partial, continuous);
+    }
+
+    public Interval add(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        return rounded(lo + b.lo, hi + b.hi, partial || b.partial, continuous && b.continuous);
+    }
+
+    public Interval sub(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        return rounded(lo - b.hi, hi - b.lo, partial || b.partial, continuous && b.continuous);
+    }
+
+    public Interval mul(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        double p1 = product(lo, b.lo);
+        double p2 = product(lo, b.hi);
+        double p3 = product(hi, b.lo);
+        double p4 = product(hi, b.hi);
+        return rounded(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)),
+                partial || b.partial, continuous && b.continuous);
+    }
+
+    // 0 * inf only arises from an unbounded endpoint, where every finite product is 0
+    private static double product(double a, double b) {
+        double p = a * b;
+        return Double.isNaN(p) ? 0.0 : p;
+    }
+
+    public Interval div(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        if (b.lo == 0.0 && b.hi == 0.0) return EMPTY;
+        if (b.contains(0.0)) {
+            // a pole, and Builtin.div is NaN where the divisor is exactly zero
+            return new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true, false);
+        }
+        return mul(b.rounded(1.0 / b.hi, 1.0 / b.lo, b.partial, b.continuous));
+    }
+
+    public Interval mod(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        double bound = Math.max(Math.abs(b.lo), Math.abs(b.hi));
+        boolean zero = b.contains(0.0);
+        if (b.isPoint() && bound > 0 && hi - lo < bound) {
+            // % is exact, and within one period of the divisor it is just a shift
+            double rLo = lo % bound;
+            double rHi = hi % bound;
+            if (Math.abs((rHi - rLo) - (hi - lo)) < bound / 2) {
+                return rounded(rLo, rHi, partial || b.partial, continuous && b.continuous).clip(-bound, bound);
+            }
+        }
+        // Java's % keeps the sign of the dividend and stays below |b|
+        double newLo = lo >= 0 ? 0.0 : Math.max(lo, -bound);
+        double newHi = hi <= 0 ? 0.0 : Math.min(hi, bound);
+        return new Interval(newLo, newHi, partial || b.partial || zero, false);
+    }
+
+    private Interval clip(double min, double max) {
+        return new Interval(Math.max(lo, min), Math.min(hi, max), partial, continuous);
+    }
+
+    public Interval pow(Interval b) {
+        if (isEmpty() || b.isEmpty()) return EMPTY;
+        if (b.isPoint()) return pow(b.lo).withFlagsOf(b);
+        if (lo > 0) {
+            double p1 = Math.pow(lo, b.lo);
+            double p2 = Math.pow(lo, b.hi);
+            double p3 = Math.pow(hi, b.lo);
+            double p4 = Math.pow(hi, b.hi);
+            return rounded(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)),
+                    partial || b.partial, continuous && b.continuous);
+        }
+        return UNKNOWN;
+    }
+
+    private Interval withFlagsOf(Interval b) {
+        if (isEmpty() || (!b.partial && b.continuous)) return this;
+        return new Interval(lo, hi, partial || b.partial, continuous && b.continuous);
+    }
+
+    public Interval pow(double p) {
+        if (isEmpty() || Double.isNaN(p)) return EMPTY;
+        if (p == 0.0) return new Interval(1.0, 1.0, false, true);
+        if (p == Math.rint(p) && Math.abs(p) < 9.007199254740992E15) {
+            boolean even = p % 2.0 == 0.0;
+            double pLo = Math.pow(lo, p);
+            double pHi = Math.pow(hi, p);
+            if (!contains(0.0)) return monotone(pLo, pHi);
+            if (p > 0) {
+                if (even) return rounded(0.0, Math.max(pLo, pHi), partial, continuous);
+                return monotone(pLo, pHi);
+            }
+            // negative powers have a pole at zero
+            if (even) return new Interval(Math.nextDown(Math.min(pLo, pHi)), Double.POSITIVE_INFINITY, partial, false);
+            return new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, partial, false);
+        }
+        // fractional powers of negative numbers are NaN
+        if (hi < 0) return EMPTY;
+        Interval d = domain(0.0, Double.POSITIVE_INFINITY);
+        Interval r = d.monotone(Math.pow(d.lo, p), Math.pow(d.hi, p));
+        return p < 0 && d.lo == 0.0 ? r.discontinuous() : r;
+    }
+
+    // Restricts to [min, max], marking the rest as undefined
+    private Interval domain(double min, double max) {
+        if (hi < min || lo > max) return EMPTY;
+        return new Interval(Math.max(lo, min), Math.min(hi, max), partial || lo < min || hi > max, continuous);
+    }
+
+    public Interval sqrt() {
+        Interval d = domain(0.0, Double.POSITIVE_INFINITY);
+        if (d.isEmpty()) return EMPTY;
+        return d.monotone(Math.sqrt(d.lo), Math.sqrt(d.hi));
+    }
+
+    public Interval log(DoubleUnaryOperator f, double min) {
+        Interval d = domain(min, Double.POSITIVE_INFINITY);
+        if (d.isEmpty()) return EMPTY;
+        return d.monotone(f.applyAsDouble(d.lo), f.applyAsDouble(d.hi));
+    }
+
+    public Interval increasing(DoubleUnaryOperator f) {
+        if (isEmpty()) return EMPTY;
+        return monotone(f.applyAsDouble(lo), f.applyAsDouble(hi));
+    }
+
+    public Interval asin() {
+        Interval d = domain(-1.0, 1.0);
+        if (d.isEmpty()) return EMPTY;
+        return d.monotone(Math.asin(d.lo), Math.asin(d.hi));
+    }
+
+    public Interval acos() {
+        Interval d = domain(-1.0, 1.0);
+        if (d.isEmpty()) return EMPTY;
+        return d.monotone(Math.acos(d.hi), Math.acos(d.lo));
+    }
+
+    public Interval abs() {
+        if (isEmpty()) return EMPTY;
+        if (lo >= 0) return this;
+        if (hi <= 0) return negate();
+        return new Interval(0.0, Math.max(-lo, hi), partial, continuous);
+    }
+
+    public Interval cosh() {
+        if (isEmpty()) return EMPTY;
+        if (lo >= 0) return monotone(Math.cosh(lo), Math.cosh(hi));
+        if (hi <= 0) return monotone(Math.cosh(hi), Math.cosh(lo));
+        return rounded(1.0, Math.max(Math.cosh(lo), Math.cosh(hi)), partial, continuous);
+    }
+
+    // floor, ceil and signum: monotone, continuous only while the step stays the same
+    public Interval step(DoubleUnaryOperator f) {
+        if (isEmpty()) return EMPTY;
+        double fLo = f.applyAsDouble(lo);
+        double fHi = f.applyAsDouble(hi);
+        return new Interval(fLo, fHi, partial, continuous && fLo == fHi);
+    }
+
+    public Interval sin() {
+        return periodic(false);
+    }
+
+    public Interval cos() {
+        return periodic(true);
+    }
+
+    // Extrema of sin lie at pi/2 + k pi and of cos at k pi, with even k the maxima
+    private Interval periodic(boolean cosine) {
+        if (isEmpty()) return EMPTY;
+        if (hi - lo >= 2 * Math.PI || Math.abs(lo) > TRIG_LIMIT || Math.abs(hi) > TRIG_LIMIT) {
+            return new Interval(-1.0, 1.0, partial, continuous);
+        }
+        double fLo = cosine ? Math.cos(lo) : Math.sin(lo);
+        double fHi = cosine ? Math.cos(hi) : Math.sin(hi);
+        double newLo = Math.min(fLo, fHi);
+        double newHi = Math.max(fLo, fHi);
+        double offset = cosine ? 0.0 : HALF_PI;
+        double slack = 1e-9;
+        for (long k = (long) Math.floor((lo - offset) / Math.PI) - 1; offset + k * Math.PI <= hi + slack; k++) {
+            if (offset + k * Math.PI < lo - slack) continue;
+            if (k % 2 == 0) {
+                newHi = 1.0;
+            } else {
+                newLo = -1.0;
+            }
+        }
+        return rounded(Math.max(-1.0, newLo), Math.min(1.0, newHi), partial, continuous).clip(-1.0, 1.0);
+    }
+
+    public Interval tan() {
+        if (isEmpty()) return EMPTY;
+        if (containsMultiple(HALF_PI)) return new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, partial, false);
+        return monotone(Math.tan(lo), Math.tan(hi));
+    }
+
+    public Interval cot() {
+        if (isEmpty()) return EMPTY;
+        if (containsMultiple(0.0)) return new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true, false);
+        return monotone(Builtin.cot(hi), Builtin.cot(lo));
+    }
+
+    // whether offset + k pi lies in this interval for some integer k, erring towards yes
+    private boolean containsMultiple(double offset) {
+        if (hi - lo >= Math.PI || Math.abs(lo) > TRIG_LIMIT || Math.abs(hi) > TRIG_LIMIT) return true;
+        double slack = 1e-9;
+        double k = Math.ceil((lo - slack - offset) / Math.PI);
+        return offset + k * Math.PI <= hi + slack;
+    }
+
+    // Clamps to the allowed y range, values outside become NaN; infinities pass through like
+    // they do for point evaluation
+    public Interval constrainY(Constraint c) {
+        if (isEmpty() || (c.yMin == null && c.yMax == null)) return this;
+        double min = c.yMin == null ? Double.NEGATIVE_INFINITY : c.yMin;
+        double max = c.yMax == null ? Double.POSITIVE_INFINITY : c.yMax;
+        boolean outside = lo < min || hi > max || (lo == min && !c.yMinInc) || (hi == max && !c.yMaxInc);
+        if (!outside) return this;
+        double newLo = lo == Double.NEGATIVE_INFINITY ? lo : Math.max(lo, min);
+        double newHi = hi == Double.POSITIVE_INFINITY ? hi : Math.min(hi, max);
+        if (newLo > newHi) return EMPTY;
+        return new Interval(newLo, newHi, true, false);
+    }
+
+    // The part of an x range that the constraint allows
+    public Interval constrainX(Constraint c) {
+        if (isEmpty() || (c.xMin == null && c.xMax == null)) return this;
+        double min = c.xMin == null ? Double.NEGATIVE_INFINITY : c.xMin;
+        double max = c.xMax == null ? Double.POSITIVE_INFINITY : c.xMax;
+        boolean outside = lo < min || hi > max || (lo == min && !c.xMinInc) || (hi == max && !c.xMaxInc);
+        if (!outside) return this;
+        if (hi < min || lo > max) return EMPTY;
+        return new Interval(Math.max(lo, min), Math.min(hi, max), true, false);
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) return "[]";
+        return "[" + lo + ", " + hi + "]" + (partial ? " partial" : "") + (continuous ? "" : " discontinuous");
+    }
+}
@@ -0,0 +1,22 @@
+package com.squidtempura;
+
+public enum NodeKind {
+    CONST,
+    VAR,
+    PARAM,
+    NEG,
+    ADD,
+    SUB,
+    MUL,
+    DIV,
+    MOD,
+    POW,
+    FUNC,
+    CALL,
+    DERIVATIVE,
+    INTEGRAL,
+    CONSTRAINED,
+    // the inner variable of an int2 integrand, y in int2(x*y, x, 0, 1, y, 0, x)
+    INNER_VAR,
+    INTEGRAL2
+}
@@ -0,0 +1,123 @@
+package com.squidtempura;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Values of the free parameters, e.g. a and b in a*sin(b*x). Each name gets a fixed slot and the
+// value array is never reallocated, so compiled expressions read the live values and a slider
+// only has to store a double. Values are kept as bits in an AtomicLongArray, so a thread that
+// reads one sees it whole and as set, never torn or stale. Evaluations run while a value is changed, so each slot carries a
+// version for telling whether a result was computed with the values a cache would file it under.
+// Every snapshot still in use is told of a new value, as one can outlive a change of definitions
+// and keeps being evaluated by whoever holds it.
+public class Parameters {
+    public static final int MAX_PARAMETERS = 64;
+    public static final double DEFAULT_VALUE = 1.0;
+
+    private final AtomicLongArray values = new AtomicLongArray(MAX_PARAMETERS);
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+    private final String[] names = new String[MAX_PARAMETERS];
+    // bumped before and after every write, so it is odd while a write is under way
+    private final AtomicLongArray versions = new AtomicLongArray(MAX_PARAMETERS);
+    private final Set<EvaluatorSnapshot> snapshots = Collections.newSetFromMap(new WeakHashMap<>());
+
+    public Parameters() {
+        for (int i = 0; i < MAX_PARAMETERS; i++) {
+            values.set(i, Double.doubleToRawLongBits(DEFAULT_VALUE));
+        }
+    }
+
+    // The slot for a name, assigned on first use; -1 once every slot is taken
+    public synchronized int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            if (slots.size() >= MAX_PARAMETERS) return -1;
+            slot = slots.size();
+            slots.put(name, slot);
+            names[slot] = name;
+        }
+        return slot;
+    }
+
+    // The name in a slot, null while it is unassigned
+    public synchronized String name(int slot) {
+        return slot < 0 || slot >= MAX_PARAMETERS ? null : names[slot];
+    }
+
+    public synchronized Set<String> names() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(slots.keySet()));
+    }
+
+    public double value(int slot) {
+        return slot < 0 ? Double.NaN : Double.longBitsToDouble(values.get(slot));
+    }
+
+    public void set(int slot, double value) {
+        if (slot < 0) return;
+        versions.incrementAndGet(slot);
+        values.set(slot, Double.doubleToRawLongBits(value));
+        versions.incrementAndGet(slot);
+        EvaluatorSnapshot[] live;
+        synchronized (snapshots) {
+            live = snapshots.toArray(new EvaluatorSnapshot[0]);
+        }
+        for (EvaluatorSnapshot snapshot : live) {
+            snapshot.invalidateParameter(slot);
+        }
+    }
+
+    // Has snapshot drop what depends on a parameter whenever one is set, for as long as it is reachable
+    void register(EvaluatorSnapshot snapshot) {
+        synchronized (snapshots) {
+            snapshots.add(snapshot);
+        }
+    }
+
+    // The versions of the slots in mask taken together, -1 while one of them is being written.
+    // A result worked out after stamp(mask) read only the values of that moment if
+    // unchanged(mask, stamp) still holds once it is done.
+    public long stamp(long mask) {
+        long sum = 0;
+        for (long m = mask; m != 0; m &= m - 1) {
+            long version = versions.get(Long.numberOfTrailingZeros(m));
+            if ((version & 1) != 0) return -1;
+            sum += version;
+        }
+        return sum;
+    }
+
+    public boolean unchanged(long mask, long stamp) {
+        return stamp >= 0 && stamp(mask) == stamp;
+    }
+
+    AtomicLongArray values() {
+        return values;
+    }
+
+    // Gives every parameter node its slot, sharing unchanged subtrees
+    public ExprNode bind(ExprNode node) {
+        if (node.kind == NodeKind.PARAM) {
+            return node.order >= 0 ? node : ExprNode.parameter(node.name, slot(node.name));
+        }
+        if (node.args.length == 0) return node;
+        ExprNode[] args = new ExprNode[node.args.length];
+        boolean changed = false;
+        for (int i = 0; i < args.length; i++) {
+            args[i] = bind(node.args[i]);
+            changed |= args[i] != node.args[i];
+        }
+        return changed ? node.withArgs(args) : node;
+    }
+
+    public static void collectNames(ExprNode node, Set<String> out) {
+        if (node.kind == NodeKind.PARAM) out.add(node.name);
+        for (ExprNode arg : node.args) {
+            collectNames(arg, out);
+        }
+    }
+}
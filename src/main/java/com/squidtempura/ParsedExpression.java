@@ -2,12 +2,14 @@ package com.squidtempura;
 
 public class ParsedExpression {
     public final String baseExpression;
+    public final ExprNode node;
     public final Constraint constraint;
     public final ExprType type;
     public final double xConst;
 
-    public ParsedExpression(String baseExpression, Constraint constraint, ExprType type, double xConst) {
+    public ParsedExpression(String baseExpression, ExprNode node, Constraint constraint, ExprType type, double xConst) {
         this.baseExpression = baseExpression;
+        this.node = node;
         this.constraint = constraint;
         this.type = type;
         this.xConst = xConst;
@@ -0,0 +1,36 @@
+package com.squidtempura;
+
+public class QuadratureResult {
+    public static final QuadratureResult NAN = new QuadratureResult(Double.NaN, Double.NaN, 0);
+
+    public final double value;
+    // estimated absolute error of value
+    public final double error;
+    // integrand samples taken
+    public final int evaluations;
+    // the budget ran out before the tolerance was met; value and error are the estimate so far
+    public final boolean incomplete;
+
+    public QuadratureResult(double value, double error, int evaluations) {
+        this(value, error, evaluations, false);
+    }
+
+    public QuadratureResult(double value, double error, int evaluations, boolean incomplete) {
+        this.value = value;
+        this.error = error;
+        this.evaluations = evaluations;
+        this.incomplete = incomplete;
+    }
+
+    // The estimate so far when the budget ran out, NaN while a part of it is still undefined
+    static QuadratureResult partial(double value, double error, int evaluations) {
+        if (Double.isNaN(value) || !(error < Double.POSITIVE_INFINITY)) {
+            return new QuadratureResult(Double.NaN, Double.NaN, evaluations, true);
+        }
+        return new QuadratureResult(value, error, evaluations, true);
+    }
+
+    public QuadratureResult negate() {
+        return new QuadratureResult(-value, error, evaluations, incomplete);
+    }
+}
@@ -0,0 +1,100 @@
+package com.squidtempura;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+// A definition that calls itself at smaller arguments, such as a(n)=a(n-1)+a(n-2) with a(0)=1
+// and a(1)=1. Its values live on the lattice origin + k * step and are memoized, so evaluation is
+// linear in the depth; deep arguments are warmed up bottom-up to keep the Java stack shallow.
+public class RecursiveDefinition {
+    private static final int MEMO_LIMIT = 1 << 16;
+    // deeper than this, the memo is filled from the bottom before recursing
+    private static final int WARM_UP_DEPTH = 64;
+    private static final int MAX_DEPTH = 1 << 20;
+
+    public final String name;
+    // the lowest base case, below which the recursion would never end
+    public final double origin;
+    public final double step;
+    private final Map<Double, Double> baseCases;
+    private final Map<Double, Double> memo = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Double, Double> eldest) {
+            return size() > MEMO_LIMIT;
+        }
+    };
+    // bumped by clear(), under the memo's lock, so a value worked out before a parameter changed
+    // is not filed after the memo was cleared for it
+    private long generation;
+
+    RecursiveDefinition(String name, Map<Double, Double> baseCases, double step) {
+        this.name = name;
+        this.baseCases = baseCases;
+        this.step = step;
+        double lowest = Double.POSITIVE_INFINITY;
+        for (double at : baseCases.keySet()) {
+            lowest = Math.min(lowest, at);
+        }
+        this.origin = lowest;
+    }
+
+    // `body` evaluates the linked body, whose self-calls come back here
+    public double evaluate(double n, DoubleUnaryOperator body) {
+        Double base = baseCases.get(n);
+        if (base != null) return base;
+        if (Double.isNaN(n) || n < origin) return Double.NaN;
+        Double known = lookup(n);
+        if (known != null) return known;
+
+        double depth = Math.floor((n - origin) / step);
+        if (depth > MAX_DEPTH) return Double.NaN;
+        if (depth > WARM_UP_DEPTH) {
+            // the same chain of subtractions the recursion performs, down to the first known
+            // value, then walked upwards
+            double[] chain = new double[(int) depth];
+            int size = 0;
+            double m = n - step;
+            while (size < chain.length && m >= origin && !baseCases.containsKey(m) && lookup(m) == null) {
+                chain[size++] = m;
+                m -= step;
+            }
+            for (int i = size - 1; i >= 0 && !EvaluationBudget.isExhausted(); i--) {
+                compute(chain[i], body);
+            }
+        }
+        return compute(n, body);
+    }
+
+    public void clear() {
+        synchronized (memo) {
+            memo.clear();
+            generation++;
+        }
+    }
+
+    private double compute(double n, DoubleUnaryOperator body) {
+        Double base = baseCases.get(n);
+        if (base != null) return base;
+        Double known = lookup(n);
+        if (known != null) return known;
+        if (!EvaluationBudget.spend(1)) return Double.NaN;
+        long started;
+        synchronized (memo) {
+            started = generation;
+        }
+        double value = body.applyAsDouble(n);
+        // a value cut short by the budget is not the real one
+        if (EvaluationBudget.isExhausted()) return Double.NaN;
+        synchronized (memo) {
+            if (generation == started) memo.put(n, value);
+        }
+        return value;
+    }
+
+    private Double lookup(double n) {
+        synchronized (memo) {
+            return memo.get(n);
+        }
+    }
+}
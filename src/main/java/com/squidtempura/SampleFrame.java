@@ -0,0 +1,64 @@
+package com.squidtempura;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One frame's sampling grid, x = left + i * step for i < count. Expressions sampled through the
+// same frame share their columns: every distinct subexpression, including a named function's
+// body, is evaluated once per x no matter how many plotted expressions or consumers contain it.
+// A frame belongs to one thread and returned columns must not be modified.
+public class SampleFrame {
+    public final double left;
+    public final double step;
+    public final int count;
+
+    private final EvaluatorSnapshot snapshot;
+    private final double[] xs;
+    private final Map<String, double[]> columns = new HashMap<>();
+
+    SampleFrame(EvaluatorSnapshot snapshot, double left, double step, int count) {
+        this.snapshot = snapshot;
+        this.left = left;
+        this.step = step;
+        this.count = count;
+        this.xs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = left + i * step;
+        }
+    }
+
+    public boolean matches(EvaluatorSnapshot snapshot, double left, double step, int count) {
+        return this.snapshot == snapshot && this.left == left && this.step == step && this.count == count;
+    }
+
+    public double[] sample(ExprNode node) {
+        ExprNode linked = snapshot.link(node);
+        double[] column = columns.get(linked.toString());
+        if (column != null) return column;
+        double[] out = new double[count];
+        if (linked.kind == NodeKind.CONST || linked.kind == NodeKind.VAR) {
+            snapshot.evalColumn(linked, xs, count, out, null);
+            columns.put(linked.toString(), out);
+            return out;
+        }
+        snapshot.evalColumn(linked, xs, count, out, columns);
+        // columns cut short by a budget are not shared
+        double[] shared = columns.get(linked.toString());
+        return shared != null ? shared : out;
+    }
+
+    // Under a budget, see EvaluationBudget
+    public double[] sample(ExprNode node, EvaluationBudget budget) {
+        EvaluationBudget previous = budget.enter();
+        try {
+            return sample(node);
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    // Number of distinct subexpression columns computed so far
+    public int columnCount() {
+        return columns.size();
+    }
+}
@@ -0,0 +1,90 @@
+package com.squidtempura;
+
+// Samples of one function on the world grid x = k * step, kept from frame to frame in a ring
+// buffer: sample k lives in slot k mod capacity. Covering a range of indices samples only those
+// not already held, so after a pan of a few pixels only the newly exposed columns are evaluated
+// and written over the slots of the ones furthest away on the other side; nothing is moved.
+public class SampleStrip {
+    public interface Sampler {
+        // out[i] = f(left + i * step) for i < count
+        void sample(double left, double step, int count, double[] out);
+    }
+
+    public final double step;
+    private double[] values = new double[0];
+    // the held samples are the grid indices first .. first + count - 1
+    private long first;
+    private int count;
+
+    public SampleStrip(double step) {
+        this.step = step;
+    }
+
+    public boolean holds(long from, long to) {
+        return count > 0 && from >= first && to < first + count;
+    }
+
+    // The sample at grid index k, NaN when it is not held
+    public double at(long k) {
+        return k >= first && k < first + count ? values[slot(k)] : Double.NaN;
+    }
+
+    // Holds indices from..to afterwards. limit, raised to the length of the range if needed,
+    // is the capacity of the ring, i.e. how many samples are kept in all
+    public void cover(long from, long to, int limit, Sampler f) {
+        if (to < from) return;
+        resize((int) Math.max(limit, to - from + 1), to);
+        if (holds(from, to)) return;
+        long last = first + count - 1;
+        if (count == 0 || from > last + 1 || to < first - 1) {
+            // nothing to reuse, and a gap would be sampled in vain
+            first = from;
+            count = 0;
+            fill(f, from, to);
+            count = (int) (to - from + 1);
+            return;
+        }
+        // writing below first overwrites the top of the ring and the other way round, and
+        // from..to fits in the ring, so neither side clobbers what the other one needs
+        if (from < first) {
+            fill(f, from, first - 1);
+            last = Math.min(last, from + values.length - 1);
+            first = from;
+        }
+        if (to > last) {
+            fill(f, last + 1, to);
+            first = Math.max(first, to - values.length + 1);
+            last = to;
+        }
+        count = (int) (last - first + 1);
+    }
+
+    private int slot(long k) {
+        return (int) Math.floorMod(k, (long) values.length);
+    }
+
+    private void fill(Sampler f, long from, long to) {
+        double[] part = new double[(int) (to - from + 1)];
+        f.sample(from * step, step, part.length, part);
+        int start = slot(from);
+        int head = Math.min(part.length, values.length - start);
+        System.arraycopy(part, 0, values, start, head);
+        System.arraycopy(part, head, values, 0, part.length - head);
+    }
+
+    // A new capacity, as after the panel was resized, keeps the held samples nearest `to`
+    private void resize(int capacity, long to) {
+        if (capacity == values.length) return;
+        double[] old = values;
+        values = new double[capacity];
+        if (count == 0) return;
+        long last = first + count - 1;
+        long keepFrom = Math.max(first, Math.min(last, to) - capacity + 1);
+        long keepTo = Math.min(last, keepFrom + capacity - 1);
+        for (long k = keepFrom; k <= keepTo; k++) {
+            values[slot(k)] = old[(int) Math.floorMod(k, (long) old.length)];
+        }
+        first = keepFrom;
+        count = (int) (keepTo - keepFrom + 1);
+    }
+}
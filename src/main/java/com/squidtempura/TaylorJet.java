@@ -0,0 +1,312 @@
+package com.squidtempura;
+
+import java.util.Arrays;
+
+// Truncated Taylor series c[0] + c[1] t + ... + c[n] t^n, with c[k] = f^(k)(x) / k!.
+// Order 1 is a dual number, order 2 a hyper-dual one; every operation is exact up to rounding.
+public class TaylorJet {
+    public final double[] c;
+
+    private TaylorJet(double[] c) {
+        this.c = c;
+    }
+
+    public static TaylorJet constant(double value, int order) {
+        double[] c = new double[order + 1];
+        c[0] = value;
+        return new TaylorJet(c);
+    }
+
+    public static TaylorJet variable(double x, int order) {
+        double[] c = new double[order + 1];
+        c[0] = x;
+        if (order > 0) c[1] = 1.0;
+        return new TaylorJet(c);
+    }
+
+    public static TaylorJet nan(int order) {
+        double[] c = new double[order + 1];
+        Arrays.fill(c, Double.NaN);
+        return new TaylorJet(c);
+    }
+
+    public int order() {
+        return c.length - 1;
+    }
+
+    public double value() {
+        return c[0];
+    }
+
+    // f^(k)(x), undoing the 1/k! scaling
+    public double derivative(int k) {
+        double d = c[k];
+        for (int i = 2; i <= k; i++) {
+            d *= i;
+        }
+        return d;
+    }
+
+    public TaylorJet negate() {
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            r[k] = -c[k];
+        }
+        return new TaylorJet(r);
+    }
+
+    public TaylorJet add(TaylorJet b) {
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            r[k] = c[k] + b.c[k];
+        }
+        return new TaylorJet(r);
+    }
+
+    public TaylorJet sub(TaylorJet b) {
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            r[k] = c[k] - b.c[k];
+        }
+        return new TaylorJet(r);
+    }
+
+    public TaylorJet scale(double s) {
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            r[k] = c[k] * s;
+        }
+        return new TaylorJet(r);
+    }
+
+    public TaylorJet mul(TaylorJet b) {
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            double s = 0.0;
+            for (int j = 0; j <= k; j++) {
+                s += c[j] * b.c[k - j];
+            }
+            r[k] = s;
+        }
+        return new TaylorJet(r);
+    }
+
+    public TaylorJet div(TaylorJet b) {
+        if (b.c[0] == 0.0) return nan(order());
+        double[] r = new double[c.length];
+        for (int k = 0; k < c.length; k++) {
+            double s = c[k];
+            for (int j = 1; j <= k; j++) {
+                s -= b.c[j] * r[k - j];
+            }
+            r[k] = s / b.c[0];
+        }
+        return new TaylorJet(r);
+    }
+
+    // Java's % truncates, so a % b = a - q b with q locally constant
+    public TaylorJet mod(TaylorJet b) {
+        double v = Builtin.mod(c[0], b.c[0]);
+        if (Double.isNaN(v)) return nan(order());
+        TaylorJet r = sub(b.scale((c[0] - v) / b.c[0]));
+        r.c[0] = v;
+        return r;
+    }
+
+    public TaylorJet pow(TaylorJet b) {
+        if (b.isConstant()) return pow(b.c[0]);
+        TaylorJet r = log().mul(b).exp();
+        r.c[0] = Math.pow(c[0], b.c[0]);
+        return r;
+    }
+
+    public TaylorJet pow(double p) {
+        if (p == Math.rint(p) && p >= 0 && p <= 64) {
+            // exact even where the base is zero, e.g. x^2 at 0
+            TaylorJet result = constant(1.0, order());
+            TaylorJet base = this;
+            for (int e = (int) p; e > 0; e >>= 1) {
+                if ((e & 1) != 0) result = result.mul(base);
+                if (e > 1) base = base.mul(base);
+            }
+            return result;
+        }
+        return power(p, Math.pow(c[0], p));
+    }
+
+    public TaylorJet sqrt() {
+        return power(0.5, Math.sqrt(c[0]));
+    }
+
+    public TaylorJet cbrt() {
+        return power(1.0 / 3.0, Math.cbrt(c[0]));
+    }
+
+    public TaylorJet exp() {
+        return exponential(Math.exp(c[0]));
+    }
+
+    public TaylorJet expm1() {
+        TaylorJet r = exponential(Math.exp(c[0]));
+        r.c[0] = Math.expm1(c[0]);
+        return r;
+    }
+
+    public TaylorJet log() {
+        return integrate(Math.log(c[0]), reciprocal());
+    }
+
+    public TaylorJet log1p() {
+        return integrate(Math.log1p(c[0]), constant(1.0, order()).add(this).reciprocal());
+    }
+
+    public TaylorJet sin() {
+        return sinCos(false)[0];
+    }
+
+    public TaylorJet cos() {
+        return sinCos(false)[1];
+    }
+
+    public TaylorJet tan() {
+        TaylorJet[] sc = sinCos(false);
+        return sc[0].div(sc[1]);
+    }
+
+    public TaylorJet cot() {
+        TaylorJet[] sc = sinCos(false);
+        if (sc[0].c[0] == 0.0) return nan(order());
+        return sc[1].div(sc[0]);
+    }
+
+    public TaylorJet sinh() {
+        return sinCos(true)[0];
+    }
+
+    public TaylorJet cosh() {
+        return sinCos(true)[1];
+    }
+
+    public TaylorJet tanh() {
+        TaylorJet[] sc = sinCos(true);
+        TaylorJet r = sc[0].div(sc[1]);
+        r.c[0] = Math.tanh(c[0]);
+        return r;
+    }
+
+    public TaylorJet asin() {
+        return integrate(Math.asin(c[0]), oneMinusSquare().power(-0.5, 1.0 / Math.sqrt(1.0 - c[0] * c[0])));
+    }
+
+    public TaylorJet acos() {
+        return integrate(Math.acos(c[0]), oneMinusSquare().power(-0.5, 1.0 / Math.sqrt(1.0 - c[0] * c[0])).negate());
+    }
+
+    public TaylorJet atan() {
+        return integrate(Math.atan(c[0]), constant(1.0, order()).add(mul(this)).reciprocal());
+    }
+
+    public TaylorJet abs() {
+        if (c[0] < 0) return negate();
+        if (c[0] > 0) return this;
+        TaylorJet r = constant(0.0, order());
+        // the kink at zero has no derivative
+        for (int k = 1; k < c.length; k++) {
+            r.c[k] = Double.NaN;
+        }
+        return r;
+    }
+
+    // Piecewise-constant functions: their derivatives vanish wherever they are defined
+    public TaylorJet step(double value) {
+        return constant(value, order());
+    }
+
+    public boolean isConstant() {
+        for (int k = 1; k < c.length; k++) {
+            if (c[k] != 0.0) return false;
+        }
+        return true;
+    }
+
+    // Substitutes this jet for t in the series p(t) = p[0] + p[1] t + ..., after shifting by c[0]
+    public TaylorJet compose(double[] p) {
+        TaylorJet shifted = sub(constant(c[0], order()));
+        TaylorJet r = constant(p[p.length - 1], order());
+        for (int k = p.length - 2; k >= 0; k--) {
+            r = r.mul(shifted);
+            r.c[0] += p[k];
+        }
+        return r;
+    }
+
+    private TaylorJet reciprocal() {
+        return constant(1.0, order()).div(this);
+    }
+
+    private TaylorJet oneMinusSquare() {
+        return constant(1.0, order()).sub(mul(this));
+    }
+
+    // this^p given its value v, from (this) r' = p r (this)'
+    private TaylorJet power(double p, double v) {
+        if (c[0] == 0.0) return isConstant() ? constant(v, order()) : nan(order());
+        double[] r = new double[c.length];
+        r[0] = v;
+        for (int k = 1; k < c.length; k++) {
+            double s = 0.0;
+            for (int j = 1; j <= k; j++) {
+                s += (p * j - (k - j)) * c[j] * r[k - j];
+            }
+            r[k] = s / (k * c[0]);
+        }
+        return new TaylorJet(r);
+    }
+
+    private TaylorJet exponential(double v) {
+        double[] r = new double[c.length];
+        r[0] = v;
+        for (int k = 1; k < c.length; k++) {
+            double s = 0.0;
+            for (int j = 1; j <= k; j++) {
+                s += j * c[j] * r[k - j];
+            }
+            r[k] = s / k;
+        }
+        return new TaylorJet(r);
+    }
+
+    // g(this) given g's value and the jet of g' at this, from g(this)' = g'(this) (this)'
+    TaylorJet integrate(double value, TaylorJet gPrime) {
+        double[] r = new double[c.length];
+        r[0] = value;
+        for (int k = 1; k < c.length; k++) {
+            double s = 0.0;
+            for (int j = 1; j <= k; j++) {
+                s += j * c[j] * gPrime.c[k - j];
+            }
+            r[k] = s / k;
+        }
+        return new TaylorJet(r);
+    }
+
+    // sin/cos, or sinh/cosh when hyperbolic, share one recurrence
+    private TaylorJet[] sinCos(boolean hyperbolic) {
+        double[] s = new double[c.length];
+        double[] co = new double[c.length];
+        s[0] = hyperbolic ? Math.sinh(c[0]) : Math.sin(c[0]);
+        co[0] = hyperbolic ? Math.cosh(c[0]) : Math.cos(c[0]);
+        double sign = hyperbolic ? 1.0 : -1.0;
+        for (int k = 1; k < c.length; k++) {
+            double ss = 0.0;
+            double cs = 0.0;
+            for (int j = 1; j <= k; j++) {
+                ss += j * c[j] * co[k - j];
+                cs += j * c[j] * s[k - j];
+            }
+            s[k] = ss / k;
+            co[k] = sign * cs / k;
+        }
+        return new TaylorJet[]{new TaylorJet(s), new TaylorJet(co)};
+    }
+}
@@ -0,0 +1,43 @@
+package com.squidtempura;
+
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+// Interprets an expression until it has been invoked often enough, then switches to compiled code
+public class TieredFunction implements DoubleUnaryOperator {
+    private final DoubleUnaryOperator interpreted;
+    private final Supplier<DoubleUnaryOperator> compiler;
+    private final int threshold;
+    // racy on purpose: a lost increment only delays promotion slightly
+    private int invocations;
+    private volatile DoubleUnaryOperator compiled;
+
+    public TieredFunction(DoubleUnaryOperator interpreted, Supplier<DoubleUnaryOperator> compiler, int threshold) {
+        this.interpreted = interpreted;
+        this.compiler = compiler;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public double applyAsDouble(double x) {
+        DoubleUnaryOperator c = compiled;
+        if (c != null) return c.applyAsDouble(x);
+        if (++invocations >= threshold) {
+            return promote().applyAsDouble(x);
+        }
+        return interpreted.applyAsDouble(x);
+    }
+
+    public synchronized DoubleUnaryOperator promote() {
+        if (compiled == null) {
+            DoubleUnaryOperator c = compiler == null ? null : compiler.get();
+            // anything the compiler rejects stays interpreted for good
+            compiled = c != null ? c : interpreted;
+        }
+        return compiled;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null && compiled != interpreted;
+    }
+}
@@ -0,0 +1,84 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Curves of integrals with moving bounds come from one table per integrand; sampled as a column
+// they have to give what a quadrature per point gives
+class AntiderivativeTableTest {
+    private static final int COUNT = 801;
+
+    private static void checkColumn(String expression, double left, double right, DoubleUnaryOperator exact,
+                                    double tolerance) {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse(expression);
+        double[] xs = new double[COUNT];
+        double[] out = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) xs[i] = left + (right - left) * i / (COUNT - 1);
+        evaluator.evaluate(node, xs, out);
+        for (int i = 0; i < COUNT; i++) {
+            double want = exact.applyAsDouble(xs[i]);
+            if (Double.isNaN(want)) {
+                assertTrue(Double.isNaN(out[i]), expression + " at " + xs[i] + " gave " + out[i]);
+            } else {
+                assertEquals(want, out[i], tolerance, expression + " at " + xs[i]);
+            }
+        }
+    }
+
+    @Test
+    void columnsMatchClosedForms() {
+        checkColumn("int(cos(x), 0, x)", -6.0, 6.0, Math::sin, 1e-9);
+        checkColumn("int(x*exp(-x^2), 0, x)", -3.0, 3.0, x -> (1 - Math.exp(-x * x)) / 2, 1e-9);
+        checkColumn("int(2*x, x, x + 1)", -2.0, 2.0, x -> 2 * x + 1, 1e-9);
+        checkColumn("int(cos(x), -x, x)", -4.0, 4.0, x -> 2 * Math.sin(x), 1e-9);
+    }
+
+    // the integral of 1/x does not exist across 0, so the curve stops there; the panel next to
+    // the pole is left out as a whole, and close to it the cubics between knots lose digits
+    @Test
+    void aPoleBetweenTheBoundsGivesNaN() {
+        checkColumn("int(1/x, 1, x)", 0.05, 3.0, Math::log, 1e-6);
+        checkColumn("int(1/x, 1, x)", -2.0, -0.01, x -> Double.NaN, 0.0);
+    }
+
+    @Test
+    void extendingKeepsEveryKnot() {
+        DoubleUnaryOperator g = x -> Math.exp(-x) * Math.sin(3 * x);
+        AntiderivativeTable.Integrand f = new AntiderivativeTable.Integrand() {
+            @Override
+            public void sample(double[] xs, double[] out) {
+                for (int i = 0; i < xs.length; i++) out[i] = g.applyAsDouble(xs[i]);
+            }
+
+            @Override
+            public boolean isContinuous(double a, double b) {
+                return true;
+            }
+
+            @Override
+            public double integrate(double a, double b) {
+                return GaussKronrod.integrate(this, a, b, 1e-13, 1e-13).value;
+            }
+        };
+        AntiderivativeTable table = AntiderivativeTable.build(f, 1.0 / 64, 0.0, 2.0);
+        assertTrue(table.covers(0.0, 2.0));
+        // exp(-x) sin(3x) integrates to -exp(-x)(sin(3x) + 3cos(3x))/10
+        DoubleUnaryOperator primitive = x -> -Math.exp(-x) * (Math.sin(3 * x) + 3 * Math.cos(3 * x)) / 10;
+        // on knots the table holds the panel sums themselves, between them a Hermite cubic
+        assertEquals(primitive.applyAsDouble(1.75) - primitive.applyAsDouble(0.25), table.integrate(0.25, 1.75), 1e-12);
+        assertEquals(primitive.applyAsDouble(1.7) - primitive.applyAsDouble(0.3), table.integrate(0.3, 1.7), 1e-8);
+
+        AntiderivativeTable wider = table.extend(f, -1.0, 3.0);
+        assertTrue(wider.covers(-1.0, 3.0));
+        assertEquals(table.integrate(0.3, 1.7), wider.integrate(0.3, 1.7), 1e-13);
+        assertEquals(primitive.applyAsDouble(2.875) - primitive.applyAsDouble(-0.75), wider.integrate(-0.75, 2.875),
+                1e-12);
+        assertArrayEquals(wider.toArray(), AntiderivativeTable.fromArray(wider.toArray()).toArray());
+    }
+}
@@ -0,0 +1,84 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Compiled code has to give exactly what the interpreter gives, NaN where it gives NaN
+class BytecodeCompilerTest {
+    private static final String[] EXPRESSIONS = {
+            "2 + 3*x^2 - x/7", "-x^3 + 4*x", "sin(3*x - 1)*cos(x^2)", "exp(-x^2/2)/sqrt(2*pi)",
+            "log(x) + log10(abs(x) + 1)", "sqrt(1 - x^2)", "x % 0.7 - floor(x) + ceil(2*x)",
+            "pow(abs(x), 1.5) - x^-2", "atan(5*x) + tanh(x) - asin(x/4)", "1/(x - 0.3)",
+            "abs(sin(x))^(1/3) + signum(x)", "x^2 {x > 0}", "(x + 1)*(x - 1) {-1 <= x <= 2}",
+    };
+
+    private static void assertSameValue(double expected, double actual, String message) {
+        assertEquals(Double.doubleToLongBits(expected + 0.0), Double.doubleToLongBits(actual + 0.0),
+                message + ": interpreter " + expected + ", compiled " + actual);
+    }
+
+    @Test
+    void compiledExpressionsMatchTheInterpreter() {
+        FunctionEvaluator interpreter = new FunctionEvaluator();
+        interpreter.setInterpreterOnly(true);
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        Random random = new Random(20261017L);
+        for (String expression : EXPRESSIONS) {
+            ExprNode node = new ExprNodeParser().parse(expression);
+            // constraints are applied around the compiled body, as the snapshot does
+            ExprNode body = node.kind == NodeKind.CONSTRAINED ? node.args[0] : node;
+            DoubleUnaryOperator compiled = compiler.compile(body, n -> x -> Double.NaN, new AtomicLongArray(64));
+            assertNotNull(compiled, expression);
+            ExprNode interpreted = interpreter.parse(body.toString());
+            for (int i = 0; i < 500; i++) {
+                double x = i < 5 ? new double[]{0.0, -0.0, 0.3, 1.0, -1.0}[i] : -4 + 8 * random.nextDouble();
+                assertSameValue(interpreter.evaluate(interpreted, x), compiled.applyAsDouble(x), expression + " at " + x);
+            }
+        }
+    }
+
+    // Through the snapshot: definitions, derivatives and parameters once the tiers have promoted
+    @Test
+    void promotedTiersMatchTheInterpreter() {
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", "x^2 + sin(x)");
+        defs.put("g", "f(x)/(1 + f(x)^2)");
+        String[] expressions = {"g(x) + a*f(2*x)", "f'(x) * a", "g(x - 1) {x > -2}", "f(f(x)/4)"};
+        FunctionEvaluator interpreter = new FunctionEvaluator();
+        interpreter.setInterpreterOnly(true);
+        FunctionEvaluator tiered = new FunctionEvaluator();
+        for (FunctionEvaluator evaluator : new FunctionEvaluator[]{interpreter, tiered}) {
+            evaluator.setFunctions(defs);
+            evaluator.setParameter("a", 1.5);
+        }
+        Random random = new Random(7L);
+        for (String expression : expressions) {
+            ExprNode slow = interpreter.parse(expression);
+            ExprNode fast = tiered.parse(expression);
+            // well past the promotion threshold, so the later points run compiled
+            for (int i = 0; i < 3000; i++) {
+                double x = -3 + 6 * random.nextDouble();
+                double expected = interpreter.evaluate(slow, x);
+                double actual = tiered.evaluate(fast, x);
+                if (expression.contains("'")) {
+                    assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)), expression + " at " + x);
+                } else {
+                    assertSameValue(expected, actual, expression + " at " + x);
+                }
+            }
+        }
+        tiered.setParameter("a", -2.0);
+        interpreter.setParameter("a", -2.0);
+        ExprNode fast = tiered.parse(expressions[0]);
+        ExprNode slow = interpreter.parse(expressions[0]);
+        assertSameValue(interpreter.evaluate(slow, 0.75), tiered.evaluate(fast, 0.75), expressions[0] + " after a = -2");
+    }
+}
@@ -0,0 +1,67 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChebyshevProxyTest {
+    private static ChebyshevProxy.Sampler sampler(DoubleUnaryOperator f) {
+        return (xs, out) -> {
+            for (int i = 0; i < xs.length; i++) out[i] = f.applyAsDouble(xs[i]);
+        };
+    }
+
+    @Test
+    void smoothFunctionsAreMatchedWithinTheirEstimate() {
+        DoubleUnaryOperator[] functions = {x -> Math.exp(Math.sin(3 * x)), x -> 1 / (1 + 4 * x * x), Math::cos,
+                x -> x * x * x - x};
+        Random random = new Random(5L);
+        for (DoubleUnaryOperator f : functions) {
+            ChebyshevProxy proxy = ChebyshevProxy.fit(sampler(f), -1.0, 2.0, 1e-12);
+            assertTrue(proxy.isConverged());
+            assertTrue(proxy.errorEstimate < 1e-9, "estimate " + proxy.errorEstimate);
+            for (int i = 0; i < 1000; i++) {
+                double x = -1.0 + 3.0 * random.nextDouble();
+                assertEquals(f.applyAsDouble(x), proxy.value(x), 1e-9, "at " + x);
+            }
+            assertTrue(Double.isNaN(proxy.value(2.5)));
+        }
+        // a cubic needs no more than degree 3
+        assertTrue(ChebyshevProxy.fit(sampler(x -> x * x * x - x), -1.0, 2.0, 1e-12).degree() <= 3);
+    }
+
+    @Test
+    void jumpsAndUndefinedPointsDoNotConverge() {
+        assertFalse(ChebyshevProxy.fit(sampler(x -> x < 0.3 ? 0 : 1), -1.0, 1.0, 1e-10).isConverged());
+        assertFalse(ChebyshevProxy.fit(sampler(Math::log), -1.0, 1.0, 1e-10).isConverged());
+    }
+
+    // The snapshot fits a proxy only where sampling costs enough for it to pay
+    @Test
+    void theSnapshotProxiesCostlyExpressionsOnly() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        assertNull(snapshot.proxy(evaluator.parse("sin(x) + x^2"), -1.0, 1.0));
+
+        ExprNode costly = evaluator.parse("int(exp(-x^2), 0, x)");
+        ChebyshevProxy proxy = snapshot.proxy(costly, -1.0, 1.0);
+        assertNotNull(proxy);
+        assertTrue(proxy.covers(-1.0, 1.0));
+        for (double x = -1.0; x <= 1.0; x += 0.0625) {
+            assertEquals(snapshot.evaluate(costly, x), proxy.value(x), 1e-8, "at " + x);
+        }
+        assertSame(proxy, snapshot.currentProxy(costly));
+
+        FunctionEvaluator off = new FunctionEvaluator();
+        off.setProxiesEnabled(false);
+        assertNull(off.snapshot().proxy(off.parse("int(exp(-x^2), 0, x)"), -1.0, 1.0));
+    }
+}
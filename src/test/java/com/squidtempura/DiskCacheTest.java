@@ -0,0 +1,79 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsSurviveAReopen() {
+        DiskCache cache = DiskCache.open(directory, DiskCache.DEFAULT_MAX_BYTES);
+        assertNotNull(cache);
+        cache.put(1L, new double[]{1.5, -2.0});
+        cache.put(2L, new double[]{3.0});
+        cache.put(1L, new double[]{4.0, 5.0, 6.0});
+        assertArrayEquals(new double[]{4.0, 5.0, 6.0}, cache.get(1L));
+        cache.close();
+
+        DiskCache reopened = DiskCache.open(directory, DiskCache.DEFAULT_MAX_BYTES);
+        assertArrayEquals(new double[]{4.0, 5.0, 6.0}, reopened.get(1L));
+        assertArrayEquals(new double[]{3.0}, reopened.get(2L));
+        assertNull(reopened.get(3L));
+        reopened.close();
+    }
+
+    @Test
+    void aTornRecordIsCutOff() throws IOException {
+        DiskCache cache = DiskCache.open(directory, DiskCache.DEFAULT_MAX_BYTES);
+        cache.put(1L, new double[]{1.0});
+        cache.close();
+        Path file;
+        try (var files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow();
+        }
+        long good = Files.size(file);
+        Files.write(file, new byte[]{0x49, 0x58, 0x43}, StandardOpenOption.APPEND);
+
+        DiskCache reopened = DiskCache.open(directory, DiskCache.DEFAULT_MAX_BYTES);
+        assertArrayEquals(new double[]{1.0}, reopened.get(1L));
+        assertEquals(good, Files.size(file));
+        reopened.put(2L, new double[]{2.0});
+        reopened.close();
+        DiskCache again = DiskCache.open(directory, DiskCache.DEFAULT_MAX_BYTES);
+        assertArrayEquals(new double[]{2.0}, again.get(2L));
+        again.close();
+    }
+
+    @Test
+    void compactionKeepsTheNewestWithinTheBudget() throws IOException {
+        long maxBytes = 4096;
+        DiskCache cache = DiskCache.open(directory, maxBytes);
+        double[] values = new double[30];
+        for (long key = 0; key < 100; key++) {
+            values[0] = key;
+            cache.put(key, values);
+        }
+        assertEquals(99.0, cache.get(99L)[0]);
+        assertNull(cache.get(0L));
+        cache.close();
+        try (var files = Files.list(directory)) {
+            assertTrue(files.allMatch(f -> f.toFile().length() <= maxBytes));
+        }
+        DiskCache reopened = DiskCache.open(directory, maxBytes);
+        assertEquals(99.0, reopened.get(99L)[0]);
+        reopened.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DoubleExponentialTest {
+    private static ChebyshevProxy.Sampler sampler(DoubleUnaryOperator f) {
+        return (xs, out) -> {
+            for (int i = 0; i < xs.length; i++) out[i] = f.applyAsDouble(xs[i]);
+        };
+    }
+
+    private static QuadratureResult integrate(DoubleUnaryOperator f, double a, double b) {
+        return DoubleExponential.integrate(sampler(f), a, b, 1e-12, 1e-12);
+    }
+
+    private static void check(DoubleUnaryOperator f, double a, double b, double exact, double tolerance) {
+        QuadratureResult r = integrate(f, a, b);
+        assertEquals(exact, r.value, tolerance, "[" + a + ", " + b + "]");
+        // a few hundred samples, where Gauss-Kronrod would bisect towards the singularity
+        assertTrue(r.evaluations < 1000, r.evaluations + " samples on [" + a + ", " + b + "]");
+    }
+
+    @Test
+    void endpointSingularities() {
+        check(x -> 1 / Math.sqrt(x), 0.0, 1.0, 2.0, 1e-10);
+        check(Math::log, 0.0, 1.0, -1.0, 1e-10);
+        check(x -> Math.log(x) * Math.log(1 - x), 0.0, 1.0, 2 - Math.PI * Math.PI / 6, 1e-10);
+        check(x -> Math.pow(x, -0.9), 0.0, 1.0, 10.0, 1e-7);
+        // x - 1 and 1 - x*x lose their digits right next to the bound, which is what the
+        // accuracy stops at when the singularity is not at 0
+        check(x -> 1 / Math.sqrt(x - 1), 1.0, 2.0, 2.0, 1e-7);
+        check(x -> 1 / Math.sqrt(1 - x * x), -1.0, 1.0, Math.PI, 1e-7);
+    }
+
+    @Test
+    void infiniteRanges() {
+        check(x -> Math.exp(-x * x), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Math.sqrt(Math.PI), 1e-10);
+        check(x -> 1 / (1 + x * x), 0.0, Double.POSITIVE_INFINITY, Math.PI / 2, 1e-10);
+        check(Math::exp, Double.NEGATIVE_INFINITY, 0.0, 1.0, 1e-10);
+        check(x -> Math.exp(-x) / Math.sqrt(x), 0.0, Double.POSITIVE_INFINITY, Math.sqrt(Math.PI), 1e-9);
+        // x^2 overflows far out while exp(-x) is already 0; the vanished tail is cut off there
+        check(x -> x * x * Math.exp(-x), 0.0, Double.POSITIVE_INFINITY, 2.0, 1e-10);
+        check(x -> x * x * x * Math.exp(-x * x), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0.0, 1e-10);
+    }
+
+    @Test
+    void divergentAndUndefinedIntegralsAreNaN() {
+        assertTrue(Double.isNaN(integrate(x -> 1 / x, 0.0, 1.0).value));
+        assertTrue(Double.isNaN(integrate(x -> 1 / Math.sqrt(x), 1.0, Double.POSITIVE_INFINITY).value));
+        assertTrue(Double.isNaN(integrate(x -> Math.sqrt(5 - x), 0.0, Double.POSITIVE_INFINITY).value));
+    }
+
+    @Test
+    void reversedBoundsNegate() {
+        assertEquals(-2.0, integrate(x -> 1 / Math.sqrt(x), 1.0, 0.0).value, 1e-10);
+        assertEquals(-Math.PI / 2, integrate(x -> 1 / (1 + x * x), Double.POSITIVE_INFINITY, 0.0).value, 1e-10);
+    }
+
+    // What int(...) in an expression does with the same integrals: improper ones go here
+    @Test
+    void expressionsPickItForImproperIntegrals() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        assertEquals(2.0, evaluator.evaluate("int(1/sqrt(x), 0, 1)", 0.0), 1e-9);
+        assertEquals(Math.sqrt(Math.PI), evaluator.evaluate("int(exp(-x^2), -inf, inf)", 0.0), 1e-9);
+        assertEquals(2.0, evaluator.evaluate("int(x^2*exp(-x), 0, inf)", 0.0), 1e-9);
+    }
+}
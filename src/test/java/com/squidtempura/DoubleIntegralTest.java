@@ -0,0 +1,22 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DoubleIntegralTest {
+    @Test
+    void orderOfIntegrationIsPartOfTheCacheKey() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        // the same text with the roles of x and y swapped: 4/3 over [0,1] x [0,2], 2/3 over [0,2] x [0,1]
+        assertEquals(4.0 / 3.0, evaluator.evaluate("int2(x*y^2, x, 0, 1, y, 0, 2)", 0.0), 1e-9);
+        assertEquals(2.0 / 3.0, evaluator.evaluate("int2(x*y^2, y, 0, 1, x, 0, 2)", 0.0), 1e-9);
+    }
+
+    @Test
+    void variableInnerBounds() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        assertEquals(0.125, evaluator.evaluate("int2(x*y, x, 0, 1, y, 0, x)", 0.0), 1e-9);
+        assertEquals(Math.PI / 4, evaluator.evaluate("int2(1, x, 0, 1, y, 0, sqrt(1-x^2))", 0.0), 1e-7);
+    }
+}
@@ -0,0 +1,54 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationBudgetTest {
+    @Test
+    void cancelledBudgetIsIncompleteBeforeItIsCharged() {
+        EvaluationBudget budget = EvaluationBudget.ofMillis(60_000);
+        budget.cancel();
+        assertTrue(budget.isIncomplete());
+        EvaluationBudget previous = budget.enter();
+        try {
+            assertTrue(EvaluationBudget.isExhausted());
+        } finally {
+            EvaluationBudget.exit(previous);
+        }
+    }
+
+    @Test
+    void resultsOfCancelledEvaluationsAreNotCached() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        ExprNode node = evaluator.parse("int(sin(x), 0, 2)");
+        EvaluationBudget budget = EvaluationBudget.ofMillis(60_000);
+        budget.cancel();
+        snapshot.evaluate(node, 0.0, budget);
+        assertEquals(1 - Math.cos(2), snapshot.evaluate(node, 0.0), 1e-9);
+    }
+
+    // A budget that runs out part way through a long integral leaves the sum of the subintervals
+    // done so far, flagged, and the full result is still worked out afresh afterwards
+    @Test
+    void anIntegralCutShortGivesItsEstimateSoFar() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        ExprNode node = evaluator.parse("int(sin(40*x)^2, 0, 50)");
+        double exact = 25 - Math.sin(4000) / 160;
+        EvaluationBudget budget = new EvaluationBudget(60_000, 3_000);
+        QuadratureResult partial = snapshot.integrate(node, 0.0, budget);
+        assertTrue(budget.isIncomplete());
+        assertTrue(partial.incomplete);
+        assertTrue(partial.evaluations > 15, "evaluations " + partial.evaluations);
+        assertTrue(Double.isFinite(partial.value) && Double.isFinite(partial.error));
+        assertEquals(exact, partial.value, Math.max(partial.error, 1e-9));
+
+        QuadratureResult full = snapshot.integrate(node, 0.0);
+        assertFalse(full.incomplete);
+        assertEquals(exact, full.value, 1e-8);
+    }
+}
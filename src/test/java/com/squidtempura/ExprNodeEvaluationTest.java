@@ -0,0 +1,91 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// An expression is parsed once into a tree that every later evaluation walks; the tree has to
+// give what the text means, and its canonical text has to parse back to the same tree
+class ExprNodeEvaluationTest {
+    private static final double[] XS = {-2.5, -1.0, -0.25, 0.0, 0.5, 1.0, 3.0};
+
+    private static void check(String expression, DoubleUnaryOperator expected) {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse(expression);
+        assertTrue(node.isValid(), expression);
+        for (double x : XS) {
+            double want = expected.applyAsDouble(x);
+            double got = evaluator.evaluate(node, x);
+            if (Double.isNaN(want)) {
+                assertTrue(Double.isNaN(got), expression + " at " + x + " gave " + got);
+            } else {
+                assertEquals(want, got, 1e-12 * Math.max(1, Math.abs(want)), expression + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    void precedenceAndAssociativity() {
+        check("2 + 3*x^2", x -> 2 + 3 * x * x);
+        check("-x^2", x -> -(x * x));
+        check("2^3^x", x -> Math.pow(2, Math.pow(3, x)));
+        check("x - 1 - 2", x -> x - 3);
+        check("x / 2 / 4", x -> x / 8);
+        check("(x + 1)*(x - 1)", x -> x * x - 1);
+        check("x % 0.75", x -> x % 0.75);
+    }
+
+    @Test
+    void functionsAndConstants() {
+        check("sin(pi*x) + cos(x)^2", x -> Math.sin(Math.PI * x) + Math.cos(x) * Math.cos(x));
+        check("exp(-x^2/2)", x -> Math.exp(-x * x / 2));
+        check("sqrt(x)", Math::sqrt);
+        check("log(x)", x -> x < 0 ? Double.NaN : Math.log(x));
+        check("abs(x) + e", x -> Math.abs(x) + Math.E);
+        check("pow(abs(x), 1.5)", x -> Math.pow(Math.abs(x), 1.5));
+    }
+
+    @Test
+    void constraintsLeaveNaNOutsideTheirRange() {
+        check("x^2 {x > 0}", x -> x > 0 ? x * x : Double.NaN);
+        check("x {-1 <= x <= 1}", x -> x >= -1 && x <= 1 ? x : Double.NaN);
+    }
+
+    @Test
+    void theSameTextIsParsedOnce() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse("sin(x) + x^2");
+        assertSame(node, evaluator.parse("sin(x) + x^2"));
+        assertEquals(Math.sin(0.5) + 0.25, evaluator.evaluate("sin(x) + x^2", 0.5), 1e-15);
+    }
+
+    @Test
+    void canonicalTextParsesBackToTheSameTree() {
+        ExprNodeParser parser = new ExprNodeParser();
+        String[] expressions = {"2 + 3*x^2", "-(x - 1)^2", "2^(3^x)", "(2^3)^x", "sin(x)/(1 + x)", "x - (1 - x)",
+                "int(sin(x), 0, x)", "x^2 {x > 0}"};
+        for (String expression : expressions) {
+            ExprNode node = parser.parse(expression);
+            ExprNode again = parser.parse(node.toString());
+            assertEquals(node.toString(), again.toString(), expression);
+            assertEquals(node.textHash, again.textHash, expression);
+            for (double x : XS) {
+                assertEquals(new FunctionEvaluator().evaluate(node, x), new FunctionEvaluator().evaluate(again, x),
+                        0.0, expression + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    void malformedTextEvaluatesToNaN() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        assertFalse(evaluator.parse("2 + * x").isValid());
+        assertTrue(Double.isNaN(evaluator.evaluate("2 + * x", 1.0)));
+        assertTrue(Double.isNaN(evaluator.evaluate("sin(x", 1.0)));
+    }
+}
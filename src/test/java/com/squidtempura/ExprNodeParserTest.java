@@ -0,0 +1,37 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExprNodeParserTest {
+    private final ExprNodeParser parser = new ExprNodeParser();
+
+    @Test
+    void singleLettersAndSubscriptsAreParameters() {
+        assertTrue(parser.parse("a*sin(b*x)").isValid());
+        assertTrue(parser.parse("k1*x + k_2").isValid());
+        assertNull(parser.findUnknownName("k_1*x", "x"));
+    }
+
+    @Test
+    void otherUnknownNamesAreRejected() {
+        assertFalse(parser.parse("sinx").isValid());
+        assertFalse(parser.parse("2*foo + x").isValid());
+        assertFalse(parser.parse("k_").isValid());
+        assertEquals("sinx", parser.findUnknownName("sinx + 1", "x"));
+        assertNull(parser.findUnknownName("x +", "x"));
+    }
+
+    @Test
+    void unknownNamesAreReportedForDefinitionsToo() {
+        ExpressionParser expressions = new ExpressionParser();
+        assertEquals("cosx", expressions.findUnknownName("y = cosx"));
+        assertEquals("foo", expressions.findUnknownName("f(n) = n + foo"));
+        assertNull(expressions.findUnknownName("f(n) = n + a"));
+        assertNull(expressions.findUnknownName("x = 2"));
+    }
+}
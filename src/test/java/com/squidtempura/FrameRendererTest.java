@@ -0,0 +1,169 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The renderer as the panel drives it: requests made on the event thread, frames handed back on it
+class FrameRendererTest {
+    private static final double SCALE = 50.0;
+    // a double integral per column, seconds where one expression may spend 100 ms on a frame
+    private static final String SLOW = "int2(sin(9*x*y)^2, x, 0, x, y, 0, x)";
+
+    private final FunctionEvaluator evaluator = new FunctionEvaluator();
+    private final ExpressionParser parser = new ExpressionParser();
+    private final BlockingQueue<FrameModel> frames = new LinkedBlockingQueue<>();
+    private final List<Boolean> onEventThread = new ArrayList<>();
+    private final FrameRenderer renderer = new FrameRenderer(frame -> {
+        onEventThread.add(SwingUtilities.isEventDispatchThread());
+        frames.add(frame);
+    });
+
+    private FrameRequest request(double offsetX, double offsetY, long version, String... expressions) {
+        List<ParsedExpression> parsed = new ArrayList<>();
+        for (String expression : expressions) {
+            parsed.add(parser.parse(expression));
+        }
+        return new FrameRequest(400, 300, SCALE, offsetX, offsetY, Arrays.asList(expressions), parsed,
+                evaluator.snapshot(), version);
+    }
+
+    private void send(FrameRequest... requests) throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            for (FrameRequest request : requests) renderer.request(request);
+        });
+    }
+
+    private FrameModel render(FrameRequest request) throws Exception {
+        send(request);
+        FrameModel frame = frames.poll(30, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        return frame;
+    }
+
+    private static void assertNear(List<Point2D> points, double x, double y) {
+        for (Point2D p : points) {
+            if (Math.abs(p.getX() - x) < 1e-6 && Math.abs(p.getY() - y) < 1e-6) return;
+        }
+        throw new AssertionError("no point near (" + x + ", " + y + ") in " + points);
+    }
+
+    private static void assertSameCurve(Path2D expected, Path2D actual) {
+        PathIterator e = expected.getPathIterator(null);
+        PathIterator a = actual.getPathIterator(null);
+        double[] ec = new double[6];
+        double[] ac = new double[6];
+        for (int i = 0; !e.isDone(); i++, e.next(), a.next()) {
+            assertTrue(!a.isDone(), "shorter at vertex " + i);
+            assertEquals(e.currentSegment(ec), a.currentSegment(ac), "segment " + i);
+            assertEquals(ec[0], ac[0], 1e-12, "x at vertex " + i);
+            // a column is sampled at left + i * step, which may be an ulp off k * step for another
+            // left; sqrt(x + 2) next to -2 turns that into 1e-8
+            assertEquals(ec[1], ac[1], 1e-7, "y at vertex " + i);
+        }
+        assertTrue(a.isDone());
+    }
+
+    @Test
+    void aFrameArrivesOnTheEventThread() throws Exception {
+        FrameRequest request = request(0, 0, 0, "x^2 - 1", "x");
+        FrameModel frame = render(request);
+        assertSame(request, frame.request);
+        assertEquals(List.of(true), onEventThread);
+        assertTrue(frame.degraded.isEmpty());
+        // the curve runs through the columns of the view, x = k / 50 from -4 to 4
+        assertEquals(-4.0, frame.curves.get("x^2 - 1").getBounds2D().getMinX(), 1e-12);
+        assertEquals(4.0, frame.curves.get("x^2 - 1").getBounds2D().getMaxX(), 1e-12);
+        assertEquals(15.0, frame.curves.get("x^2 - 1").getBounds2D().getMaxY(), 1e-12);
+        // the roots, the y intercepts and where the two cross
+        List<Point2D> points = frame.intersections;
+        assertNear(points, -1, 0);
+        assertNear(points, 1, 0);
+        assertNear(points, 0, -1);
+        assertNear(points, 0, 0);
+        assertNear(points, (1 - Math.sqrt(5)) / 2, (1 - Math.sqrt(5)) / 2);
+        assertNear(points, (1 + Math.sqrt(5)) / 2, (1 + Math.sqrt(5)) / 2);
+        assertEquals(6, points.size());
+    }
+
+    @Test
+    void aNewRequestCancelsTheOneInProgress() throws Exception {
+        FrameRequest slow = request(0, 0, 0, SLOW);
+        FrameRequest quick = request(0, 0, 0, "x");
+        send(slow, quick);
+        FrameModel frame = frames.poll(30, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertSame(quick, frame.request);
+        // the cancelled frame is never handed over, not even late
+        assertNull(frames.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void anExpressionOutOfTimeIsDrawnDegraded() throws Exception {
+        FrameModel frame = render(request(0, 0, 0, SLOW, "x^2"));
+        assertEquals(Set.of(SLOW), frame.degraded);
+        assertNotNull(frame.curves.get("x^2"));
+    }
+
+    @Test
+    void aMatchingRequestIsNotRenderedAgain() throws Exception {
+        render(request(0, 0, 0, "sin(x)", "x^2"));
+        // what a mouse move asks for: the same view, built anew
+        send(request(0, 0, 0, "sin(x)", "x^2"));
+        assertNull(frames.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void aVerticalPanKeepsTheCurves() throws Exception {
+        FrameModel first = render(request(0, 0, 0, "sin(x)", "x^2", "int(x, 0, 1)"));
+        FrameModel panned = render(request(0, 1.5, 0, "sin(x)", "x^2", "int(x, 0, 1)"));
+        assertSame(first.curves.get("sin(x)"), panned.curves.get("sin(x)"));
+        assertSame(first.curves.get("x^2"), panned.curves.get("x^2"));
+        assertEquals(first.intersections, panned.intersections);
+    }
+
+    @Test
+    void aParameterChangeResamplesOnlyWhatReadsIt() throws Exception {
+        evaluator.setParameter("a", 1.0);
+        FrameModel first = render(request(0, 0, 0, "a*x", "sin(x)"));
+        evaluator.setParameter("a", 2.0);
+        FrameModel changed = render(request(0, 0, 1, "a*x", "sin(x)"));
+        assertSame(first.curves.get("sin(x)"), changed.curves.get("sin(x)"));
+        assertEquals(8.0, changed.curves.get("a*x").getBounds2D().getMaxY(), 1e-12);
+    }
+
+    // A pan samples only the columns it exposes and searches only their segments for crossings;
+    // the frame has to be the one a renderer that never saw the view before would give
+    @Test
+    void aHorizontalPanGivesAFullRender() throws Exception {
+        String[] expressions = {"sin(3*x)", "x^2/4 - 1", "tan(x)", "sqrt(x + 2)"};
+        render(request(0, 0, 0, expressions));
+        // by whole columns both ways, by a fraction of one, then clear of what was held
+        double[] offsets = {0.4, -0.6, -0.61, 3.0, -9.0};
+        for (double offsetX : offsets) {
+            FrameModel panned = render(request(offsetX, 0, 0, expressions));
+            FrameModel fresh = new FrameRendererTest().render(request(offsetX, 0, 0, expressions));
+            for (String expression : expressions) {
+                assertSameCurve(fresh.curves.get(expression), panned.curves.get(expression));
+            }
+            assertEquals(fresh.intersections.size(), panned.intersections.size(), "at " + offsetX);
+            for (Point2D p : fresh.intersections) assertNear(panned.intersections, p.getX(), p.getY());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FunctionGraphTest {
+    private static FunctionEvaluator evaluator(String... nameBodyPairs) {
+        Map<String, String> defs = new LinkedHashMap<>();
+        for (int i = 0; i < nameBodyPairs.length; i += 2) defs.put(nameBodyPairs[i], nameBodyPairs[i + 1]);
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(defs);
+        return evaluator;
+    }
+
+    @Test
+    void callsAreLinkedThroughTheirDefinitions() {
+        FunctionEvaluator evaluator = evaluator("f", "x^2 + 1", "g", "f(x)*f(x - 1)", "h", "g(2*x) + f'(x)");
+        assertTrue(evaluator.getDefinitionErrors().isEmpty());
+        assertEquals(10.0 * 5.0, evaluator.evaluate("g(x)", 3.0), 1e-12);
+        assertEquals(37.0 * 26.0 + 6.0, evaluator.evaluate("h(x)", 3.0), 1e-8);
+        assertEquals(26.0, evaluator.evaluate("f(f(x))", 2.0), 1e-12);
+    }
+
+    @Test
+    void aCycleIsReportedForEveryMemberAndItsCallers() {
+        FunctionEvaluator evaluator = evaluator("f", "g(x) + 1", "g", "2*f(x)", "h", "f(x) - x", "k", "x^2");
+        Map<String, String> errors = evaluator.getDefinitionErrors();
+        assertEquals("Circular definition: f -> g -> f", errors.get("f"));
+        assertEquals("Circular definition: f -> g -> f", errors.get("g"));
+        assertEquals("h depends on f: Circular definition: f -> g -> f", errors.get("h"));
+        assertNull(errors.get("k"));
+        assertEquals("Circular definition: f -> g -> f", evaluator.findError(evaluator.parse("k(x) + g(x)")));
+        assertTrue(Double.isNaN(evaluator.evaluate("h(x)", 1.0)));
+        assertEquals(4.0, evaluator.evaluate("k(x)", 2.0));
+    }
+
+    @Test
+    void selfCallsNeedABaseCaseAndASmallerArgument() {
+        assertEquals("f calls itself but has no base case such as f(0)=1",
+                evaluator("f", "f(x - 1) + 1").getDefinitionErrors().get("f"));
+        assertEquals("Unknown function 'q'", evaluator("f", "x").findError(evaluator("f", "x").parse("q(x)")));
+    }
+
+    // Long call chains used to run into a depth guard; linked callee-first they are just a tree
+    @Test
+    void longChainsLinkWithoutADepthLimit() {
+        int length = 300;
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put(name(0), "x");
+        for (int i = 1; i < length; i++) defs.put(name(i), name(i - 1) + "(x) + 1");
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(defs);
+        assertTrue(evaluator.getDefinitionErrors().isEmpty());
+        assertEquals(length - 1 + 0.5, evaluator.evaluate(name(length - 1) + "(x)", 0.5), 1e-9);
+    }
+
+    // fa, fb, ..., fza, ...: names with no digits, which would read as a subscripted parameter
+    private static String name(int i) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return "f" + sb;
+    }
+}
@@ -0,0 +1,91 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GaussKronrodTest {
+    private static final double SI_1 = 0.946083070367183;
+
+    private static ChebyshevProxy.Sampler sampler(DoubleUnaryOperator f) {
+        return (xs, out) -> {
+            for (int i = 0; i < xs.length; i++) out[i] = f.applyAsDouble(xs[i]);
+        };
+    }
+
+    private static QuadratureResult integrate(DoubleUnaryOperator f, double a, double b) {
+        return GaussKronrod.integrate(sampler(f), a, b, 1e-12, 1e-12);
+    }
+
+    // the 7-point Gauss rule is exact up to degree 13, so both rules agree and nothing is split
+    @Test
+    void polynomialsTakeOneRule() {
+        QuadratureResult r = integrate(x -> Math.pow(x, 13) - 3 * x * x, -1.0, 2.0);
+        assertEquals((Math.pow(2, 14) - 1) / 14 - 9, r.value, 1e-10);
+        assertEquals(15, r.evaluations);
+    }
+
+    // The error estimate has to cover the actual error, and the result meet the tolerance
+    @Test
+    void closedFormsWithinTheEstimate() {
+        Object[][] cases = {
+                {(DoubleUnaryOperator) Math::sin, 0.0, Math.PI, 2.0},
+                {(DoubleUnaryOperator) Math::sqrt, 0.0, 1.0, 2.0 / 3.0},
+                {(DoubleUnaryOperator) x -> Math.exp(-x * x), -3.0, 3.0, 1.7724146965190428},
+                {(DoubleUnaryOperator) x -> Math.pow(Math.sin(40 * x), 2), 0.0, 50.0, 25 - Math.sin(4000) / 160},
+                {(DoubleUnaryOperator) x -> 1 / (1e-4 + x * x), -1.0, 1.0, 200 * Math.atan(100)},
+                {(DoubleUnaryOperator) x -> Math.abs(x - 0.3), -1.0, 1.0, (1.3 * 1.3 + 0.7 * 0.7) / 2},
+        };
+        for (Object[] c : cases) {
+            DoubleUnaryOperator f = (DoubleUnaryOperator) c[0];
+            double a = (double) c[1];
+            double b = (double) c[2];
+            double exact = (double) c[3];
+            QuadratureResult r = integrate(f, a, b);
+            double actual = Math.abs(r.value - exact);
+            assertTrue(actual <= Math.max(r.error, 1e-15), "[" + a + ", " + b + "]: off by " + actual + ", estimate " + r.error);
+            assertTrue(actual <= 1e-10 * Math.max(1, Math.abs(exact)), "[" + a + ", " + b + "]: off by " + actual);
+            assertFalse(r.incomplete);
+        }
+    }
+
+    // sin(x)/x is NaN at the center node of [-1, 1]; that segment is split until it is left out
+    @Test
+    void anUndefinedPointDoesNotSpoilTheIntegral() {
+        QuadratureResult r = integrate(x -> Math.sin(x) / x, -1.0, 1.0);
+        assertEquals(2 * SI_1, r.value, 1e-10);
+        assertTrue(Double.isNaN(integrate(x -> x < 0.5 ? 1.0 : Double.NaN, 0.0, 1.0).value));
+    }
+
+    @Test
+    void boundsInEitherOrder() {
+        assertEquals(-2.0, integrate(Math::sin, Math.PI, 0.0).value, 1e-12);
+        assertEquals(0.0, integrate(Math::sin, 1.0, 1.0).value);
+        assertTrue(Double.isNaN(integrate(Math::sin, 0.0, Double.POSITIVE_INFINITY).value));
+    }
+
+    // Cut into 16 pieces first, so not the same sum as integrate, but the same one on any pool
+    @Test
+    void parallelResultsDoNotDependOnThePool() throws Exception {
+        ChebyshevProxy.Sampler f = sampler(x -> Math.exp(Math.sin(5 * x)) / (1 + x * x));
+        double serial = GaussKronrod.integrate(f, -4.0, 6.0, 1e-12, 1e-12).value;
+        double reference = Double.NaN;
+        for (int threads : new int[]{1, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                double value = pool.submit(() -> GaussKronrod.integrateParallel(f, -4.0, 6.0, 1e-12, 1e-12, 16).value).get();
+                if (threads == 1) reference = value;
+                assertEquals(reference, value, 0.0, threads + " threads");
+                assertEquals(serial, value, 1e-10);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        assertEquals(serial, GaussKronrod.integrateParallel(f, -4.0, 6.0, 1e-12, 1e-12, 1).value, 1e-10);
+    }
+}
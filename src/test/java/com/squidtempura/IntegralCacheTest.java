@@ -0,0 +1,124 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IntegralCacheTest {
+    private static QuadratureResult result(double value) {
+        return new QuadratureResult(value, 0.0, 0);
+    }
+
+    @Test
+    void aTextHashCollisionIsAMiss() {
+        IntegralCache cache = new IntegralCache(16, IntegralCache.DEFAULT_MAX_BYTES);
+        cache.put(42L, 1L, 0.0, 3.0, result(9.0), 0L);
+        assertNull(cache.get(42L, 2L, 0.0, 3.0));
+        cache.put(42L, 2L, 0.0, 3.0, result(4.5), 0L);
+        assertEquals(9.0, cache.get(42L, 1L, 0.0, 3.0).value);
+        assertEquals(4.5, cache.get(42L, 2L, 0.0, 3.0).value);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void theLeastRecentlyUsedGoesFirst() {
+        IntegralCache cache = new IntegralCache(3, IntegralCache.DEFAULT_MAX_BYTES);
+        for (long key = 1; key <= 3; key++) cache.put(key, key, 0.0, 1.0, result(key), 0L);
+        // 1 is used again, so 2 is now the oldest
+        assertNotNull(cache.get(1L, 1L, 0.0, 1.0));
+        cache.put(4L, 4L, 0.0, 1.0, result(4), 0L);
+        assertNull(cache.get(2L, 2L, 0.0, 1.0));
+        cache.put(5L, 5L, 0.0, 1.0, result(5), 0L);
+        assertNull(cache.get(3L, 3L, 0.0, 1.0));
+        assertNotNull(cache.get(1L, 1L, 0.0, 1.0));
+        assertEquals(2, cache.evictions());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void theByteBudgetLimitsTheEntries() {
+        IntegralCache cache = new IntegralCache(1000, 10 * IntegralCache.BYTES_PER_ENTRY);
+        assertEquals(10, cache.capacity());
+        for (long key = 0; key < 25; key++) cache.put(key, key, -1.0, 1.0, result(key), 0L);
+        assertEquals(10, cache.size());
+        assertEquals(15, cache.evictions());
+        for (long key = 15; key < 25; key++) assertEquals(key, cache.get(key, key, -1.0, 1.0).value);
+    }
+
+    @Test
+    void countersAndSignedZeroBounds() {
+        IntegralCache cache = new IntegralCache(8, IntegralCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.get(7L, 7L, 0.0, 2.0));
+        cache.put(7L, 7L, -0.0, 2.0, result(1.0), 0L);
+        assertNotNull(cache.get(7L, 7L, 0.0, 2.0));
+        assertNotNull(cache.get(7L, 7L, -0.0, 2.0));
+        assertNull(cache.get(7L, 7L, 0.0, 2.5));
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(0, cache.evictions());
+    }
+
+    // Random puts, gets and invalidations against a LinkedHashMap in access order: every entry
+    // left behind by a removal or eviction must still be found, and the same ones evicted
+    @Test
+    void agreesWithAReferenceLru() {
+        int capacity = 64;
+        IntegralCache cache = new IntegralCache(capacity, IntegralCache.DEFAULT_MAX_BYTES);
+        Map<List<Long>, double[]> reference = new LinkedHashMap<>(16, 0.75f, true);
+        Random random = new Random(20261017L);
+        long evictions = 0;
+        for (int op = 0; op < 50_000; op++) {
+            // few distinct integrands and bounds, so probe chains grow long and keep colliding
+            long integrand = random.nextInt(6);
+            long check = integrand * 31;
+            double a = random.nextInt(4);
+            double b = a + 1 + random.nextInt(12);
+            List<Long> key = List.of(integrand, Double.doubleToLongBits(a), Double.doubleToLongBits(b));
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                double value = random.nextDouble();
+                long mask = 1L << random.nextInt(3);
+                if (!reference.containsKey(key) && reference.size() == capacity) {
+                    Iterator<List<Long>> oldest = reference.keySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    evictions++;
+                }
+                reference.put(key, new double[]{value, mask});
+                cache.put(integrand, check, a, b, result(value), mask);
+            } else if (kind < 9) {
+                double[] expected = reference.get(key);
+                QuadratureResult actual = cache.get(integrand, check, a, b);
+                if (expected == null) {
+                    assertNull(actual, "op " + op);
+                } else {
+                    assertNotNull(actual, "op " + op);
+                    assertEquals(expected[0], actual.value, "op " + op);
+                }
+            } else {
+                long mask = 1L << random.nextInt(3);
+                reference.values().removeIf(v -> ((long) v[1] & mask) != 0);
+                cache.invalidate(mask);
+            }
+            assertEquals(reference.size(), cache.size(), "op " + op);
+        }
+        assertEquals(evictions, cache.evictions());
+        // everything still held is found, whatever was taken out in between
+        for (Map.Entry<List<Long>, double[]> e : new ArrayList<>(reference.entrySet())) {
+            List<Long> key = e.getKey();
+            QuadratureResult actual = cache.get(key.get(0), key.get(0) * 31,
+                    Double.longBitsToDouble(key.get(1)), Double.longBitsToDouble(key.get(2)));
+            assertNotNull(actual);
+            assertEquals(e.getValue()[0], actual.value);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntegralShadingTest {
+    private static final double SCALE = 50.0;
+
+    private final FunctionEvaluator evaluator = new FunctionEvaluator();
+
+    private IntegralShading shading(String expression) {
+        IntegralSpec spec = new IntegralParser().extractIntegrals(evaluator.parse(expression)).get(0);
+        return new IntegralShading(spec, evaluator.snapshot(), SCALE, budget());
+    }
+
+    private static EvaluationBudget budget() {
+        return EvaluationBudget.ofMillis(60_000);
+    }
+
+    // every vertex of the path, as x, y pairs
+    private static List<Double> vertices(Path2D path) {
+        List<Double> out = new ArrayList<>();
+        double[] coords = new double[6];
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            if (it.currentSegment(coords) == PathIterator.SEG_CLOSE) continue;
+            out.add(coords[0]);
+            out.add(coords[1]);
+        }
+        return out;
+    }
+
+    private static void assertSameShape(Path2D expected, Path2D actual) {
+        List<Double> e = vertices(expected);
+        List<Double> a = vertices(actual);
+        assertEquals(e.size(), a.size());
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.get(i), a.get(i), 1e-9, "vertex " + i / 2);
+        }
+    }
+
+    private static void assertBounds(Rectangle2D bounds, double x0, double y0, double x1, double y1) {
+        assertEquals(x0, bounds.getMinX(), 1e-9);
+        assertEquals(y0, bounds.getMinY(), 1e-9);
+        assertEquals(x1, bounds.getMaxX(), 1e-9);
+        assertEquals(y1, bounds.getMaxY(), 1e-9);
+    }
+
+    @Test
+    void theAreaLiesBetweenTheCurveAndTheAxis() {
+        Path2D area = shading("int(x^2, 0, 3)").area(-1, 4, -1, 10, budget());
+        assertBounds(area.getBounds2D(), 0, 0, 3, 9);
+        assertTrue(area.contains(2.0, 3.9));
+        assertTrue(!area.contains(2.0, 4.1));
+        assertTrue(!area.contains(3.1, 1.0));
+    }
+
+    @Test
+    void doubleIntegralsShadeTheirRegion() {
+        // dy dx: the outer x runs along the x axis, y from 0 up to x
+        Path2D area = shading("int2(1, x, 0, 1, y, 0, x)").area(-1, 2, -1, 2, budget());
+        assertBounds(area.getBounds2D(), 0, 0, 1, 1);
+        assertTrue(area.contains(0.8, 0.2));
+        assertTrue(!area.contains(0.2, 0.8));
+    }
+
+    @Test
+    void anAsymptoteIsClippedToTheBand() {
+        // 1/sqrt(x) is 7.07 at the first column right of 0; the path stops two view heights
+        // above the top instead
+        Path2D area = shading("int(1/sqrt(x), 0, 1)").area(-1, 2, -1, 1, budget());
+        assertEquals(1 + 2 * 2, area.getBounds2D().getMaxY(), 1e-9);
+    }
+
+    @Test
+    void nothingInViewIsNull() {
+        IntegralShading shading = shading("int(x^2, 0, 3)");
+        assertNull(shading.area(5, 8, -1, 10, budget()));
+        assertNull(shading.area(-8, -5, -1, 10, budget()));
+        assertNull(shading("int(x, 0, sqrt(-1))").area(-1, 4, -1, 10, budget()));
+    }
+
+    @Test
+    void aRepaintReusesThePath() {
+        IntegralShading shading = shading("int(sin(x) + 2, -10, 10)");
+        Path2D first = shading.area(-2, 2, -1, 4, budget());
+        assertSame(first, shading.area(-2, 2, -1, 4, budget()));
+        // a vertical pan within the band leaves the columns and the clipping as they were
+        assertSame(first, shading.area(-2, 2, -0.5, 4.5, budget()));
+        assertNotSame(first, shading.area(-1, 3, -1, 4, budget()));
+    }
+
+    @Test
+    void aPanGivesWhatAFreshShadingGives() {
+        String expression = "int(sin(3*x) * exp(-x^2/20) + 1, -10, 10)";
+        IntegralShading kept = shading(expression);
+        kept.area(-3, 3, -2, 2, budget());
+        // by whole and by fractional columns, both ways, then into a view half covered already
+        double[][] views = {{-2.5, 3.5}, {-2.51, 3.49}, {-4, 2}, {1, 7}, {6, 12}, {-12, -6}};
+        for (double[] view : views) {
+            Path2D panned = kept.area(view[0], view[1], -2, 2, budget());
+            Path2D fresh = shading(expression).area(view[0], view[1], -2, 2, budget());
+            assertSameShape(fresh, panned);
+        }
+        assertTrue(kept.isComplete());
+    }
+}
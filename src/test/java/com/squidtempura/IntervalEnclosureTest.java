@@ -0,0 +1,54 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// evaluateInterval(node, x0, x1) has to hold evaluate(node, x) for every x in [x0, x1] where the
+// latter is defined, checked over random ranges, narrow and wide, with random points in them
+class IntervalEnclosureTest {
+    private static final int RANGES = 400;
+    private static final int POINTS = 24;
+
+    private static final String[] EXPRESSIONS = {
+            "sin(3*x - 1)", "cos(x^2)", "tan(x)", "cot(2*x)",
+            "asin(x/3)", "acos(x - 1)", "atan(5*x)",
+            "sinh(x)", "cosh(x - 0.5)", "tanh(2*x)",
+            "abs(x - 1)", "log(x)", "log10(x + 2)", "log2(abs(x))", "log1p(x)",
+            "ceil(2*x)", "floor(x - 0.5)", "sqrt(x)", "cbrt(x - 1)",
+            "exp(x)", "expm1(x/2)", "signum(x - 0.25)",
+            "pow(x, 3)", "pow(x, -2)", "pow(x, 0.5)", "pow(x, x)", "pow(abs(x), x - 1)", "pow(2, x)",
+            "x^2.5", "x^-3", "(x + 1)^(1/3)",
+            "1/x", "1/(x - 0.3)", "(x^2 + 1)/(x + 1)", "sin(x)/(x - 1)",
+            "x % 0.7", "(3*x) % 2", "x % (x + 2)", "-x % 1.5", "x % x",
+            "sin(x)^2 + cos(x)^2", "exp(-x^2) * cos(4*x)", "sqrt(1 - x^2) + abs(log(abs(x)))",
+    };
+
+    @Test
+    void intervalsEncloseEverySample() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        Random random = new Random(20261017L);
+        for (String expression : EXPRESSIONS) {
+            ExprNode node = evaluator.parse(expression);
+            assertTrue(node.isValid(), expression);
+            for (int r = 0; r < RANGES; r++) {
+                double x0 = -5 + 10 * random.nextDouble();
+                double width = Math.pow(10, -6 + 7 * random.nextDouble());
+                // some ranges start at a pole or at the edge of a domain exactly
+                if (r % 10 == 0) x0 = r % 20 == 0 ? 0.0 : 0.3;
+                double x1 = x0 + width;
+                Interval range = snapshot.evaluateInterval(node, x0, x1);
+                for (int i = 0; i <= POINTS + 1; i++) {
+                    double x = i == 0 ? x0 : i == 1 ? x1 : x0 + width * random.nextDouble();
+                    double v = snapshot.evaluate(node, x);
+                    if (Double.isNaN(v)) continue;
+                    assertTrue(range.contains(v), expression + " over [" + x0 + ", " + x1 + "] gave " + range
+                            + " but " + v + " at " + x);
+                }
+            }
+        }
+    }
+}
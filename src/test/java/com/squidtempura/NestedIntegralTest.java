@@ -0,0 +1,45 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NestedIntegralTest {
+    @Test
+    void iteratedIntegralsMatchClosedForms() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        assertEquals(1.0 / 6.0, evaluator.evaluate("int(int(x, 0, x), 0, 1)", 0.0), 1e-10);
+        assertEquals(2.0, evaluator.evaluate("int(int(cos(x), 0, x), 0, pi)", 0.0), 1e-10);
+        assertEquals(4.0 / 3.0, evaluator.evaluate("int(int(int(1, 0, x), 0, x), 0, 2)", 0.0), 1e-9);
+        // the inner integral is x^2, and x^2 exp(-x) over [0, inf) is 2
+        assertEquals(2.0, evaluator.evaluate("int(int(2*x, 0, x)*exp(-x), 0, inf)", 0.0), 1e-8);
+    }
+
+    // An inner integral over fixed bounds is one number, worked out once and cached; those that
+    // move with the outer variable are one per node and are not kept
+    @Test
+    void onlyFixedInnerIntegralsAreCached() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        assertEquals(18.0, evaluator.evaluate("int(int(x^2, 0, 3)*x, 0, 2)", 0.0), 1e-10);
+        assertEquals(1.0 / 6.0, evaluator.evaluate("int(int(x, 0, x), 0, 1)", 0.0), 1e-10);
+        assertTrue(evaluator.getIntegralCache().size() <= 4, evaluator.getIntegralCache().toString());
+        long misses = evaluator.getIntegralCache().misses();
+        assertEquals(18.0, evaluator.evaluate("int(int(x^2, 0, 3)*x, 0, 2)", 0.0), 1e-10);
+        assertEquals(misses, evaluator.getIntegralCache().misses());
+    }
+
+    @Test
+    void nestedCurvesAsColumns() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse("int(int(x, 0, x), 0, x)");
+        double[] xs = new double[41];
+        double[] out = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) xs[i] = -2 + 0.1 * i;
+        evaluator.evaluate(node, xs, out);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(Math.pow(xs[i], 3) / 6, out[i], 1e-8, "at " + xs[i]);
+            assertEquals(out[i], evaluator.evaluate(node, xs[i]), 1e-8, "point at " + xs[i]);
+        }
+    }
+}
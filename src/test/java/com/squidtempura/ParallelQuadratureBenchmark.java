@@ -0,0 +1,61 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// How an integral over a costly integrand scales with the number of threads, taken the way the
+// panel takes it: parsed, linked and integrated by an EvaluatorSnapshot, whose integrand here
+// holds an integral of its own per sample and so goes through GaussKronrod.integrateParallel.
+// Not part of the normal test run, as the timings only mean something on an otherwise idle
+// machine: gradle benchmark
+@Tag("benchmark")
+class ParallelQuadratureBenchmark {
+    private static final int RUNS = 5;
+    // runs before the first timing; the tiers and the JIT take about twenty to settle
+    private static final int WARMUP = 30;
+    private static final String EXPRESSION = "int(int(sin(3*x)^2*exp(-x/9)/(1+x^2), 0, x) * cos(x), 0, 40)";
+
+    // a fresh evaluator each time, so no run is answered from the cache of the one before
+    private static double integrate() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse(EXPRESSION);
+        return evaluator.snapshot().integrate(node, 0.0).value;
+    }
+
+    @Test
+    void speedupAgainstThreadCount() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = Double.NaN;
+        double reference = Double.NaN;
+        System.out.println(EXPRESSION + " on " + cores + (cores == 1 ? " core" : " cores"));
+        // compiled before anything is timed, so one thread is not measured against the interpreter
+        for (int run = 0; run < WARMUP; run++) integrate();
+        System.out.println("threads      ms  speedup");
+        for (int threads = 1; threads <= Math.max(cores, 2); threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long best = Long.MAX_VALUE;
+                double value = Double.NaN;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    value = pool.submit(ParallelQuadratureBenchmark::integrate).get();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double ms = best / 1e6;
+                if (threads == 1) {
+                    baseline = ms;
+                    reference = value;
+                }
+                // which segments get split never depends on the threads, so neither does the sum
+                assertEquals(reference, value, 0.0, "result with " + threads + " threads");
+                System.out.printf("%7d %7.1f %8.2f%n", threads, ms, baseline / ms);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParametersTest {
+    @Test
+    void stampChangesWithTheSlotsItCovers() {
+        Parameters parameters = new Parameters();
+        int a = parameters.slot("a");
+        int b = parameters.slot("b");
+        long mask = 1L << a;
+        long stamp = parameters.stamp(mask);
+        parameters.set(b, 2.0);
+        assertTrue(parameters.unchanged(mask, stamp));
+        parameters.set(a, 2.0);
+        assertFalse(parameters.unchanged(mask, stamp));
+    }
+
+    @Test
+    void cachedIntegralsFollowTheParameter() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse("int(a*x, 0, 2)");
+        assertEquals(2.0, evaluator.snapshot().evaluate(node, 0.0), 1e-9);
+        evaluator.setParameter("a", 3.0);
+        assertEquals(6.0, evaluator.snapshot().evaluate(node, 0.0), 1e-9);
+    }
+
+    @Test
+    void compiledCodeReadsTheLiveValue() {
+        Parameters parameters = new Parameters();
+        ExprNode node = parameters.bind(new ExprNodeParser().parse("a*x + b"));
+        DoubleUnaryOperator compiled = new BytecodeCompiler().compile(node, n -> null, parameters.values());
+        assertNotNull(compiled);
+        assertEquals(3.0, compiled.applyAsDouble(2.0));
+        parameters.set(parameters.slot("a"), -0.5);
+        parameters.set(parameters.slot("b"), 4.0);
+        assertEquals(3.0, compiled.applyAsDouble(2.0));
+        assertEquals(2.5, compiled.applyAsDouble(3.0));
+    }
+
+    @Test
+    void onlyExpressionsReadingAParameterMove() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", "a*x");
+        evaluator.setFunctions(defs);
+        ExprNode direct = evaluator.parse("b + x");
+        ExprNode called = evaluator.parse("f(x)^2");
+        ExprNode plain = evaluator.parse("sin(x)");
+        assertTrue(evaluator.dependsOn(called, "a"));
+        assertFalse(evaluator.dependsOn(direct, "a"));
+        assertFalse(evaluator.dependsOn(plain, "b"));
+
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        long directStamp = snapshot.parameterStamp(direct);
+        long calledStamp = snapshot.parameterStamp(called);
+        long plainStamp = snapshot.parameterStamp(plain);
+        evaluator.setParameter("a", 3.0);
+        assertEquals(directStamp, snapshot.parameterStamp(direct));
+        assertNotEquals(calledStamp, snapshot.parameterStamp(called));
+        assertEquals(plainStamp, snapshot.parameterStamp(plain));
+    }
+}
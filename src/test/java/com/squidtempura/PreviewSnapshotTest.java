@@ -0,0 +1,28 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PreviewSnapshotTest {
+    @Test
+    void previewsAreMadeOncePerAccuracy() {
+        EvaluatorSnapshot snapshot = new FunctionEvaluator().snapshot();
+        EvaluatorSnapshot preview = snapshot.withTolerance(1e-6, 1e-3);
+        assertSame(preview, snapshot.withTolerance(1e-6, 1e-3));
+        assertNotSame(preview, snapshot.withTolerance(1e-9, 1e-6));
+        assertEquals(1e-3, preview.getRelativeTolerance());
+    }
+
+    @Test
+    void previewsFollowTheParameters() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse("int(a*x^2, 0, 3)");
+        EvaluatorSnapshot preview = evaluator.snapshot().withTolerance(1e-6, 1e-3);
+        assertEquals(9.0, preview.integrate(node, 0.0).value, 1e-2);
+        evaluator.setParameter("a", 2.0);
+        assertEquals(18.0, evaluator.snapshot().withTolerance(1e-6, 1e-3).integrate(node, 0.0).value, 1e-2);
+    }
+}
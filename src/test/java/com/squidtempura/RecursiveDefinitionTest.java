@@ -0,0 +1,78 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecursiveDefinitionTest {
+    private static FunctionEvaluator evaluator(FunctionDefinition... defs) {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setDefinitions(List.of(defs));
+        return evaluator;
+    }
+
+    private static FunctionDefinition rule(String name, String body) {
+        return new FunctionDefinition(name, "n", body, Double.NaN);
+    }
+
+    private static FunctionDefinition base(String name, double at, String value) {
+        return new FunctionDefinition(name, "n", value, at);
+    }
+
+    @Test
+    void fibonacciIsMemoized() {
+        FunctionEvaluator evaluator = evaluator(rule("a", "a(n-1) + a(n-2)"), base("a", 0, "1"), base("a", 1, "1"));
+        assertTrue(evaluator.getDefinitionErrors().isEmpty());
+        // without the memo this would take 2^90 calls
+        assertEquals(4660046610375530309.0, evaluator.evaluate("a(x)", 90.0), 1e3);
+        assertEquals(1346269.0, evaluator.evaluate("a(x)", 30.0));
+        assertEquals(1.0, evaluator.evaluate("a(x)", 0.0));
+        // below the lowest base case and off the lattice of steps there is nothing to recurse to
+        assertTrue(Double.isNaN(evaluator.evaluate("a(x)", -1.0)));
+        assertTrue(Double.isNaN(evaluator.evaluate("a(x)", 2.5)));
+    }
+
+    @Test
+    void deepArgumentsDoNotOverflowTheStack() {
+        FunctionEvaluator evaluator = evaluator(rule("s", "s(n-1) + 1/n^2"), base("s", 0, "0"));
+        double expected = 0.0;
+        for (int k = 1; k <= 200_000; k++) expected += 1.0 / ((double) k * k);
+        assertEquals(expected, evaluator.evaluate("s(x)", 200_000.0), 1e-12);
+        // further than any memo could be filled in reasonable time
+        assertTrue(Double.isNaN(evaluator.evaluate("s(x)", 1e9)));
+    }
+
+    @Test
+    void stepsOtherThanOneAndSequencesInExpressions() {
+        FunctionEvaluator evaluator = evaluator(rule("h", "h(n-0.5)*2"), base("h", 0, "3"),
+                rule("c", "c(n-2) + c(n-3)"), base("c", 0, "3"), base("c", 1, "0"), base("c", 2, "2"));
+        assertEquals(3.0 * 1024, evaluator.evaluate("h(x)", 5.0));
+        // Perrin numbers, with a step of gcd(2, 3) = 1
+        assertEquals(277.0, evaluator.evaluate("c(x)", 20.0));
+        assertEquals(3.0 * 8 + 68.0, evaluator.evaluate("h(x/10) + c(x)", 15.0), 0.0);
+    }
+
+    @Test
+    void badRecursionIsReported() {
+        FunctionEvaluator noBase = evaluator(rule("a", "a(n-1) + 1"));
+        assertEquals("a calls itself but has no base case such as a(0)=1", noBase.getDefinitionErrors().get("a"));
+        FunctionEvaluator upwards = evaluator(rule("a", "a(n+1) + 1"), base("a", 0, "1"));
+        assertEquals("a must call itself at a smaller argument, such as a(x-1)", upwards.getDefinitionErrors().get("a"));
+        FunctionEvaluator scaled = evaluator(rule("a", "a(n/2) + 1"), base("a", 0, "1"));
+        assertEquals("a must call itself at a smaller argument, such as a(x-1)", scaled.getDefinitionErrors().get("a"));
+        assertNull(evaluator(rule("a", "a(n-1) + 1"), base("a", 0, "1")).getDefinitionErrors().get("a"));
+    }
+
+    // Editing a base case gives a new definition list and with it new values
+    @Test
+    void changedBaseCasesAreNotServedFromTheMemo() {
+        FunctionEvaluator evaluator = evaluator(rule("a", "2*a(n-1)"), base("a", 0, "1"));
+        assertEquals(1024.0, evaluator.evaluate("a(x)", 10.0));
+        evaluator.setDefinitions(List.of(rule("a", "2*a(n-1)"), base("a", 0, "3")));
+        assertEquals(3072.0, evaluator.evaluate("a(x)", 10.0));
+    }
+}
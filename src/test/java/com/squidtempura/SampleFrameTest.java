@@ -0,0 +1,81 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SampleFrameTest {
+    private static final int COUNT = 101;
+
+    private static void assertColumn(EvaluatorSnapshot snapshot, ExprNode node, SampleFrame frame, double[] column) {
+        for (int i = 0; i < COUNT; i++) {
+            double x = frame.left + i * frame.step;
+            assertEquals(snapshot.evaluate(node, x), column[i], 1e-12, node + " at " + x);
+        }
+    }
+
+    @Test
+    void subexpressionsAreComputedOncePerFrame() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        SampleFrame frame = snapshot.frame(-2.0, 0.04, COUNT);
+
+        ExprNode base = evaluator.parse("exp(sin(x))");
+        double[] column = frame.sample(base);
+        assertEquals(2, frame.columnCount());
+        assertColumn(snapshot, base, frame, column);
+
+        // only the new node on top of the shared ones gets a column
+        ExprNode plus = evaluator.parse("exp(sin(x)) + 1");
+        assertColumn(snapshot, plus, frame, frame.sample(plus));
+        assertEquals(3, frame.columnCount());
+        ExprNode twice = evaluator.parse("2*sin(x)");
+        assertColumn(snapshot, twice, frame, frame.sample(twice));
+        assertEquals(4, frame.columnCount());
+
+        // the same text parsed again is the same column
+        assertSame(column, frame.sample(new ExpressionParser().parse("exp(sin(x))").node));
+        assertEquals(4, frame.columnCount());
+    }
+
+    @Test
+    void definitionsShareTheirBodies() {
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", "sqrt(1 + x^2)");
+        defs.put("g", "f(x) + 3");
+        defs.put("h", "f(x)*g(x)");
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(defs);
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        SampleFrame frame = snapshot.frame(0.0, 0.05, COUNT);
+        ExprNode f = evaluator.parse("f(x)");
+        ExprNode g = evaluator.parse("g(x)");
+        ExprNode h = evaluator.parse("h(x)");
+        assertColumn(snapshot, f, frame, frame.sample(f));
+        int afterF = frame.columnCount();
+        assertColumn(snapshot, g, frame, frame.sample(g));
+        assertEquals(afterF + 1, frame.columnCount());
+        assertColumn(snapshot, h, frame, frame.sample(h));
+        assertEquals(afterF + 2, frame.columnCount());
+    }
+
+    @Test
+    void aColumnCutShortIsNotShared() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        SampleFrame frame = snapshot.frame(-1.0, 0.02, COUNT);
+        ExprNode node = evaluator.parse("sin(x)*cos(x) + x^2");
+        EvaluationBudget budget = EvaluationBudget.ofMillis(60_000);
+        budget.cancel();
+        frame.sample(node, budget);
+        assertEquals(0, frame.columnCount());
+        double[] column = frame.sample(node);
+        assertColumn(snapshot, node, frame, column);
+        assertArrayEquals(column, frame.sample(node));
+    }
+}
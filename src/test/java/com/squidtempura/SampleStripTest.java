@@ -0,0 +1,101 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleStripTest {
+    private static final double STEP = 0.02;
+
+    // Writes the grid index of each sample as its value and counts how many it was asked for
+    private static final class Indices implements SampleStrip.Sampler {
+        int sampled;
+
+        @Override
+        public void sample(double left, double step, int count, double[] out) {
+            long first = Math.round(left / step);
+            for (int i = 0; i < count; i++) out[i] = first + i;
+            sampled += count;
+        }
+    }
+
+    private static void assertHolds(SampleStrip strip, long from, long to) {
+        assertTrue(strip.holds(from, to));
+        for (long k = from; k <= to; k++) {
+            assertEquals(k, strip.at(k), "sample " + k);
+        }
+    }
+
+    @Test
+    void aPanSamplesOnlyTheExposedColumns() {
+        SampleStrip strip = new SampleStrip(STEP);
+        Indices f = new Indices();
+        strip.cover(0, 99, 400, f);
+        assertEquals(100, f.sampled);
+        strip.cover(10, 109, 400, f);
+        assertEquals(110, f.sampled);
+        strip.cover(-5, 94, 400, f);
+        assertEquals(115, f.sampled);
+        // back over what is still held
+        strip.cover(0, 99, 400, f);
+        assertEquals(115, f.sampled);
+        assertHolds(strip, -5, 109);
+    }
+
+    @Test
+    void aJumpResamplesTheWholeRange() {
+        SampleStrip strip = new SampleStrip(STEP);
+        Indices f = new Indices();
+        strip.cover(0, 99, 400, f);
+        strip.cover(1000, 1099, 400, f);
+        assertEquals(200, f.sampled);
+        assertHolds(strip, 1000, 1099);
+        assertTrue(Double.isNaN(strip.at(50)));
+    }
+
+    @Test
+    void theRingDropsTheFarSide() {
+        SampleStrip strip = new SampleStrip(STEP);
+        Indices f = new Indices();
+        for (long from = 0; from <= 1000; from += 10) {
+            strip.cover(from, from + 99, 300, f);
+            assertHolds(strip, from, from + 99);
+        }
+        // 300 kept: the last 300 columns up to the right edge, nothing further left
+        assertHolds(strip, 1099 - 299, 1099);
+        assertTrue(Double.isNaN(strip.at(1099 - 300)));
+        assertEquals(1100, f.sampled);
+    }
+
+    @Test
+    void aResizeKeepsTheSamplesNearTheView() {
+        SampleStrip strip = new SampleStrip(STEP);
+        Indices f = new Indices();
+        strip.cover(0, 399, 400, f);
+        strip.cover(300, 349, 100, f);
+        assertEquals(400, f.sampled);
+        assertHolds(strip, 300, 349);
+        // a wider view than the ring holds grows it
+        strip.cover(0, 599, 100, f);
+        assertHolds(strip, 0, 599);
+    }
+
+    @Test
+    void randomPansAndResizesHoldEverySample() {
+        SampleStrip strip = new SampleStrip(STEP);
+        Indices f = new Indices();
+        Random random = new Random(20261017L);
+        long from = 0;
+        for (int i = 0; i < 2000; i++) {
+            int width = 20 + random.nextInt(200);
+            from += random.nextInt(i % 50 == 0 ? 2001 : 61) - (i % 50 == 0 ? 1000 : 30);
+            int before = f.sampled;
+            strip.cover(from, from + width - 1, 2 + random.nextInt(6) * width, f);
+            assertHolds(strip, from, from + width - 1);
+            assertTrue(f.sampled - before <= width);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotCacheTest {
+    private static final String[] EXPRESSIONS = {"int(f(x), 0, x) + sin(x)", "f'(x)", "a*f(x) {x>0}", "int(x^2, 0, 3)"};
+
+    // What the panel does on every keystroke: each expression is parsed into a new tree and
+    // the unchanged definitions are handed over again
+    @Test
+    void editingTheSameExpressionsKeepsTheCachesFlat() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", "x^2 + 1");
+        evaluator.setFunctions(defs);
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        double[] xs = {-1.0, 0.5, 2.0};
+        double[] out = new double[xs.length];
+
+        int size = -1;
+        for (int edit = 0; edit < 50; edit++) {
+            ExpressionParser parser = new ExpressionParser();
+            evaluator.setFunctions(defs);
+            assertSame(snapshot, evaluator.snapshot());
+            for (String expression : EXPRESSIONS) {
+                ExprNode node = parser.parse(expression).node;
+                snapshot.evaluate(node, xs, out);
+                snapshot.evaluate(node, 1.5);
+                snapshot.proxy(node, -2.0, 2.0);
+            }
+            if (edit == 0) size = snapshot.expressionCacheSize();
+        }
+        assertTrue(size > 0);
+        assertEquals(size, snapshot.expressionCacheSize());
+    }
+
+    @Test
+    void equalTextsShareTheirLinkedTree() {
+        EvaluatorSnapshot snapshot = new FunctionEvaluator().snapshot();
+        ExprNode first = new ExpressionParser().parse("sin(x) + x^2").node;
+        ExprNode second = new ExpressionParser().parse("sin(x)+x^2").node;
+        assertSame(snapshot.link(first), snapshot.link(second));
+    }
+
+    @Test
+    void manyDistinctExpressionsStayBounded() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+        for (int i = 0; i < 3 * EvaluatorSnapshot.MAX_LINKED; i++) {
+            String expression = "x + " + i;
+            assertEquals(1.0 + i, evaluator.evaluate(expression, 1.0));
+        }
+        assertTrue(snapshot.expressionCacheSize() <= 2 * EvaluatorSnapshot.MAX_LINKED);
+        assertTrue(evaluator.parsedCacheSize() <= 256);
+    }
+}
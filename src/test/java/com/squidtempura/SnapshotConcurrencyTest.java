@@ -0,0 +1,127 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// One snapshot evaluated from many threads while the definitions and a parameter keep changing
+// must give what it gives on one thread with nothing changing
+class SnapshotConcurrencyTest {
+    private static final String[] FIXED = {"g(x) + f(x)", "int(f(x), 0, 2)", "f'(x)", "int(g(x), -1, x)"};
+    private static final String[] SCALED = {"a*f(x)", "int(a*f(x), 0, 1)"};
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+    private static final double[] XS = new double[33];
+
+    static {
+        for (int i = 0; i < XS.length; i++) XS[i] = -2 + i * 0.125;
+    }
+
+    private static Map<String, String> definitions(boolean first) {
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", first ? "x^2 + 1" : "cos(3*x)");
+        defs.put("g", first ? "sin(f(x))" : "x");
+        return defs;
+    }
+
+    // reference[e][i] for expression e at XS[i], on an evaluator of its own with a set to `a`
+    private static double[][] reference(String[] expressions, double a) {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(definitions(true));
+        evaluator.setParameter("a", a);
+        double[][] values = new double[expressions.length][XS.length];
+        for (int e = 0; e < expressions.length; e++) {
+            ExprNode node = evaluator.parse(expressions[e]);
+            for (int i = 0; i < XS.length; i++) values[e][i] = evaluator.snapshot().evaluate(node, XS[i]);
+        }
+        return values;
+    }
+
+    @Test
+    void oneSnapshotAgreesWithOneThread() throws Exception {
+        double[][] fixed = reference(FIXED, 1.0);
+        double[][] once = reference(SCALED, 1.0);
+        double[][] twice = reference(SCALED, 2.0);
+
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(definitions(true));
+        ExprNode[] fixedNodes = new ExprNode[FIXED.length];
+        for (int e = 0; e < FIXED.length; e++) fixedNodes[e] = evaluator.parse(FIXED[e]);
+        ExprNode[] scaledNodes = new ExprNode[SCALED.length];
+        for (int e = 0; e < SCALED.length; e++) scaledNodes[e] = evaluator.parse(SCALED[e]);
+        evaluator.setParameter("a", 1.0);
+        EvaluatorSnapshot snapshot = evaluator.snapshot();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int seed = t;
+                workers.add(pool.submit(() -> {
+                    double[] out = new double[XS.length];
+                    for (int round = 0; round < ROUNDS; round++) {
+                        for (int e = 0; e < fixedNodes.length; e++) {
+                            int i = (seed + round * 7 + e) % XS.length;
+                            assertEquals(fixed[e][i], snapshot.evaluate(fixedNodes[e], XS[i]), 1e-9,
+                                    FIXED[e] + " at " + XS[i]);
+                        }
+                        snapshot.evaluate(fixedNodes[0], XS, out);
+                        for (int i = 0; i < XS.length; i++) {
+                            assertEquals(fixed[0][i], out[i], 1e-9, FIXED[0] + " at " + XS[i]);
+                        }
+                        // a*f(x) reads a once, so it belongs to one value of a or the other; an
+                        // integral may see a change half way and is only checked once a settles
+                        int i = (seed * 3 + round) % XS.length;
+                        double v = snapshot.evaluate(scaledNodes[0], XS[i]);
+                        assertTrue(Math.abs(v - once[0][i]) < 1e-9 || Math.abs(v - twice[0][i]) < 1e-9,
+                                SCALED[0] + " at " + XS[i] + " gave " + v);
+                        snapshot.evaluate(scaledNodes[1], XS[i]);
+                    }
+                    return null;
+                }));
+            }
+            Thread writer = new Thread(() -> {
+                boolean first = true;
+                while (running.get()) {
+                    first = !first;
+                    evaluator.setFunctions(definitions(first));
+                    evaluator.setParameter("a", first ? 1.0 : 2.0);
+                    Thread.yield();
+                }
+            });
+            writer.start();
+            try {
+                for (Future<?> worker : workers) worker.get(2, TimeUnit.MINUTES);
+            } catch (ExecutionException ex) {
+                fail(ex.getCause());
+            } finally {
+                running.set(false);
+                writer.join();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // once things settle, nothing cached along the way may stand in for the current value
+        evaluator.setParameter("a", 2.0);
+        for (int e = 0; e < scaledNodes.length; e++) {
+            for (int i = 0; i < XS.length; i++) {
+                assertEquals(twice[e][i], snapshot.evaluate(scaledNodes[e], XS[i]), 1e-9, SCALED[e] + " at " + XS[i]);
+            }
+        }
+    }
+}
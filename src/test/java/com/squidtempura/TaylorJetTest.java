@@ -0,0 +1,84 @@
+package com.squidtempura;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Derivatives from Taylor jets against their closed forms; a difference quotient would be off
+// in the sixth digit or so, jets only by rounding
+class TaylorJetTest {
+    private static final double[] XS = {-1.3, -0.4, 0.2, 0.7, 1.9};
+
+    private static void check(String expression, DoubleUnaryOperator... derivatives) {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        ExprNode node = evaluator.parse(expression);
+        int order = derivatives.length - 1;
+        for (double x : XS) {
+            double[] jet = evaluator.evaluateWithDerivatives(node, x, order);
+            for (int k = 0; k <= order; k++) {
+                double want = derivatives[k].applyAsDouble(x);
+                if (Double.isNaN(want)) {
+                    assertTrue(Double.isNaN(jet[k]), expression + " d" + k + " at " + x + " gave " + jet[k]);
+                    continue;
+                }
+                assertEquals(want, jet[k], 1e-12 * Math.max(1, Math.abs(want)), expression + " d" + k + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    void polynomialsAndQuotients() {
+        check("x^3 - 2*x", x -> x * x * x - 2 * x, x -> 3 * x * x - 2, x -> 6 * x, x -> 6);
+        check("1/(1 + x^2)", x -> 1 / (1 + x * x), x -> -2 * x / Math.pow(1 + x * x, 2),
+                x -> (6 * x * x - 2) / Math.pow(1 + x * x, 3));
+        check("x^2.5 {x > 0}", x -> x > 0 ? Math.pow(x, 2.5) : Double.NaN,
+                x -> x > 0 ? 2.5 * Math.pow(x, 1.5) : Double.NaN);
+    }
+
+    @Test
+    void elementaryFunctions() {
+        check("sin(3*x)", x -> Math.sin(3 * x), x -> 3 * Math.cos(3 * x), x -> -9 * Math.sin(3 * x),
+                x -> -27 * Math.cos(3 * x));
+        check("exp(-x^2)", x -> Math.exp(-x * x), x -> -2 * x * Math.exp(-x * x),
+                x -> (4 * x * x - 2) * Math.exp(-x * x));
+        check("log(1 + x^2)", x -> Math.log(1 + x * x), x -> 2 * x / (1 + x * x),
+                x -> (2 - 2 * x * x) / Math.pow(1 + x * x, 2));
+        check("atan(x)", Math::atan, x -> 1 / (1 + x * x), x -> -2 * x / Math.pow(1 + x * x, 2));
+        check("tanh(x)", Math::tanh, x -> 1 - Math.pow(Math.tanh(x), 2));
+        check("sqrt(4 + x)", x -> Math.sqrt(4 + x), x -> 0.5 / Math.sqrt(4 + x), x -> -0.25 / Math.pow(4 + x, 1.5));
+        check("x^x {x > 0}", x -> x > 0 ? Math.pow(x, x) : Double.NaN,
+                x -> x > 0 ? Math.pow(x, x) * (Math.log(x) + 1) : Double.NaN);
+    }
+
+    @Test
+    void primesOfDefinitions() {
+        Map<String, String> defs = new LinkedHashMap<>();
+        defs.put("f", "sin(x)*exp(x)");
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        evaluator.setFunctions(defs);
+        for (double x : XS) {
+            double s = Math.sin(x);
+            double c = Math.cos(x);
+            double e = Math.exp(x);
+            assertEquals((s + c) * e, evaluator.evaluate("f'(x)", x), 1e-12 * Math.max(1, e), "f' at " + x);
+            assertEquals(2 * c * e, evaluator.evaluate("f''(x)", x), 1e-12 * Math.max(1, e), "f'' at " + x);
+            assertEquals(2 * (c - s) * e, evaluator.evaluate("f'''(x)", x), 1e-12 * Math.max(1, e), "f''' at " + x);
+            // the chain rule through a call: d/dx f(2x) = 2 f'(2x)
+            double[] jet = evaluator.evaluateWithDerivatives(evaluator.parse("f(2*x)"), x, 1);
+            assertEquals(2 * (Math.sin(2 * x) + Math.cos(2 * x)) * Math.exp(2 * x), jet[1],
+                    1e-12 * Math.max(1, Math.exp(2 * x)), "d/dx f(2x) at " + x);
+        }
+    }
+
+    @Test
+    void undefinedPointsGiveNaN() {
+        FunctionEvaluator evaluator = new FunctionEvaluator();
+        double[] jet = evaluator.evaluateWithDerivatives(evaluator.parse("sqrt(x)"), -1.0, 2);
+        for (double v : jet) assertTrue(Double.isNaN(v));
+    }
+}
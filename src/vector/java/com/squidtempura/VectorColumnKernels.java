@@ -0,0 +1,124 @@
+package com.squidtempura;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD versions of the column kernels, only loaded when jdk.incubator.vector is in the boot layer
+public class VectorColumnKernels extends ColumnKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    public void binary(NodeKind op, double[] a, double[] b, double[] out, int len) {
+        // one loop per operator so every lanewise call sees a constant operation
+        int bound = SPECIES.loopBound(len);
+        int step = SPECIES.length();
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+                }
+                break;
+            case DIV:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+                    divide(DoubleVector.fromArray(SPECIES, a, i), vb).intoArray(out, i);
+                }
+                break;
+            default:
+                super.binary(op, a, b, out, len);
+                return;
+        }
+        for (int i = bound; i < len; i++) {
+            out[i] = apply(op, a[i], b[i]);
+        }
+    }
+
+    @Override
+    public void binary(NodeKind op, double[] a, double b, double[] out, int len) {
+        DoubleVector vb = DoubleVector.broadcast(SPECIES, b);
+        int bound = SPECIES.loopBound(len);
+        int step = SPECIES.length();
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).add(vb).intoArray(out, i);
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).sub(vb).intoArray(out, i);
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < bound; i += step) {
+                    DoubleVector.fromArray(SPECIES, a, i).mul(vb).intoArray(out, i);
+                }
+                break;
+            case DIV:
+                for (int i = 0; i < bound; i += step) {
+                    divide(DoubleVector.fromArray(SPECIES, a, i), vb).intoArray(out, i);
+                }
+                break;
+            default:
+                super.binary(op, a, b, out, len);
+                return;
+        }
+        for (int i = bound; i < len; i++) {
+            out[i] = apply(op, a[i], b);
+        }
+    }
+
+    @Override
+    public void neg(double[] a, double[] out, int len) {
+        unary(VectorOperators.NEG, a, out, len);
+        for (int i = SPECIES.loopBound(len); i < len; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    @Override
+    public void sqrt(double[] a, double[] out, int len) {
+        unary(VectorOperators.SQRT, a, out, len);
+        for (int i = SPECIES.loopBound(len); i < len; i++) {
+            out[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    @Override
+    public void abs(double[] a, double[] out, int len) {
+        unary(VectorOperators.ABS, a, out, len);
+        for (int i = SPECIES.loopBound(len); i < len; i++) {
+            out[i] = Math.abs(a[i]);
+        }
+    }
+
+    private void unary(VectorOperators.Unary op, double[] a, double[] out, int len) {
+        int bound = SPECIES.loopBound(len);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(op).intoArray(out, i);
+        }
+    }
+
+    // division by zero is NaN, matching Builtin.div
+    private static DoubleVector divide(DoubleVector a, DoubleVector b) {
+        VectorMask<Double> zero = b.compare(VectorOperators.EQ, 0.0);
+        return a.div(b).blend(Double.NaN, zero);
+    }
+}